@@ -0,0 +1,37 @@
+package renderer;
+
+/**
+ * The orientation of the viewer for one frame of an animation, given as a
+ * rotation around the X-axis followed by one around the Y-axis, the same
+ * angles Pipeline.rotateScene takes.
+ */
+public class CameraPose {
+
+	private final float xRot;
+	private final float yRot;
+
+	public CameraPose(float xRot, float yRot) {
+		this.xRot = xRot;
+		this.yRot = yRot;
+	}
+
+	public float getXRot() {
+		return xRot;
+	}
+
+	public float getYRot() {
+		return yRot;
+	}
+
+	/**
+	 * Returns the transformation that rotates a scene into this pose.
+	 */
+	public Transform toTransform() {
+		return Transform.newXRotation(xRot).compose(Transform.newYRotation(yRot));
+	}
+
+	@Override
+	public String toString() {
+		return "CameraPose(" + xRot + ", " + yRot + ")";
+	}
+}
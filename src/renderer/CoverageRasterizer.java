@@ -0,0 +1,114 @@
+package renderer;
+
+/**
+ * Rasterizes polygons into a MultisampleBuffer. Unlike the edge list, which
+ * only knows which whole pixels a polygon covers, this works out which of
+ * each pixel's samples are inside the polygon, using an edge function for each
+ * of its three sides, and a depth for each sample from the plane of the
+ * polygon. The colour is only written once per pixel, with a mask of the
+ * samples that passed.
+ */
+public class CoverageRasterizer {
+
+	/**
+	 * Rasterizes one polygon.
+	 * 
+	 * @param rgb
+	 *            The colour of the polygon.
+	 * @param fragments
+	 *            If not null, the number of pixels depth tested is added to
+	 *            fragments[0] and the number written to fragments[1].
+	 */
+	public static void rasterize(MultisampleBuffer buffer, Polygon poly, int rgb, long[] fragments) {
+		rasterize(buffer, poly, rgb, fragments, 1);
+	}
+
+	/**
+	 * The same as rasterize(buffer, poly, rgb, fragments), but for the
+	 * polygon with its x and y multiplied by scale, as
+	 * FrameRenderer.setViewportScale draws it.
+	 */
+	public static void rasterize(MultisampleBuffer buffer, Polygon poly, int rgb, long[] fragments, float scale) {
+		Vector3D[] verts = poly.getVertices();
+		Vector3D a = verts[0];
+		Vector3D b = verts[1];
+		Vector3D c = verts[2];
+		if (scale != 1) {
+			a = new Vector3D(a.x * scale, a.y * scale, a.z);
+			b = new Vector3D(b.x * scale, b.y * scale, b.z);
+			c = new Vector3D(c.x * scale, c.y * scale, c.z);
+		}
+
+		float area = (b.x - a.x) * (c.y - a.y) - (c.x - a.x) * (b.y - a.y);
+		if (area == 0)
+			return;
+		if (area < 0) {
+			// wind the other way round so the inside of every edge is positive
+			Vector3D t = b;
+			b = c;
+			c = t;
+			area = -area;
+		}
+
+		// edge i is opposite vertex i: e(x, y) = ex * x + ey * y + ec
+		float[] ex = { b.y - c.y, c.y - a.y, a.y - b.y };
+		float[] ey = { c.x - b.x, a.x - c.x, b.x - a.x };
+		float[] ec = { b.x * c.y - c.x * b.y, c.x * a.y - a.x * c.y, a.x * b.y - b.x * a.y };
+
+		// samples exactly on an edge shared by two polygons should only be
+		// drawn by one of them, so only "top" and "left" edges include them.
+		boolean[] inclusive = new boolean[3];
+		for (int i = 0; i < 3; i++)
+			inclusive[i] = ex[i] > 0 || (ex[i] == 0 && ey[i] > 0);
+
+		// the depth plane, from the barycentric weights of the vertices
+		float zx = (ex[0] * a.z + ex[1] * b.z + ex[2] * c.z) / area;
+		float zy = (ey[0] * a.z + ey[1] * b.z + ey[2] * c.z) / area;
+		float zc = (ec[0] * a.z + ec[1] * b.z + ec[2] * c.z) / area;
+
+		int samples = buffer.getSamples();
+		int minX = Math.max(0, (int) Math.floor(Math.min(a.x, Math.min(b.x, c.x))));
+		int maxX = Math.min(buffer.getWidth() - 1, (int) Math.ceil(Math.max(a.x, Math.max(b.x, c.x))));
+		int minY = Math.max(0, (int) Math.floor(Math.min(a.y, Math.min(b.y, c.y))));
+		int maxY = Math.min(buffer.getHeight() - 1, (int) Math.ceil(Math.max(a.y, Math.max(b.y, c.y))));
+
+		int tested = 0;
+		int written = 0;
+
+		for (int y = minY; y <= maxY; y++) {
+			for (int x = minX; x <= maxX; x++) {
+				int mask = 0;
+				boolean covered = false;
+				for (int s = 0; s < samples; s++) {
+					float sx = x + buffer.getSampleX(s);
+					float sy = y + buffer.getSampleY(s);
+					if (inside(ex[0] * sx + ey[0] * sy + ec[0], inclusive[0])
+							&& inside(ex[1] * sx + ey[1] * sy + ec[1], inclusive[1])
+							&& inside(ex[2] * sx + ey[2] * sy + ec[2], inclusive[2])) {
+						covered = true;
+						float z = zx * sx + zy * sy + zc;
+						if (z < buffer.getDepth(x, y, s)) {
+							buffer.setDepth(x, y, s, z);
+							mask |= 1 << s;
+						}
+					}
+				}
+				if (covered)
+					tested++;
+				if (mask != 0) {
+					buffer.write(x, y, mask, rgb);
+					written++;
+				}
+			}
+		}
+
+		if (fragments != null) {
+			fragments[0] += tested;
+			fragments[1] += written;
+		}
+	}
+
+	private static boolean inside(float e, boolean inclusive) {
+		return e > 0 || (inclusive && e == 0);
+	}
+}
@@ -15,25 +15,56 @@ import java.util.Map;
  */
 public class EdgeList {
 
-	// LEFT X : LEFT Z : RIGHT X : RIGHT Z
+	// LEFT X : LEFT Z : RIGHT X : RIGHT Z, for rows startY onwards, i.e.
+	// row y is edge[y - startY]
 	public float[][] edge;
+	// LEFT R : LEFT G : LEFT B : RIGHT R : RIGHT G : RIGHT B, only for
+	// smooth shaded polygons
+	private float[][] colour;
 	private int startY;
 	private int endY;
 
 	public EdgeList(int startY, int endY) {
-		
-		if(endY > 599)
-			return;
+		this(startY, endY, false);
+	}
+
+	/**
+	 * @param smooth
+	 *            Whether to make room for the colours at each end of each
+	 *            row as well, for smooth shading.
+	 */
+	public EdgeList(int startY, int endY, boolean smooth) {
 		this.startY = startY;
 		this.endY = endY;
-		edge = new float[endY + 1][4];
+		// only the polygon's own rows, so big screens don't cost anything
+		// for the rows above it
+		int rows = Math.max(endY - startY, 0) + 1;
+		edge = new float[rows][4];
+		if (smooth)
+			colour = new float[rows][6];
 		init();
 		
 	}
 	
 	
+	/**
+	 * Empties the edge list and sets it up for the rows startY to endY,
+	 * keeping its arrays if they are big enough, so that one edge list can
+	 * be used for polygon after polygon. See Pipeline.computeEdgeList.
+	 */
+	public void reset(int startY, int endY, boolean smooth) {
+		this.startY = startY;
+		this.endY = endY;
+		int rows = Math.max(endY - startY, 0) + 1;
+		if (edge.length < rows)
+			edge = new float[Math.max(rows, edge.length * 2)][4];
+		if (smooth && (colour == null || colour.length < edge.length))
+			colour = new float[edge.length][6];
+		init();
+	}
+
 	public void init(){
-		for(int i=0; i< endY; i++){
+		for(int i=0; i< endY - startY; i++){
 			edge[i][0] = Float.POSITIVE_INFINITY;
 			edge[i][1] = Float.POSITIVE_INFINITY;
 			edge[i][2] = Float.NEGATIVE_INFINITY;
@@ -42,6 +73,15 @@ public class EdgeList {
 			
 	}
 
+	/**
+	 * Makes room for the colours, for an edge list that was made without
+	 * them. See Pipeline.computeEdgeColours.
+	 */
+	public void addColours() {
+		if (colour == null || colour.length < edge.length)
+			colour = new float[edge.length][6];
+	}
+
 	public int getStartY() {
 		return this.startY;
 	}
@@ -51,27 +91,57 @@ public class EdgeList {
 	}
 
 	public float getLeftX(int y) {
-		if(y >= edge.length)
+		if(y - startY >= edge.length)
 			throw new IndexOutOfBoundsException();
-		return  edge[y][0];
+		return  edge[y - startY][0];
 	}
 
 	public float getRightX(int y) {
-		if(y >= edge.length)
+		if(y - startY >= edge.length)
 			throw new IndexOutOfBoundsException();
-		return  edge[y][2];
+		return  edge[y - startY][2];
 	}
 
 	public float getLeftZ(int y) {
-		if(y >= edge.length)
+		if(y - startY >= edge.length)
 			throw new IndexOutOfBoundsException();
-		return  edge[y][1];
+		return  edge[y - startY][1];
 	}
 
 	public float getRightZ(int y) {
-		if(y >= edge.length)
+		if(y - startY >= edge.length)
 			throw new IndexOutOfBoundsException();
-		return  edge[y][3];
+		return  edge[y - startY][3];
+	}
+
+	/**
+	 * Returns one channel (0 red, 1 green, 2 blue) of the colour at the left
+	 * end of row y.
+	 */
+	public float getLeftColour(int y, int channel) {
+		return colour[y - startY][channel];
+	}
+
+	/**
+	 * Returns one channel (0 red, 1 green, 2 blue) of the colour at the right
+	 * end of row y.
+	 */
+	public float getRightColour(int y, int channel) {
+		return colour[y - startY][3 + channel];
+	}
+
+	public void setLeftColour(int y, float r, float g, float b) {
+		float[] row = colour[y - startY];
+		row[0] = r;
+		row[1] = g;
+		row[2] = b;
+	}
+
+	public void setRightColour(int y, float r, float g, float b) {
+		float[] row = colour[y - startY];
+		row[3] = r;
+		row[4] = g;
+		row[5] = b;
 	}
 }
 
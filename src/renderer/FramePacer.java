@@ -0,0 +1,82 @@
+package renderer;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.Timer;
+
+/**
+ * Paces redraws of the drawing canvas. Instead of repainting on every input
+ * event, callers mark the frame as dirty with requestFrame() and a timer
+ * running at the target frame rate repaints at most once per tick. A burst of
+ * key repeats between two ticks therefore only costs a single render.
+ * 
+ * All methods should be called on the event dispatch thread, which is where
+ * the timer fires as well.
+ */
+public class FramePacer {
+
+	public static final int DEFAULT_FPS = 60;
+
+	private final Runnable redraw;
+	private final Timer timer;
+	private final FrameStats stats = new FrameStats();
+	private boolean dirty;
+
+	/**
+	 * @param fps
+	 *            The target frame rate.
+	 * @param redraw
+	 *            Called once per tick when a frame has been requested.
+	 */
+	public FramePacer(int fps, Runnable redraw) {
+		if (fps <= 0)
+			throw new IllegalArgumentException("FramePacer: fps must be positive: " + fps);
+
+		this.redraw = redraw;
+		this.timer = new Timer(1000 / fps, new ActionListener() {
+			public void actionPerformed(ActionEvent ev) {
+				tick();
+			}
+		});
+		this.timer.setCoalesce(true);
+	}
+
+	/**
+	 * Asks for a new frame to be drawn on the next tick. Calling this several
+	 * times before the tick has no further effect.
+	 */
+	public void requestFrame() {
+		dirty = true;
+		if (!timer.isRunning())
+			timer.start();
+	}
+
+	/**
+	 * Changes the target frame rate.
+	 */
+	public void setTargetFps(int fps) {
+		if (fps <= 0)
+			throw new IllegalArgumentException("FramePacer: fps must be positive: " + fps);
+		timer.setDelay(1000 / fps);
+	}
+
+	public int getTargetFps() {
+		return 1000 / timer.getDelay();
+	}
+
+	public FrameStats getStats() {
+		return stats;
+	}
+
+	private void tick() {
+		// stop the timer when nothing is happening so an idle window costs
+		// nothing, it is restarted by the next request.
+		if (!dirty) {
+			timer.stop();
+			return;
+		}
+		dirty = false;
+		redraw.run();
+	}
+}
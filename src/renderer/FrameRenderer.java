@@ -0,0 +1,698 @@
+package renderer;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Renders the polygons of a scene that is already in view space (i.e. has
+ * been rotated, scaled and moved onto the screen) into its own Framebuffer.
+ * 
+ * A FrameRenderer only writes to its own framebuffer and to the polygons of
+ * the scene it is given, so different threads can render at the same time as
+ * long as each one has its own FrameRenderer and its own copy of the scene.
+ */
+public class FrameRenderer {
+
+	private final Framebuffer framebuffer;
+	private Color background = Color.gray;
+	private boolean backfaceCulling;
+	private boolean smoothShading;
+	// per vertex lighting, reused from frame to frame
+	private float[] vertexCos = new float[0];
+	private final int[] cornerColours = new int[3];
+
+	private OverdrawBuffer overdraw;
+	private MultisampleBuffer multisample;
+	private MortonOrder mortonOrder;
+	private ShadowMap shadowMap;
+	private boolean depthPrepass;
+	// the pre-pass only lays down depth, so one edge list does for every
+	// polygon, another for each polygon of the second pass, and another for
+	// each polygon of each tile when binned
+	private final EdgeList depthEdges = new EdgeList(0, 0);
+	private final EdgeList shadeEdges = new EdgeList(0, 0);
+	private final EdgeList tileEdges = new EdgeList(0, 0);
+	private TileBinner binner;
+	// what each binned polygon is drawn with, by its number in the binner;
+	// its edges are worked out again for each tile rather than kept
+	private Polygon[] binnedPolygons = new Polygon[0];
+	private int[] binnedRgb = new int[0];
+	private int[] binnedShadowRgb = new int[0];
+	private float[] binnedCos = new float[0];
+	// the three corner colours of each, when smooth shading
+	private int[] binnedCorners = new int[0];
+
+	// for scenes with extra lights
+	private LightTiles lightTiles;
+	private float viewportScale = 1;
+	private float[] vertexLight = new float[0];
+	private final float[] light = new float[3];
+
+	private RenderMetrics metrics;
+	// the numbers for the frame being rendered, handed to metrics at the end
+	private final long[] stageNanos = new long[RenderMetrics.STAGES];
+	// a bit for each stage that has run, 1 << stage
+	private int stagesRun;
+	private final long[] counters = new long[RenderMetrics.COUNTERS];
+	private final long[] fragments = new long[2];
+	// whether the frame being rendered is being timed
+	private boolean timed;
+
+	public FrameRenderer(int width, int height) {
+		this(new Framebuffer(width, height));
+	}
+
+	/**
+	 * Renders into the given framebuffer, e.g. a direct one.
+	 */
+	public FrameRenderer(Framebuffer framebuffer) {
+		this.framebuffer = framebuffer;
+	}
+
+	public Framebuffer getFramebuffer() {
+		return framebuffer;
+	}
+
+	public void setBackground(Color background) {
+		this.background = background;
+	}
+
+	/**
+	 * Whether polygons facing away from the viewer are skipped. It is off by
+	 * default, as the hidden test relies on the model's polygons all being
+	 * wound the same way.
+	 */
+	public void setBackfaceCulling(boolean backfaceCulling) {
+		this.backfaceCulling = backfaceCulling;
+	}
+
+	/**
+	 * Whether to use smooth (Gouraud) shading: each vertex is lit using the
+	 * average normal of the polygons around it, and the colours are blended
+	 * across the polygon. This needs a welded scene, i.e. one with a Mesh;
+	 * other scenes are still flat shaded. Anti-aliasing is always flat.
+	 */
+	public void setSmoothShading(boolean smoothShading) {
+		this.smoothShading = smoothShading;
+	}
+
+	public boolean isSmoothShading() {
+		return smoothShading;
+	}
+
+	/**
+	 * Sets the anti-aliasing mode: 0 for none, or 4 or 8 samples per pixel.
+	 * See MultisampleBuffer.
+	 */
+	public void setAntialiasing(int samples) {
+		if (samples == 0)
+			multisample = null;
+		else if (multisample == null || multisample.getSamples() != samples)
+			multisample = new MultisampleBuffer(framebuffer.getWidth(), framebuffer.getHeight(), samples);
+	}
+
+	public int getAntialiasing() {
+		return multisample == null ? 0 : multisample.getSamples();
+	}
+
+	/**
+	 * Whether to draw the polygons sorted by where they are on the screen
+	 * (see MortonOrder) rather than in the order they were loaded. Polygons
+	 * that overlap can then be drawn in a different order, which only changes
+	 * the image where two of them are at exactly the same depth.
+	 */
+	public void setMortonOrdering(boolean enabled) {
+		if (!enabled)
+			mortonOrder = null;
+		else if (mortonOrder == null)
+			mortonOrder = new MortonOrder();
+	}
+
+	public boolean isMortonOrdering() {
+		return mortonOrder != null;
+	}
+
+	/**
+	 * Returns the order the polygons were drawn in by the last frame, as
+	 * indices into the scene's polygons, or null if they were drawn in order.
+	 */
+	public int[] getDrawOrder() {
+		return mortonOrder == null ? null : mortonOrder.getOrder();
+	}
+
+	/**
+	 * Whether the header light casts shadows, see ShadowMap. While shadows
+	 * are on the header light is fixed to the model, rather than to the
+	 * viewer, so that the shadows don't have to be worked out again each
+	 * time the model is rotated; the lightDirection given to render is then
+	 * ignored. Shadows aren't drawn while anti-aliasing.
+	 */
+	public void setShadows(boolean enabled) {
+		if (!enabled)
+			shadowMap = null;
+		else if (shadowMap == null)
+			shadowMap = new ShadowMap();
+	}
+
+	public boolean hasShadows() {
+		return shadowMap != null;
+	}
+
+	/**
+	 * Returns the shadow map, or null if shadows are off.
+	 */
+	public ShadowMap getShadowMap() {
+		return shadowMap;
+	}
+
+	/**
+	 * Whether to draw the depth of every polygon first, and only then shade
+	 * them and write their colours. The second pass skips polygons that
+	 * aren't visible anywhere, and only writes the pixels where the polygon
+	 * is the nearest one, so no colour is worked out just to be overwritten.
+	 * It costs an extra pass over the polygons, so only pays off when
+	 * shading is expensive, e.g. with smooth shading or many lights, or when
+	 * there is a lot of overdraw. With flat shading it is a little slower.
+	 * The pre-pass only keeps one edge list, and the second pass works each
+	 * polygon's edges out again. It has no effect while anti-aliasing.
+	 */
+	public void setDepthPrepass(boolean depthPrepass) {
+		this.depthPrepass = depthPrepass;
+	}
+
+	public boolean isDepthPrepass() {
+		return depthPrepass;
+	}
+
+	/**
+	 * Whether to sort the polygons into tiles of the screen (see TileBinner)
+	 * once they have been shaded, and then draw the frame a tile at a time,
+	 * so that only one tile of the framebuffer is being written at once. The
+	 * picture is exactly the same. It only pays off once the framebuffer is
+	 * too big for the cache, and costs a little otherwise. It has no effect
+	 * while anti-aliasing.
+	 */
+	public void setTileBinning(boolean enabled) {
+		if (!enabled)
+			binner = null;
+		else if (binner == null)
+			binner = new TileBinner(framebuffer.getWidth(), framebuffer.getHeight());
+	}
+
+	public boolean isTileBinning() {
+		return binner != null;
+	}
+
+	/**
+	 * Sets how many bits each depth is stored in, see
+	 * Framebuffer.setDepthBits. With 16 or 24 bits render scales the depths
+	 * to the z range of the scene. Anti-aliasing keeps float depths for its
+	 * samples, and only the resolved depths are quantized.
+	 */
+	public void setDepthBits(int bits, boolean reversed) {
+		QuantizedDepthBuffer quantized = framebuffer.getQuantizedDepth();
+		if (bits == framebuffer.getDepthBits() && (quantized == null || quantized.isReversed() == reversed))
+			return;
+		framebuffer.setDepthBits(bits, reversed);
+	}
+
+	public int getDepthBits() {
+		return framebuffer.getDepthBits();
+	}
+
+	/**
+	 * Whether starting a frame leaves each tile of the framebuffer to be
+	 * cleared when something is first drawn in it, see
+	 * Framebuffer.setLazyClear. The picture is exactly the same.
+	 */
+	public void setLazyClear(boolean lazy) {
+		framebuffer.setLazyClear(lazy);
+	}
+
+	public boolean isLazyClear() {
+		return framebuffer.isLazyClear();
+	}
+
+	/**
+	 * Multiplies the x and y of every polygon by scale as it is drawn, so the
+	 * framebuffer can be smaller than the screen the scene was placed on,
+	 * e.g. for a quick preview, without copying the scene. Depths aren't
+	 * scaled, and the extra lights are worked out at the unscaled positions,
+	 * so the picture is lit just as the whole frame would be.
+	 */
+	public void setViewportScale(float scale) {
+		if (!(scale > 0))
+			throw new IllegalArgumentException("FrameRenderer: bad viewport scale " + scale);
+		if (scale != viewportScale)
+			lightTiles = null;
+		viewportScale = scale;
+	}
+
+	public float getViewportScale() {
+		return viewportScale;
+	}
+
+	/**
+	 * Turns on counting the depth tests and writes of every pixel, which can
+	 * then be read from getOverdraw() after each frame. It slows rendering
+	 * down a little, so is meant for debugging. Overdraw isn't counted while
+	 * anti-aliasing.
+	 */
+	public void setOverdrawTracking(boolean enabled) {
+		if (!enabled)
+			overdraw = null;
+		else if (overdraw == null)
+			overdraw = new OverdrawBuffer(framebuffer.getWidth(), framebuffer.getHeight());
+	}
+
+	/**
+	 * Returns the overdraw counts of the last frame, or null if overdraw
+	 * tracking is off.
+	 */
+	public OverdrawBuffer getOverdraw() {
+		return overdraw;
+	}
+
+	/**
+	 * Sets where the timings and counters of each frame are recorded. They
+	 * are only collected while the metrics are enabled.
+	 */
+	public void setMetrics(RenderMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Renders one frame of the scene.
+	 * 
+	 * @param lightDirection
+	 *            The direction of the directional light.
+	 * @param lightColor
+	 *            The colour of the directional light.
+	 * @param ambientLight
+	 *            The ambient light in the scene.
+	 */
+	public void render(Scene scene, Vector3D lightDirection, Color lightColor, Color ambientLight) {
+		if (framebuffer.getDepthBits() != 32) {
+			float[] range = Pipeline.computeDepthRange(scene);
+			framebuffer.setDepthRange(range[0], range[1]);
+		}
+		beginFrame();
+		draw(scene, lightDirection, lightColor, ambientLight);
+		endFrame();
+	}
+
+	/**
+	 * Starts a frame made of several scenes, e.g. the instances of a
+	 * SceneGraph, by clearing the framebuffer. Each scene is then drawn with
+	 * draw, and the frame finished with endFrame. If the depths are
+	 * quantized, the depth range of the whole frame has to be given to
+	 * Framebuffer.setDepthRange first.
+	 */
+	public void beginFrame() {
+		timed = metrics != null && metrics.isEnabled();
+		if (timed) {
+			Arrays.fill(stageNanos, 0);
+			stagesRun = 0;
+			Arrays.fill(counters, 0);
+			fragments[0] = 0;
+			fragments[1] = 0;
+		}
+
+		// when anti-aliasing, resolving the samples fills every pixel anyway
+		if (multisample != null)
+			multisample.clear(background);
+		else
+			framebuffer.clear(background);
+		if (overdraw != null)
+			overdraw.clear();
+	}
+
+	/**
+	 * Draws a scene over whatever has been drawn since beginFrame. Each
+	 * scene is lit, shaded and ordered on its own, so shadows and Morton
+	 * ordering only work within a scene. A tinted scene (see Scene.setTint)
+	 * is shaded with each reflectance multiplied by the tint.
+	 *
+	 * A scene with a UvMap is textured, and flat shaded whatever
+	 * setSmoothShading says. With antialiasing on, it is drawn without its
+	 * texture.
+	 */
+	public void draw(Scene scene, Vector3D lightDirection, Color lightColor, Color ambientLight) {
+		List<Polygon> polygons = scene.getPolygons();
+		if (polygons.isEmpty())
+			return;
+		long time = timed ? System.nanoTime() : 0;
+		calculateIfHidden(polygons); // calculate which polygons are hidden or not
+		if (timed)
+			time = lap(RenderMetrics.CULL, time);
+		computeNormals(polygons); // calculate all polygons normals
+		if (timed)
+			time = lap(RenderMetrics.NORMALS, time);
+
+		int culled = 0;
+		int rasterized = 0;
+		int rejected = 0;
+
+		float scale = viewportScale;
+		ShadowMap shadows = multisample == null ? shadowMap : null;
+		if (shadows != null) {
+			shadows.update(scene);
+			Transform view = scene.getView();
+			shadows.setView(scale == 1 ? view : Transform.newScale(scale, scale, 1).compose(view));
+			// the light is fixed to the model
+			lightDirection = scene.getView().multiplyDirection(scene.getModelLight());
+			if (timed)
+				time = lap(RenderMetrics.SHADOW, time);
+		}
+
+		Mesh mesh = scene.getMesh();
+		// textures are only drawn without antialiasing, and over flat shading
+		UvMap uvMap = multisample == null ? scene.getUvMap() : null;
+		boolean smooth = smoothShading && mesh != null && multisample == null && uvMap == null;
+		Vector3D unitLight = lightDirection.unitVector();
+		int[] indices = smooth ? mesh.getIndices() : null;
+
+		LightSet lights = scene.getLights();
+		Color tint = scene.getTint();
+		if (lights != null && lights.getDirectionalCount() == 0 && lights.getPointCount() == 0)
+			lights = null;
+		if (lights != null) {
+			if (lightTiles == null)
+				// the lights are found at the unscaled positions, so the
+				// tiles cover the whole unscaled screen
+				lightTiles = new LightTiles((int) Math.ceil(framebuffer.getWidth() / scale),
+						(int) Math.ceil(framebuffer.getHeight() / scale));
+			lightTiles.build(lights);
+		}
+
+		if (smooth) {
+			// light each vertex once, however many polygons share it
+			Vector3D[] normals = mesh.getNormals();
+			if (vertexCos.length < normals.length)
+				vertexCos = new float[normals.length];
+			for (int v = 0; v < normals.length; v++)
+				vertexCos[v] = normals[v].cosTheta(unitLight);
+
+			if (lights != null) {
+				Vector3D[] verts = mesh.getVertices();
+				if (vertexLight.length < normals.length * 3)
+					vertexLight = new float[normals.length * 3];
+				for (int v = 0; v < normals.length; v++) {
+					lightPoint(lights, verts[v].x, verts[v].y, verts[v].z, normals[v]);
+					vertexLight[v * 3] = light[0];
+					vertexLight[v * 3 + 1] = light[1];
+					vertexLight[v * 3 + 2] = light[2];
+				}
+			}
+			if (timed)
+				time = lap(RenderMetrics.SHADE, time);
+		}
+
+		int[] order = null;
+		int count = polygons.size();
+		if (mortonOrder != null) {
+			order = mortonOrder.update(polygons, backfaceCulling);
+			culled = count - mortonOrder.getCount();
+			count = mortonOrder.getCount();
+			if (timed)
+				time = lap(RenderMetrics.CULL, time);
+		}
+
+		boolean prepass = depthPrepass && multisample == null;
+		boolean binned = binner != null && multisample == null && uvMap == null;
+		if (binned)
+			binner.clear();
+		if (prepass) {
+			for (int i = 0; i < count; i++) {
+				Polygon poly = polygons.get(order == null ? i : order[i]);
+				if (backfaceCulling && poly.isHidden())
+					continue;
+				Pipeline.computeDepthBuffer(framebuffer,
+						Pipeline.computeEdgeList(poly, null, depthEdges, 0, Integer.MAX_VALUE, scale));
+			}
+			if (timed)
+				time = lap(RenderMetrics.Z_BUFFER, time);
+		}
+
+		for (int i = 0; i < count; i++) {
+			int index = order == null ? i : order[i];
+			Polygon poly = polygons.get(index);
+			if (backfaceCulling && poly.isHidden()) {
+				culled++;
+				continue;
+			}
+
+			// after the pre-pass, polygons that are hidden everywhere don't
+			// need shading at all
+			EdgeList polyEdgeList = null;
+			if (prepass) {
+				// the same edges as the pre-pass, worked out again rather
+				// than kept for every polygon
+				polyEdgeList = Pipeline.computeEdgeList(poly, null, shadeEdges, 0, Integer.MAX_VALUE, scale);
+				boolean visible = Pipeline.hasVisibleFragment(framebuffer, polyEdgeList);
+				if (timed)
+					time = lap(RenderMetrics.EDGE_LIST, time);
+				if (!visible) {
+					rejected++;
+					continue;
+				}
+			}
+
+			// the extra light at the centre of the polygon, for flat shading
+			// and for the parts in shadow
+			if (lights != null && (!smooth || shadows != null)) {
+				Vector3D[] v = poly.getVertices();
+				lightPoint(lights, (v[0].x + v[1].x + v[2].x) / 3, (v[0].y + v[1].y + v[2].y) / 3,
+						(v[0].z + v[1].z + v[2].z) / 3, poly.getNormal());
+			}
+
+			Color reflectance = tint == null ? poly.getReflectance() : Pipeline.tint(poly.getReflectance(), tint);
+
+			int shadowRgb = 0;
+			if (shadows != null) {
+				// lit by everything but the header light
+				shadowRgb = Pipeline.shade(0, reflectance, unitLight, lightColor, ambientLight);
+				shadows.setSurface(poly.getNormal().cosTheta(unitLight));
+				if (lights != null)
+					shadowRgb = Pipeline.addLight(shadowRgb, light, 0, reflectance);
+			}
+
+			if (smooth) {
+				for (int v = 0; v < 3; v++) {
+					int vertex = indices[index * 3 + v];
+					cornerColours[v] = Pipeline.shade(vertexCos[vertex], reflectance, unitLight, lightColor,
+							ambientLight);
+					if (lights != null)
+						cornerColours[v] = Pipeline.addLight(cornerColours[v], vertexLight, vertex * 3, reflectance);
+				}
+				if (timed)
+					time = lap(RenderMetrics.SHADE, time);
+
+				if (binned) {
+					bin(poly, 0, shadowRgb, unitLight);
+					continue;
+				}
+
+				if (polyEdgeList == null)
+					polyEdgeList = Pipeline.computeEdgeList(poly, cornerColours, shadeEdges, 0, Integer.MAX_VALUE,
+							scale);
+				else
+					Pipeline.computeEdgeColours(polyEdgeList, poly, cornerColours, scale);
+				if (timed)
+					time = lap(RenderMetrics.EDGE_LIST, time);
+				Pipeline.computeSmoothZBuffer(framebuffer, polyEdgeList, prepass, shadows, shadowRgb,
+						timed ? fragments : null, overdraw);
+				rasterized++;
+				if (timed)
+					time = lap(RenderMetrics.Z_BUFFER, time);
+				continue;
+			}
+
+			Color polyColor = Pipeline.getShading(poly, reflectance, lightDirection, lightColor, ambientLight);
+			if (lights != null)
+				polyColor = new Color(Pipeline.addLight(polyColor.getRGB(), light, 0, reflectance));
+			if (timed)
+				time = lap(RenderMetrics.SHADE, time);
+
+			if (multisample != null) {
+				CoverageRasterizer.rasterize(multisample, poly, polyColor.getRGB() & 0xFFFFFF, timed ? fragments : null,
+						scale);
+			} else if (binned) {
+				bin(poly, polyColor.getRGB() & 0xFFFFFF, shadowRgb, unitLight);
+				continue;
+			} else {
+				if (polyEdgeList == null)
+					polyEdgeList = Pipeline.computeEdgeList(poly, null, shadeEdges, 0, Integer.MAX_VALUE, scale);
+				if (timed)
+					time = lap(RenderMetrics.EDGE_LIST, time);
+
+				if (uvMap != null)
+					Pipeline.computeTexturedZBuffer(framebuffer, polyEdgeList, poly, uvMap, index,
+							polyColor.getRGB() & 0xFFFFFF, prepass, shadows, shadowRgb, timed ? fragments : null,
+							overdraw, scale);
+				else
+					Pipeline.computeZBuffer(framebuffer, polyEdgeList, polyColor.getRGB() & 0xFFFFFF, prepass, shadows,
+							shadowRgb, timed ? fragments : null, overdraw);
+			}
+			rasterized++;
+			if (timed)
+				time = lap(RenderMetrics.Z_BUFFER, time);
+		}
+
+		if (binned) {
+			drawTiles(smooth, prepass, shadows);
+			// the polygons off the screen weren't put in any tile
+			rasterized += binner.getBinnedCount();
+			if (timed)
+				time = lap(RenderMetrics.Z_BUFFER, time);
+		}
+
+		if (timed) {
+			counters[RenderMetrics.POLYGONS_SUBMITTED] += polygons.size();
+			counters[RenderMetrics.POLYGONS_CULLED] += culled;
+			counters[RenderMetrics.POLYGONS_RASTERIZED] += rasterized;
+			counters[RenderMetrics.POLYGONS_PREPASS_REJECTED] += rejected;
+		}
+	}
+
+	/**
+	 * Finishes a frame started with beginFrame.
+	 */
+	public void endFrame() {
+		long time = timed ? System.nanoTime() : 0;
+		if (multisample != null) {
+			multisample.resolve(framebuffer);
+			if (timed)
+				lap(RenderMetrics.Z_BUFFER, time);
+		}
+
+		if (timed) {
+			counters[RenderMetrics.PIXELS_TESTED] = fragments[0];
+			counters[RenderMetrics.PIXELS_WRITTEN] = fragments[1];
+			counters[RenderMetrics.DEPTH_REJECTS] = fragments[0] - fragments[1];
+			metrics.recordFrame(stageNanos, stagesRun, counters);
+		}
+	}
+
+	/**
+	 * Copies the rendered frame into a new BufferedImage, recording how long
+	 * that took as the blit stage.
+	 */
+	public BufferedImage toImage() {
+		if (metrics == null || !metrics.isEnabled())
+			return framebuffer.toImage();
+
+		long start = System.nanoTime();
+		BufferedImage image = framebuffer.toImage();
+		metrics.recordStage(RenderMetrics.BLIT, System.nanoTime() - start);
+		return image;
+	}
+
+	/**
+	 * Puts a shaded polygon in the bins of the tiles it covers, keeping what
+	 * it is to be drawn with until drawTiles: its colour, or its corner
+	 * colours when smooth shading.
+	 */
+	private void bin(Polygon poly, int rgb, int shadowRgb, Vector3D unitLight) {
+		int n = binner.add(poly, viewportScale);
+		if (n >= binnedPolygons.length) {
+			int size = Math.max(16, n * 2);
+			binnedPolygons = Arrays.copyOf(binnedPolygons, size);
+			binnedRgb = Arrays.copyOf(binnedRgb, size);
+			binnedShadowRgb = Arrays.copyOf(binnedShadowRgb, size);
+			binnedCos = Arrays.copyOf(binnedCos, size);
+			binnedCorners = Arrays.copyOf(binnedCorners, size * 3);
+		}
+		binnedPolygons[n] = poly;
+		binnedRgb[n] = rgb;
+		binnedShadowRgb[n] = shadowRgb;
+		if (shadowMap != null)
+			binnedCos[n] = poly.getNormal().cosTheta(unitLight);
+		System.arraycopy(cornerColours, 0, binnedCorners, n * 3, 3);
+	}
+
+	/**
+	 * Draws the binned polygons a tile at a time, each tile's in the order
+	 * they were binned. Each polygon's edge list is worked out again for
+	 * each tile it is in, but only the tile's rows of it, rather than
+	 * keeping every polygon's edge list for the whole frame.
+	 */
+	private void drawTiles(boolean smooth, boolean prepass, ShadowMap shadows) {
+		int[] bins = binner.getBins();
+		for (int t = 0; t < binner.getTileCount(); t++) {
+			int minX = binner.getTileMinX(t);
+			int minY = binner.getTileMinY(t);
+			int maxX = binner.getTileMaxX(t);
+			int maxY = binner.getTileMaxY(t);
+			int start = binner.getStart(t);
+			int end = start + binner.getCount(t);
+
+			for (int k = start; k < end; k++) {
+				int n = bins[k];
+				if (shadows != null)
+					shadows.setSurface(binnedCos[n]);
+				if (smooth) {
+					System.arraycopy(binnedCorners, n * 3, cornerColours, 0, 3);
+					Pipeline.computeEdgeList(binnedPolygons[n], cornerColours, tileEdges, minY, maxY, viewportScale);
+					Pipeline.computeSmoothZBuffer(framebuffer, tileEdges, prepass, shadows, binnedShadowRgb[n],
+							timed ? fragments : null, overdraw, minX, minY, maxX, maxY);
+				} else {
+					Pipeline.computeEdgeList(binnedPolygons[n], null, tileEdges, minY, maxY, viewportScale);
+					Pipeline.computeZBuffer(framebuffer, tileEdges, binnedRgb[n], prepass, shadows,
+							binnedShadowRgb[n], timed ? fragments : null, overdraw, minX, minY, maxX, maxY);
+				}
+			}
+		}
+		// let the polygons go
+		Arrays.fill(binnedPolygons, 0, binner.getAddedCount(), null);
+	}
+
+	/**
+	 * Works out the light from the extra lights at a point into light,
+	 * looking only at the point lights of the tile it is in.
+	 */
+	private void lightPoint(LightSet lights, float x, float y, float z, Vector3D normal) {
+		int tile = lightTiles.tileAt(x, y);
+		lights.light(x, y, z, normal.x, normal.y, normal.z, lightTiles.getLights(), lightTiles.getStart(tile),
+				lightTiles.getEnd(tile), light);
+	}
+
+	/**
+	 * Adds the time since start to the given stage and returns the current
+	 * time, to start timing the next stage from.
+	 */
+	private long lap(int stage, long start) {
+		long now = System.nanoTime();
+		stageNanos[stage] += now - start;
+		stagesRun |= 1 << stage;
+		return now;
+	}
+
+	/**
+	 * Sets the polygons to be hidden or not
+	 */
+	public static void calculateIfHidden(List<Polygon> polygons) {
+		for (Polygon p : polygons)
+			p.setHidden(Pipeline.isHidden(p));
+	}
+
+	/**
+	 * Calculates the normal for all the polygons
+	 */
+	public static void computeNormals(List<Polygon> polygons) {
+		for (Polygon p : polygons) {
+			Vector3D[] vectors = p.getVertices();
+			Vector3D first = vectors[0];
+			Vector3D second = vectors[1];
+			Vector3D third = vectors[2];
+
+			Vector3D secondV = second.minus(first);
+			Vector3D thirdV = third.minus(second);
+
+			Vector3D normal = secondV.crossProduct(thirdV).unitVector();
+			p.setNormal(normal);
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package renderer;
+
+/**
+ * Keeps simple statistics about how long frames take to render. The most
+ * recent frame times are kept in a small ring buffer so that a rolling
+ * average can be reported alongside the totals.
+ */
+public class FrameStats {
+
+	private static final int WINDOW = 60;
+
+	private final String label;
+	private final long[] recent = new long[WINDOW];
+	private int next;
+	private long count;
+	private long total;
+	private long min = Long.MAX_VALUE;
+	private long max;
+	private long last;
+
+	public FrameStats() {
+		this("frames");
+	}
+
+	/**
+	 * @param label
+	 *            What is being timed, e.g. "jobs", as shown by toString.
+	 */
+	public FrameStats(String label) {
+		this.label = label;
+	}
+
+	/**
+	 * Records a single frame.
+	 * 
+	 * @param nanos
+	 *            How long the frame took to render, in nanoseconds.
+	 */
+	public void record(long nanos) {
+		recent[next] = nanos;
+		next = (next + 1) % WINDOW;
+		count++;
+		total += nanos;
+		last = nanos;
+		if (nanos < min)
+			min = nanos;
+		if (nanos > max)
+			max = nanos;
+	}
+
+	public long getFrameCount() {
+		return count;
+	}
+
+	public long getLastNanos() {
+		return last;
+	}
+
+	public long getMinNanos() {
+		return count == 0 ? 0 : min;
+	}
+
+	public long getMaxNanos() {
+		return max;
+	}
+
+	public double getMeanMillis() {
+		return count == 0 ? 0 : total / (double) count / 1e6;
+	}
+
+	/**
+	 * Returns the average frame time over the last few frames, in
+	 * milliseconds.
+	 */
+	public double getRecentMillis() {
+		int n = (int) Math.min(count, WINDOW);
+		if (n == 0)
+			return 0;
+
+		long sum = 0;
+		for (int i = 0; i < n; i++)
+			sum += recent[i];
+		return sum / (double) n / 1e6;
+	}
+
+	public void reset() {
+		next = 0;
+		count = 0;
+		total = 0;
+		min = Long.MAX_VALUE;
+		max = 0;
+		last = 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: %d, last: %.1f ms, recent: %.1f ms, mean: %.1f ms, max: %.1f ms",
+				label, count, last / 1e6, getRecentMillis(), getMeanMillis(), max / 1e6);
+	}
+}
@@ -0,0 +1,425 @@
+package renderer;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * A colour buffer and depth buffer of a fixed size that a frame is rendered
+ * into. Colours are stored as packed RGB ints. Both buffers are flat arrays
+ * laid out row by row, so pixel (x, y) is at index y * width + x and walking
+ * along a row, as the rasterizer does, walks along memory.
+ *
+ * Depths are floats unless setDepthBits asks for them to be stored in fewer
+ * bits, see QuantizedDepthBuffer.
+ *
+ * A direct framebuffer keeps its colours and float depths in direct
+ * ByteBuffers, outside the Java heap, so big framebuffers that live a long
+ * time don't have to be copied around by the garbage collector, and a
+ * finished frame can be handed to a channel by writeTo without copying it.
+ * The memory is given back once the framebuffer itself has been collected.
+ *
+ * With a lazy clear (see setLazyClear) clearing the framebuffer only marks
+ * its tiles as not cleared yet, and each tile is cleared the first time
+ * something is drawn in it. The rasterizers say where they are about to draw
+ * with touch; setRGB, setDepth and the depth tests don't check, so anything
+ * else drawing into a lazily cleared framebuffer has to call touch first.
+ * Tiles that nothing was drawn in are never cleared at all, and read back as
+ * the background.
+ */
+public class Framebuffer {
+
+	private final int width;
+	private final int height;
+	// the colours are in exactly one of these
+	private final int[] colour;
+	private final ByteBuffer directBytes;
+	private final IntBuffer directColour;
+	// and the depths in exactly one of these
+	private float[] depth;
+	private FloatBuffer directDepth;
+	private QuantizedDepthBuffer quantized;
+
+	public static final int CLEAR_TILE_SIZE = 64;
+	private static final int CLEAR_TILE_SHIFT = 6;
+	// with a lazy clear, a bit for each tile saying whether it has been
+	// cleared since the last clear, and what to clear it to
+	private long[] cleared;
+	private int tilesX;
+	private int background;
+
+	public Framebuffer(int width, int height) {
+		this(width, height, false);
+	}
+
+	/**
+	 * @param direct
+	 *            Whether to keep the buffers outside the Java heap.
+	 */
+	public Framebuffer(int width, int height, boolean direct) {
+		if (width <= 0 || height <= 0)
+			throw new IllegalArgumentException("Framebuffer: bad size " + width + "x" + height);
+		if ((long) width * height * 4 > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Framebuffer: too big " + width + "x" + height);
+
+		this.width = width;
+		this.height = height;
+		if (direct) {
+			this.colour = null;
+			this.directBytes = ByteBuffer.allocateDirect(width * height * 4);
+			this.directColour = directBytes.asIntBuffer();
+			this.directDepth = ByteBuffer.allocateDirect(width * height * 4).order(ByteOrder.nativeOrder())
+					.asFloatBuffer();
+		} else {
+			this.colour = new int[width * height];
+			this.directBytes = null;
+			this.directColour = null;
+			this.depth = new float[width * height];
+		}
+	}
+
+	/** Whether the buffers are outside the Java heap. */
+	public boolean isDirect() {
+		return directColour != null;
+	}
+
+	/**
+	 * Fills the colour buffer with the background and pushes every depth as
+	 * far away as it will go.
+	 */
+	public void clear(Color background) {
+		int rgb = background.getRGB() & 0xFFFFFF;
+		if (cleared != null) {
+			this.background = rgb;
+			Arrays.fill(cleared, 0);
+			return;
+		}
+		if (colour != null) {
+			Arrays.fill(colour, rgb);
+		} else {
+			for (int i = 0; i < width * height; i++)
+				directColour.put(i, rgb);
+		}
+
+		if (quantized != null) {
+			quantized.clear();
+		} else if (depth != null) {
+			Arrays.fill(depth, Integer.MAX_VALUE);
+		} else {
+			for (int i = 0; i < width * height; i++)
+				directDepth.put(i, Integer.MAX_VALUE);
+		}
+	}
+
+	/**
+	 * Whether clear leaves each tile to be cleared when something is first
+	 * drawn in it, so starting a frame only costs a bit per tile rather than
+	 * writing every pixel.
+	 */
+	public void setLazyClear(boolean lazy) {
+		if (!lazy) {
+			resolve();
+			cleared = null;
+		} else if (cleared == null) {
+			tilesX = (width + CLEAR_TILE_SIZE - 1) >> CLEAR_TILE_SHIFT;
+			int tiles = tilesX * ((height + CLEAR_TILE_SIZE - 1) >> CLEAR_TILE_SHIFT);
+			// whatever is there now stays until the next clear
+			cleared = new long[(tiles + 63) >> 6];
+			Arrays.fill(cleared, -1);
+		}
+	}
+
+	public boolean isLazyClear() {
+		return cleared != null;
+	}
+
+	/**
+	 * With a lazy clear, clears any tiles in the rectangle from (minX, minY)
+	 * up to but not including (maxX, maxY) that haven't been cleared since
+	 * the last clear. Does nothing otherwise.
+	 */
+	public void touch(int minX, int minY, int maxX, int maxY) {
+		if (cleared == null)
+			return;
+		minX = Math.max(minX, 0);
+		minY = Math.max(minY, 0);
+		maxX = Math.min(maxX, width);
+		maxY = Math.min(maxY, height);
+		if (minX >= maxX || minY >= maxY)
+			return;
+
+		for (int ty = minY >> CLEAR_TILE_SHIFT; ty <= (maxY - 1) >> CLEAR_TILE_SHIFT; ty++) {
+			for (int tx = minX >> CLEAR_TILE_SHIFT; tx <= (maxX - 1) >> CLEAR_TILE_SHIFT; tx++) {
+				int tile = ty * tilesX + tx;
+				if ((cleared[tile >> 6] & 1L << tile) == 0) {
+					clearTile(tx, ty);
+					cleared[tile >> 6] |= 1L << tile;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Clears every tile that hasn't been cleared since the last clear, so
+	 * that every pixel holds what it should.
+	 */
+	public void resolve() {
+		touch(0, 0, width, height);
+	}
+
+	private boolean isCleared(int x, int y) {
+		int tile = (y >> CLEAR_TILE_SHIFT) * tilesX + (x >> CLEAR_TILE_SHIFT);
+		return (cleared[tile >> 6] & 1L << tile) != 0;
+	}
+
+	private void clearTile(int tx, int ty) {
+		int minX = tx << CLEAR_TILE_SHIFT;
+		int maxX = Math.min(minX + CLEAR_TILE_SIZE, width);
+		int minY = ty << CLEAR_TILE_SHIFT;
+		int maxY = Math.min(minY + CLEAR_TILE_SIZE, height);
+		for (int y = minY; y < maxY; y++) {
+			int from = y * width + minX;
+			int to = y * width + maxX;
+			if (colour != null) {
+				Arrays.fill(colour, from, to, background);
+			} else {
+				for (int i = from; i < to; i++)
+					directColour.put(i, background);
+			}
+
+			if (quantized != null) {
+				quantized.clear(from, to);
+			} else if (depth != null) {
+				Arrays.fill(depth, from, to, Integer.MAX_VALUE);
+			} else {
+				for (int i = from; i < to; i++)
+					directDepth.put(i, Integer.MAX_VALUE);
+			}
+		}
+	}
+
+	/**
+	 * Sets how many bits each depth is stored in: 32 for a float, or 16 or
+	 * 24 for a QuantizedDepthBuffer, which also needs its range set with
+	 * setDepthRange before each frame. The depths are lost. Quantized depths
+	 * are always kept on the Java heap.
+	 * 
+	 * @param reversed
+	 *            For 16 and 24 bits, whether nearer depths are stored as
+	 *            bigger numbers.
+	 */
+	public void setDepthBits(int bits, boolean reversed) {
+		if (bits == 32) {
+			quantized = null;
+			// back where the framebuffer keeps its float depths
+			if (depth == null && directDepth == null) {
+				if (isDirect())
+					directDepth = ByteBuffer.allocateDirect(width * height * 4).order(ByteOrder.nativeOrder())
+							.asFloatBuffer();
+				else
+					depth = new float[width * height];
+			}
+			return;
+		}
+		quantized = new QuantizedDepthBuffer(width, height, bits, reversed);
+		depth = null;
+		directDepth = null;
+	}
+
+	public int getDepthBits() {
+		return quantized == null ? 32 : quantized.getBits();
+	}
+
+	/**
+	 * Returns the quantized depth buffer, or null if depths are floats.
+	 */
+	public QuantizedDepthBuffer getQuantizedDepth() {
+		return quantized;
+	}
+
+	/**
+	 * Sets the nearest and furthest depths of the frame, which only matters
+	 * if they are quantized.
+	 */
+	public void setDepthRange(float near, float far) {
+		if (quantized != null)
+			quantized.setRange(near, far);
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/** Returns the index of pixel (x, y). */
+	public int index(int x, int y) {
+		return y * width + x;
+	}
+
+	public int getRGB(int index) {
+		if (cleared != null && !isCleared(index % width, index / width))
+			return background;
+		return colour != null ? colour[index] : directColour.get(index);
+	}
+
+	public void setRGB(int index, int rgb) {
+		if (colour != null)
+			colour[index] = rgb;
+		else
+			directColour.put(index, rgb);
+	}
+
+	/**
+	 * Copies row y of the colours into row, starting at offset.
+	 */
+	public void getRow(int y, int[] row, int offset) {
+		if (cleared != null) {
+			// a tile at a time, with the background for tiles not cleared
+			for (int x = 0; x < width; x += CLEAR_TILE_SIZE) {
+				int n = Math.min(CLEAR_TILE_SIZE, width - x);
+				if (!isCleared(x, y))
+					Arrays.fill(row, offset + x, offset + x + n, background);
+				else if (colour != null)
+					System.arraycopy(colour, y * width + x, row, offset + x, n);
+				else
+					for (int i = 0; i < n; i++)
+						row[offset + x + i] = directColour.get(y * width + x + i);
+			}
+			return;
+		}
+		if (colour != null) {
+			System.arraycopy(colour, y * width, row, offset, width);
+		} else {
+			IntBuffer rows = directColour.duplicate();
+			rows.position(y * width);
+			rows.get(row, offset, width);
+		}
+	}
+
+	public float getDepth(int index) {
+		if (cleared != null && !isCleared(index % width, index / width))
+			touch(index % width, index / width, index % width + 1, index / width + 1);
+		if (depth != null)
+			return depth[index];
+		return quantized != null ? quantized.getDepth(index) : directDepth.get(index);
+	}
+
+	public void setDepth(int index, float z) {
+		if (depth != null)
+			depth[index] = z;
+		else if (quantized != null)
+			quantized.setDepth(index, z);
+		else
+			directDepth.put(index, z);
+	}
+
+	/**
+	 * The depth test: if z is nearer than the depth stored at index, stores
+	 * it and returns true, otherwise leaves the depth alone and returns false.
+	 */
+	public boolean depthTest(int index, float z) {
+		if (depth == null) {
+			if (quantized != null)
+				return quantized.depthTest(index, z);
+			if (z < directDepth.get(index)) {
+				directDepth.put(index, z);
+				return true;
+			}
+			return false;
+		}
+		if (z < depth[index]) {
+			depth[index] = z;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * The depth test for the second pass of a depth pre-pass, when the depth
+	 * buffer already holds the nearest depth of every pixel: returns true if
+	 * z is that depth. The depth is then nudged nearer, so a later fragment
+	 * at exactly the same depth doesn't pass as well, just as it wouldn't
+	 * have passed depthTest.
+	 */
+	public boolean depthEqual(int index, float z) {
+		if (depth == null) {
+			if (quantized != null)
+				return quantized.depthEqual(index, z);
+			if (z == directDepth.get(index)) {
+				directDepth.put(index, Math.nextDown(z));
+				return true;
+			}
+			return false;
+		}
+		if (z == depth[index]) {
+			depth[index] = Math.nextDown(z);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Whether z is the depth stored at index, as far as can be told, without
+	 * changing it.
+	 */
+	public boolean depthMatches(int index, float z) {
+		if (depth != null)
+			return z == depth[index];
+		return quantized != null ? quantized.depthMatches(index, z) : z == directDepth.get(index);
+	}
+
+	/**
+	 * Returns the depth buffer itself, for passes that only write depth, or
+	 * null if the depths are quantized or direct.
+	 */
+	public float[] getDepthBuffer() {
+		return depth;
+	}
+
+	/**
+	 * Copies the colour buffer into a new BufferedImage.
+	 */
+	public BufferedImage toImage() {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		if (cleared != null) {
+			for (int y = 0; y < height; y++)
+				getRow(y, pixels, y * width);
+		} else if (colour != null)
+			System.arraycopy(colour, 0, pixels, 0, colour.length);
+		else
+			directColour.duplicate().get(pixels);
+		return image;
+	}
+
+	/**
+	 * Writes the colours to a channel, e.g. a FileChannel or SocketChannel,
+	 * as 4 bytes a pixel (0, red, green, blue), row by row from the top. A
+	 * direct framebuffer is written straight from its buffer, without being
+	 * copied first, so with a lazy clear any tiles not yet cleared are
+	 * cleared first.
+	 */
+	public void writeTo(WritableByteChannel channel) throws IOException {
+		resolve();
+		ByteBuffer bytes;
+		if (directBytes != null) {
+			bytes = directBytes.duplicate();
+		} else {
+			bytes = ByteBuffer.allocate(colour.length * 4);
+			bytes.asIntBuffer().put(colour);
+		}
+		bytes.clear();
+		while (bytes.hasRemaining())
+			channel.write(bytes);
+	}
+}
@@ -0,0 +1,111 @@
+package renderer;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Lends out framebuffers, keeping the colours and depths of all of them,
+ * lent or not, within a memory budget. Framebuffers that are given back are
+ * kept to be lent again to the next job of the same size, and the ones that
+ * have been idle longest are dropped when a different size needs the room.
+ * Once the budget is used up, acquire waits for a framebuffer to be given
+ * back. It is safe to use from any number of threads.
+ */
+public class FramebufferPool {
+
+	private final long budget;
+	// idle framebuffers, the longest idle first
+	private final ArrayDeque<Framebuffer> idle = new ArrayDeque<Framebuffer>();
+	private long leasedBytes;
+	private long idleBytes;
+	private long peakBytes;
+	private long created;
+
+	/**
+	 * @param budget
+	 *            How many bytes of colours and depths may be held at once.
+	 */
+	public FramebufferPool(long budget) {
+		if (budget <= 0)
+			throw new IllegalArgumentException("FramebufferPool: bad budget " + budget);
+		this.budget = budget;
+	}
+
+	/**
+	 * Returns the bytes taken by a framebuffer of the given size, 4 for the
+	 * colour and 4 for the depth of each pixel.
+	 */
+	public static long bytesFor(int width, int height) {
+		return (long) width * height * 8;
+	}
+
+	/**
+	 * Lends out a framebuffer of the given size, waiting for there to be room
+	 * for it in the budget if there isn't already. Whatever was last drawn in
+	 * it is still there.
+	 */
+	public synchronized Framebuffer acquire(int width, int height) throws InterruptedException {
+		long bytes = bytesFor(width, height);
+		if (bytes > budget)
+			throw new IllegalArgumentException("FramebufferPool: " + width + "x" + height + " is over the budget");
+
+		while (true) {
+			for (Iterator<Framebuffer> it = idle.iterator(); it.hasNext();) {
+				Framebuffer framebuffer = it.next();
+				if (framebuffer.getWidth() == width && framebuffer.getHeight() == height) {
+					it.remove();
+					idleBytes -= bytes;
+					leasedBytes += bytes;
+					return framebuffer;
+				}
+			}
+
+			if (leasedBytes + idleBytes + bytes <= budget) {
+				leasedBytes += bytes;
+				peakBytes = Math.max(peakBytes, leasedBytes + idleBytes);
+				created++;
+				return new Framebuffer(width, height);
+			}
+
+			if (!idle.isEmpty()) {
+				Framebuffer dropped = idle.removeFirst();
+				idleBytes -= bytesFor(dropped.getWidth(), dropped.getHeight());
+				continue;
+			}
+			wait();
+		}
+	}
+
+	/**
+	 * Gives back a framebuffer lent out by acquire.
+	 */
+	public synchronized void release(Framebuffer framebuffer) {
+		long bytes = bytesFor(framebuffer.getWidth(), framebuffer.getHeight());
+		leasedBytes -= bytes;
+		idleBytes += bytes;
+		idle.addLast(framebuffer);
+		notifyAll();
+	}
+
+	public long getBudget() {
+		return budget;
+	}
+
+	public synchronized long getLeasedBytes() {
+		return leasedBytes;
+	}
+
+	public synchronized long getIdleBytes() {
+		return idleBytes;
+	}
+
+	/** The most bytes ever held at once. */
+	public synchronized long getPeakBytes() {
+		return peakBytes;
+	}
+
+	/** How many framebuffers have been made, rather than reused. */
+	public synchronized long getCreatedCount() {
+		return created;
+	}
+}
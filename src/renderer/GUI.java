@@ -5,8 +5,10 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.KeyEventDispatcher;
 import java.awt.KeyboardFocusManager;
+import java.awt.RenderingHints;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
@@ -20,7 +22,9 @@ import javax.swing.JButton;
 import javax.swing.JComponent;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JSlider;
 import javax.swing.border.Border;
 
@@ -50,7 +54,8 @@ public abstract class GUI {
 
 	/**
 	 * Is called every time the drawing canvas is drawn. This should return a
-	 * BufferedImage that is your render of the scene.
+	 * BufferedImage that is your render of the scene. A smaller image is
+	 * stretched to fill the canvas.
 	 */
 	protected abstract BufferedImage render();
 
@@ -62,6 +67,54 @@ public abstract class GUI {
 		frame.repaint();
 	}
 
+	/**
+	 * Asks for a redraw on the next frame tick rather than straight away, so
+	 * that several requests made within one frame only cause a single render.
+	 */
+	public void requestFrame() {
+		pacer.requestFrame();
+	}
+
+	/**
+	 * Returns the statistics about how long render() has been taking.
+	 */
+	public FrameStats getFrameStats() {
+		return pacer.getStats();
+	}
+
+	/**
+	 * Shows a short line of text, such as statistics about the frame, in the
+	 * title bar of the window.
+	 */
+	public void setStatus(String status) {
+		frame.setTitle(status);
+	}
+
+	/**
+	 * Shows a progress bar under the load button, e.g. while a model loads
+	 * in the background.
+	 * 
+	 * @param percent
+	 *            How far along it is, from 0 to 100.
+	 */
+	public void showProgress(String text, int percent) {
+		progress.setString(text);
+		progress.setValue(percent);
+		progress.setVisible(true);
+	}
+
+	public void hideProgress() {
+		progress.setVisible(false);
+	}
+
+	/**
+	 * Tells the user something went wrong, e.g. that a model couldn't be
+	 * loaded.
+	 */
+	public void showError(String message) {
+		JOptionPane.showMessageDialog(frame, message, "Error", JOptionPane.ERROR_MESSAGE);
+	}
+
 	/**
 	 * Returns the values of the three sliders used for setting the ambient
 	 * light of the scene. The returned array in the form [R, G, B] where each
@@ -81,9 +134,11 @@ public abstract class GUI {
 	// --------------------------------------------------------------------
 
 	private JFrame frame;
+	private FramePacer pacer;
 	private final JSlider red = new JSlider(JSlider.HORIZONTAL, 0, 255, 128);
 	private final JSlider green = new JSlider(JSlider.HORIZONTAL, 0, 255, 128);
 	private final JSlider blue = new JSlider(JSlider.HORIZONTAL, 0, 255, 128);
+	private final JProgressBar progress = new JProgressBar(0, 100);
 
 	private static final Dimension DRAWING_SIZE = new Dimension(CANVAS_WIDTH, CANVAS_HEIGHT);
 	private static final Dimension CONTROLS_SIZE = new Dimension(150, 600);
@@ -103,17 +158,31 @@ public abstract class GUI {
 		frame.setResizable(false);
 		frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
+		// key presses only mark the frame as dirty, the pacer redraws at most
+		// once per tick at the target frame rate.
+		pacer = new FramePacer(FramePacer.DEFAULT_FPS, new Runnable() {
+			public void run() {
+				redraw();
+			}
+		});
+
 		// set up the drawing canvas, hook it into the render() method, and give
 		// it a nice default if render() returns null.
 		JComponent drawing = new JComponent() {
 			protected void paintComponent(Graphics g) {
+				long start = System.nanoTime();
 				BufferedImage image = render();
+				pacer.getStats().record(System.nanoTime() - start);
 				if (image == null) {
 					g.setColor(Color.WHITE);
 					g.fillRect(0, 0, DRAWING_SIZE.width, DRAWING_SIZE.height);
 					g.setColor(Color.BLACK);
 					g.setFont(FONT);
 					g.drawString("IMAGE IS NULL", 50, DRAWING_SIZE.height - 50);
+				} else if (image.getWidth() != DRAWING_SIZE.width || image.getHeight() != DRAWING_SIZE.height) {
+					((Graphics2D) g).setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+							RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+					g.drawImage(image, 0, 0, DRAWING_SIZE.width, DRAWING_SIZE.height, null);
 				} else {
 					g.drawImage(image, 0, 0, null);
 				}
@@ -152,6 +221,11 @@ public abstract class GUI {
 		loadpanel.setPreferredSize(new Dimension(1000, 25));
 		loadpanel.add(load, BorderLayout.CENTER);
 
+		// the progress of a load, only shown while there is one
+		progress.setStringPainted(true);
+		progress.setMaximumSize(new Dimension(1000, 20));
+		progress.setVisible(false);
+
 		// set up the sliders for ambient light. they were instantiated in
 		// the field definition, as for some reason they need to be final to
 		// pull the set background trick.
@@ -177,7 +251,7 @@ public abstract class GUI {
 			public boolean dispatchKeyEvent(KeyEvent ev) {
 				if (ev.getID() == KeyEvent.KEY_PRESSED) {
 					onKeyPress(ev);
-					redraw();
+					requestFrame();
 				}
 				return true;
 			}
@@ -193,6 +267,7 @@ public abstract class GUI {
 		controls.setBorder(edge);
 
 		controls.add(loadpanel);
+		controls.add(progress);
 		controls.add(Box.createRigidArea(new Dimension(0, 15)));
 		controls.add(sliderparty);
 		// if i were going to add more GUI components, i'd do it here.
@@ -0,0 +1,150 @@
+package renderer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes an image in some file format to a channel a row at a time, straight
+ * from packed RGB ints, so a frame can be written out without making a
+ * BufferedImage of it or going through ImageIO. Only a small buffer of output
+ * is kept, so how big an image can be written doesn't depend on memory.
+ *
+ * An encoder writes one image at a time: begin, then writeRow for each row
+ * from the top, then end. It can then be used for the next image, and is
+ * closed once there are no more.
+ */
+public abstract class ImageEncoder {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int used;
+	private WritableByteChannel out;
+
+	protected int width;
+	protected int height;
+
+	/**
+	 * Returns the encoder for a format: ppm, pam, png (fast deflate), png0
+	 * (no compression) or qoi.
+	 */
+	public static ImageEncoder forName(String name) {
+		if (name.equals("ppm"))
+			return new PnmEncoder(false);
+		if (name.equals("pam"))
+			return new PnmEncoder(true);
+		if (name.equals("png"))
+			return new PngEncoder(1);
+		if (name.equals("png0"))
+			return new PngEncoder(0);
+		if (name.equals("qoi"))
+			return new QoiEncoder();
+		throw new IllegalArgumentException("ImageEncoder: unknown format " + name);
+	}
+
+	/** The file name extension of the format, without the dot. */
+	public abstract String getExtension();
+
+	/**
+	 * Starts an image, writing its header.
+	 */
+	public void begin(int width, int height, WritableByteChannel out) throws IOException {
+		if (width <= 0 || height <= 0)
+			throw new IllegalArgumentException("ImageEncoder: bad size " + width + "x" + height);
+		this.width = width;
+		this.height = height;
+		this.out = out;
+		used = 0;
+		writeHeader();
+	}
+
+	/**
+	 * Writes the next row of the image, from rgb[offset] to
+	 * rgb[offset + width - 1].
+	 */
+	public abstract void writeRow(int[] rgb, int offset) throws IOException;
+
+	/**
+	 * Finishes the image, writing everything that is left to the channel.
+	 * The channel is left open.
+	 */
+	public void end() throws IOException {
+		writeTrailer();
+		flush();
+		out = null;
+	}
+
+	/**
+	 * Frees anything the encoder holds outside the heap, after which it
+	 * can't be used. An image that was begun but not ended is dropped.
+	 */
+	public void close() {
+	}
+
+	protected abstract void writeHeader() throws IOException;
+
+	protected void writeTrailer() throws IOException {
+	}
+
+	/**
+	 * Writes a whole framebuffer as an image.
+	 */
+	public void encode(Framebuffer framebuffer, WritableByteChannel out) throws IOException {
+		int[] row = new int[framebuffer.getWidth()];
+		begin(framebuffer.getWidth(), framebuffer.getHeight(), out);
+		for (int y = 0; y < framebuffer.getHeight(); y++) {
+			framebuffer.getRow(y, row, 0);
+			writeRow(row, 0);
+		}
+		end();
+	}
+
+	/**
+	 * Writes an image held as packed RGB ints, row by row.
+	 */
+	public void encode(int[] rgb, int width, int height, WritableByteChannel out) throws IOException {
+		begin(width, height, out);
+		for (int y = 0; y < height; y++)
+			writeRow(rgb, y * width);
+		end();
+	}
+
+	protected final void put(int b) throws IOException {
+		if (used == buffer.length)
+			flush();
+		buffer[used++] = (byte) b;
+	}
+
+	protected final void put(byte[] bytes, int offset, int length) throws IOException {
+		while (length > 0) {
+			if (used == buffer.length)
+				flush();
+			int n = Math.min(length, buffer.length - used);
+			System.arraycopy(bytes, offset, buffer, used, n);
+			used += n;
+			offset += n;
+			length -= n;
+		}
+	}
+
+	/** Writes an int, most significant byte first. */
+	protected final void putInt(int i) throws IOException {
+		put(i >>> 24);
+		put(i >>> 16);
+		put(i >>> 8);
+		put(i);
+	}
+
+	protected final void put(String ascii) throws IOException {
+		for (int i = 0; i < ascii.length(); i++)
+			put(ascii.charAt(i));
+	}
+
+	private void flush() throws IOException {
+		ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, used);
+		while (bytes.hasRemaining())
+			out.write(bytes);
+		used = 0;
+	}
+}
@@ -0,0 +1,62 @@
+package renderer;
+
+import java.awt.Color;
+
+/**
+ * One copy of a SharedMesh in a SceneGraph, with its own transform and tint.
+ * An instance only keeps a reference to the mesh, so a scene with thousands
+ * of instances takes little more memory than one with a single instance.
+ */
+public class Instance extends SceneNode {
+
+	private final SharedMesh mesh;
+	private Color tint;
+
+	// the bounding box in world coordinates, worked out with the world
+	// transform
+	private final Vector3D[] worldCorners = new Vector3D[8];
+
+	public Instance(SharedMesh mesh) {
+		this(mesh, Transform.identity(), null);
+	}
+
+	public Instance(SharedMesh mesh, Transform transform, Color tint) {
+		if (mesh == null)
+			throw new IllegalArgumentException("Instance: no mesh");
+		this.mesh = mesh;
+		this.tint = tint;
+		setTransform(transform);
+	}
+
+	public SharedMesh getMesh() {
+		return mesh;
+	}
+
+	public Color getTint() {
+		return tint;
+	}
+
+	/**
+	 * Sets the colour the mesh's reflectances are multiplied by, or null to
+	 * draw it as it is.
+	 */
+	public void setTint(Color tint) {
+		this.tint = tint;
+	}
+
+	/**
+	 * Returns the corners of the mesh's bounding box in world coordinates.
+	 */
+	public Vector3D[] getWorldCorners() {
+		getWorldTransform();
+		return worldCorners;
+	}
+
+	@Override
+	protected void updated() {
+		Transform world = getWorldTransform();
+		Vector3D[] corners = mesh.getCorners();
+		for (int i = 0; i < 8; i++)
+			worldCorners[i] = world.multiply(corners[i]);
+	}
+}
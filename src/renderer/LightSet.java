@@ -0,0 +1,246 @@
+package renderer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The extra lights of a scene, on top of the single directional light in the
+ * model file's header. There are two kinds:
+ *
+ * Directional lights shine everywhere from a fixed direction, given in view
+ * space like the header light, so they stay put as the model is rotated.
+ *
+ * Point lights sit at a position in the model and move with it. Their light
+ * fades out with distance and reaches nothing further away than their range,
+ * which is what lets LightTiles skip them for most of the screen.
+ *
+ * Everything is kept in float arrays, one value per light, rather than as a
+ * light object each, as shading runs through them for every polygon.
+ */
+public class LightSet {
+
+	private int directionalCount;
+	// unit vectors towards the light
+	private float[] dirX = new float[4], dirY = new float[4], dirZ = new float[4];
+	private float[] dirR = new float[4], dirG = new float[4], dirB = new float[4];
+
+	private int pointCount;
+	private float[] pointX = new float[4], pointY = new float[4], pointZ = new float[4];
+	private float[] pointR = new float[4], pointG = new float[4], pointB = new float[4];
+	private float[] range = new float[4];
+
+	/**
+	 * Adds a directional light.
+	 *
+	 * @param x
+	 *            The direction towards the light, as for the header light.
+	 * @param r
+	 *            The colour of the light, where 255 is as bright as the
+	 *            header light at full strength. Brighter values are allowed.
+	 */
+	public void addDirectional(float x, float y, float z, float r, float g, float b) {
+		float length = (float) Math.sqrt(x * x + y * y + z * z);
+		if (length == 0)
+			throw new IllegalArgumentException("LightSet: directional light with no direction");
+
+		if (directionalCount == dirX.length) {
+			int size = directionalCount * 2;
+			dirX = Arrays.copyOf(dirX, size);
+			dirY = Arrays.copyOf(dirY, size);
+			dirZ = Arrays.copyOf(dirZ, size);
+			dirR = Arrays.copyOf(dirR, size);
+			dirG = Arrays.copyOf(dirG, size);
+			dirB = Arrays.copyOf(dirB, size);
+		}
+		int i = directionalCount++;
+		dirX[i] = x / length;
+		dirY[i] = y / length;
+		dirZ[i] = z / length;
+		dirR[i] = r;
+		dirG[i] = g;
+		dirB[i] = b;
+	}
+
+	/**
+	 * Adds a point light at (x, y, z), in the same coordinates as the model,
+	 * that lights nothing further away than range.
+	 */
+	public void addPoint(float x, float y, float z, float r, float g, float b, float range) {
+		if (range <= 0)
+			throw new IllegalArgumentException("LightSet: point light range must be positive: " + range);
+
+		if (pointCount == pointX.length) {
+			int size = pointCount * 2;
+			pointX = Arrays.copyOf(pointX, size);
+			pointY = Arrays.copyOf(pointY, size);
+			pointZ = Arrays.copyOf(pointZ, size);
+			pointR = Arrays.copyOf(pointR, size);
+			pointG = Arrays.copyOf(pointG, size);
+			pointB = Arrays.copyOf(pointB, size);
+			this.range = Arrays.copyOf(this.range, size);
+		}
+		int i = pointCount++;
+		pointX[i] = x;
+		pointY[i] = y;
+		pointZ[i] = z;
+		pointR[i] = r;
+		pointG[i] = g;
+		pointB[i] = b;
+		this.range[i] = range;
+	}
+
+	public int getDirectionalCount() {
+		return directionalCount;
+	}
+
+	public int getPointCount() {
+		return pointCount;
+	}
+
+	public float getPointX(int i) {
+		return pointX[i];
+	}
+
+	public float getPointY(int i) {
+		return pointY[i];
+	}
+
+	public float getPointZ(int i) {
+		return pointZ[i];
+	}
+
+	public float getRange(int i) {
+		return range[i];
+	}
+
+	/**
+	 * Returns a copy with the point lights moved by the transform, and their
+	 * ranges scaled along with it. A transform that stretches some ways more
+	 * than others scales the ranges by the most it stretches any axis, so a
+	 * light reaches at least as far as it should. Directional lights are
+	 * left as they are.
+	 */
+	public LightSet transformed(Transform t) {
+		LightSet copy = new LightSet();
+		for (int i = 0; i < directionalCount; i++)
+			copy.addDirectional(dirX[i], dirY[i], dirZ[i], dirR[i], dirG[i], dirB[i]);
+
+		if (pointCount > 0) {
+			float scale = Math.max(t.multiplyDirection(new Vector3D(1, 0, 0)).mag,
+					Math.max(t.multiplyDirection(new Vector3D(0, 1, 0)).mag,
+							t.multiplyDirection(new Vector3D(0, 0, 1)).mag));
+			for (int i = 0; i < pointCount; i++) {
+				Vector3D p = t.multiply(new Vector3D(pointX[i], pointY[i], pointZ[i]));
+				copy.addPoint(p.x, p.y, p.z, pointR[i], pointG[i], pointB[i], range[i] * scale);
+			}
+		}
+		return copy;
+	}
+
+	/**
+	 * Adds up the light reaching a point on a surface from the directional
+	 * lights and the given point lights, and stores the red, green and blue
+	 * of it in out.
+	 *
+	 * @param nx
+	 *            The unit normal of the surface.
+	 * @param points
+	 *            The indices of the point lights to include, in
+	 *            points[from] to points[to - 1]. See LightTiles.
+	 */
+	public void light(float x, float y, float z, float nx, float ny, float nz, int[] points, int from, int to,
+			float[] out) {
+		float r = 0, g = 0, b = 0;
+
+		for (int i = 0; i < directionalCount; i++) {
+			float cos = nx * dirX[i] + ny * dirY[i] + nz * dirZ[i];
+			if (cos > 0) {
+				r += dirR[i] * cos;
+				g += dirG[i] * cos;
+				b += dirB[i] * cos;
+			}
+		}
+
+		for (int k = from; k < to; k++) {
+			int i = points[k];
+			float lx = pointX[i] - x;
+			float ly = pointY[i] - y;
+			float lz = pointZ[i] - z;
+			float distance = (float) Math.sqrt(lx * lx + ly * ly + lz * lz);
+			if (distance >= range[i] || distance == 0)
+				continue;
+
+			float cos = (nx * lx + ny * ly + nz * lz) / distance;
+			if (cos <= 0)
+				continue;
+
+			// fades smoothly to nothing at the edge of the range
+			float fade = 1 - distance / range[i];
+			fade *= fade * cos;
+			r += pointR[i] * fade;
+			g += pointG[i] * fade;
+			b += pointB[i] * fade;
+		}
+
+		out[0] = r;
+		out[1] = g;
+		out[2] = b;
+	}
+
+	/**
+	 * Reads a lights file. Each line is a light, either
+	 *
+	 * directional x y z r g b
+	 *
+	 * point x y z r g b range
+	 *
+	 * Blank lines and lines starting with # are skipped.
+	 */
+	public static LightSet load(File file) throws IOException {
+		LightSet lights = new LightSet();
+		BufferedReader data = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			int lineNumber = 0;
+			while ((line = data.readLine()) != null) {
+				lineNumber++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#"))
+					continue;
+
+				String[] values = line.split("\\s+");
+				try {
+					if (values[0].equals("directional") && values.length == 7) {
+						lights.addDirectional(Float.parseFloat(values[1]), Float.parseFloat(values[2]),
+								Float.parseFloat(values[3]), Float.parseFloat(values[4]), Float.parseFloat(values[5]),
+								Float.parseFloat(values[6]));
+					} else if (values[0].equals("point") && values.length == 8) {
+						lights.addPoint(Float.parseFloat(values[1]), Float.parseFloat(values[2]),
+								Float.parseFloat(values[3]), Float.parseFloat(values[4]), Float.parseFloat(values[5]),
+								Float.parseFloat(values[6]), Float.parseFloat(values[7]));
+					} else {
+						throw new IOException(file.getName() + ":" + lineNumber + ": not a light: " + line);
+					}
+				} catch (IllegalArgumentException e) {
+					// includes NumberFormatException
+					throw new IOException(file.getName() + ":" + lineNumber + ": " + e.getMessage(), e);
+				}
+			}
+		} finally {
+			data.close();
+		}
+		return lights;
+	}
+
+	/**
+	 * Returns the lights file that goes with a model file, i.e. car.lights
+	 * for car.txt.
+	 */
+	public static File sidecar(File model) {
+		String name = model.getName().replaceFirst("\\.[^.]*$", "");
+		return new File(model.getParentFile(), name + ".lights");
+	}
+}
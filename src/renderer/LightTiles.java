@@ -0,0 +1,130 @@
+package renderer;
+
+import java.util.Arrays;
+
+/**
+ * Splits the screen into square tiles and works out which point lights can
+ * reach each one, so shading a polygon only has to look at the lights of the
+ * tile it is in rather than at every light in the scene. A point light only
+ * reaches as far as its range, and as the view is orthographic the part of
+ * the screen it can touch is the circle of that radius around it.
+ *
+ * The lists for all the tiles are packed into one int array, with the lights
+ * of tile t in getLights()[getStart(t)] to getLights()[getEnd(t) - 1]. The
+ * arrays are reused from frame to frame. Positions off the screen, e.g. the
+ * corners of a polygon that is only partly on it, are in an extra tile
+ * numbered getTileCount() that has every point light, as a light off the
+ * screen can reach them without reaching any tile on it.
+ */
+public class LightTiles {
+
+	public static final int TILE_SIZE = 32;
+
+	private final int columns;
+	private final int rows;
+	// tile t's lights are lights[offsets[t]] to lights[offsets[t + 1] - 1],
+	// with the tile off the screen last
+	private final int[] offsets;
+	private int[] lights = new int[64];
+
+	public LightTiles(int width, int height) {
+		this.columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+		this.rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+		this.offsets = new int[columns * rows + 2];
+	}
+
+	/**
+	 * Works out the lights of every tile. The lights must already be in
+	 * screen coordinates.
+	 */
+	public void build(LightSet set) {
+		Arrays.fill(offsets, 0);
+		int n = set.getPointCount();
+
+		// count the lights of each tile, one along, so the sums below come
+		// out as the start of each tile
+		for (int i = 0; i < n; i++) {
+			forEachTile(set, i, -1);
+		}
+		for (int t = 1; t < offsets.length; t++)
+			offsets[t] += offsets[t - 1];
+
+		if (lights.length < offsets[offsets.length - 1])
+			lights = new int[offsets[offsets.length - 1] * 2];
+
+		// then fill them in, moving each tile's start along as we go, and
+		// put the starts back afterwards
+		for (int i = 0; i < n; i++) {
+			forEachTile(set, i, i);
+		}
+		for (int t = offsets.length - 1; t > 0; t--)
+			offsets[t] = offsets[t - 1];
+		offsets[0] = 0;
+	}
+
+	/**
+	 * Goes through the tiles light i reaches, and the tile off the screen.
+	 * If light is -1 each tile's count (at offsets[t + 1]) goes up,
+	 * otherwise the light is stored at the tile's next free place.
+	 */
+	private void forEachTile(LightSet set, int i, int light) {
+		float x = set.getPointX(i);
+		float y = set.getPointY(i);
+		float r = set.getRange(i);
+
+		int minCol = Math.max(0, (int) Math.floor((x - r) / TILE_SIZE));
+		int maxCol = Math.min(columns - 1, (int) Math.floor((x + r) / TILE_SIZE));
+		int minRow = Math.max(0, (int) Math.floor((y - r) / TILE_SIZE));
+		int maxRow = Math.min(rows - 1, (int) Math.floor((y + r) / TILE_SIZE));
+
+		for (int row = minRow; row <= maxRow; row++) {
+			for (int col = minCol; col <= maxCol; col++) {
+				// the nearest point of the tile to the light
+				float nx = Math.max(col * TILE_SIZE, Math.min(x, (col + 1) * TILE_SIZE));
+				float ny = Math.max(row * TILE_SIZE, Math.min(y, (row + 1) * TILE_SIZE));
+				if ((nx - x) * (nx - x) + (ny - y) * (ny - y) > r * r)
+					continue;
+
+				add(row * columns + col, light);
+			}
+		}
+		add(columns * rows, light);
+	}
+
+	private void add(int t, int light) {
+		if (light < 0)
+			offsets[t + 1]++;
+		else
+			lights[offsets[t]++] = light;
+	}
+
+	/**
+	 * Returns the tile the screen position is in, or getTileCount() if it is
+	 * off the screen.
+	 */
+	public int tileAt(float x, float y) {
+		if (x < 0 || y < 0)
+			return columns * rows;
+		int col = (int) (x / TILE_SIZE);
+		int row = (int) (y / TILE_SIZE);
+		if (col >= columns || row >= rows)
+			return columns * rows;
+		return row * columns + col;
+	}
+
+	public int getTileCount() {
+		return columns * rows;
+	}
+
+	public int[] getLights() {
+		return lights;
+	}
+
+	public int getStart(int tile) {
+		return offsets[tile];
+	}
+
+	public int getEnd(int tile) {
+		return offsets[tile + 1];
+	}
+}
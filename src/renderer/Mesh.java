@@ -0,0 +1,245 @@
+package renderer;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An indexed triangle mesh: an array of unique vertices and, for each
+ * polygon, the indices of its three vertices in that array. Model files list
+ * the three vertices of every polygon separately, so in a closed mesh the same
+ * position turns up about six times; welding them together means each one is
+ * only transformed once.
+ * 
+ * The polygons of a welded scene share the Vector3D objects of the mesh, so
+ * polygon i's vertices are vertices[indices[3 * i]], vertices[indices[3 * i +
+ * 1]] and vertices[indices[3 * i + 2]].
+ */
+public class Mesh {
+
+	/** How close two positions must be to be welded into one vertex. */
+	public static final float WELD_EPSILON = 1e-4f;
+
+	private final Vector3D[] vertices;
+	private final int[] indices;
+	// worked out the first time they're asked for
+	private Vector3D[] normals;
+
+	public Mesh(Vector3D[] vertices, int[] indices) {
+		this(vertices, indices, null);
+	}
+
+	/**
+	 * A mesh whose vertex normals are already known, e.g. read back from a
+	 * SceneSnapshot.
+	 */
+	public Mesh(Vector3D[] vertices, int[] indices, Vector3D[] normals) {
+		if (indices.length % 3 != 0)
+			throw new IllegalArgumentException("Mesh: indices must come in threes: " + indices.length);
+
+		this.vertices = vertices;
+		this.indices = indices;
+		this.normals = normals;
+	}
+
+	public Vector3D[] getVertices() {
+		return vertices;
+	}
+
+	public int[] getIndices() {
+		return indices;
+	}
+
+	public int getVertexCount() {
+		return vertices.length;
+	}
+
+	public int getPolygonCount() {
+		return indices.length / 3;
+	}
+
+	/**
+	 * Returns the unit normal of every vertex, the average of the normals of
+	 * the polygons around it weighted by their area. They are only computed
+	 * once, and after that are carried along by transformed().
+	 */
+	public Vector3D[] getNormals() {
+		if (normals == null)
+			normals = computeNormals();
+		return normals;
+	}
+
+	private Vector3D[] computeNormals() {
+		float[] sum = new float[vertices.length * 3];
+		for (int i = 0; i < indices.length; i += 3) {
+			Vector3D a = vertices[indices[i]];
+			Vector3D b = vertices[indices[i + 1]];
+			Vector3D c = vertices[indices[i + 2]];
+
+			// the same way round as the polygon normals. not normalised, so
+			// bigger polygons count for more
+			Vector3D face = (b.minus(a)).crossProduct(c.minus(b));
+			for (int v = 0; v < 3; v++) {
+				int index = indices[i + v] * 3;
+				sum[index] += face.x;
+				sum[index + 1] += face.y;
+				sum[index + 2] += face.z;
+			}
+		}
+
+		Vector3D[] result = new Vector3D[vertices.length];
+		for (int v = 0; v < vertices.length; v++)
+			result[v] = new Vector3D(sum[v * 3], sum[v * 3 + 1], sum[v * 3 + 2]).unitVector();
+		return result;
+	}
+
+	/**
+	 * Welds together the vertices of the polygons that are within epsilon of
+	 * each other, and points the polygons at the shared vertices.
+	 * 
+	 * Positions are hashed into a grid of cells epsilon wide, so a vertex
+	 * only has to be compared against those in its own and the neighbouring
+	 * cells.
+	 */
+	public static Mesh weld(List<Polygon> polygons, float epsilon) {
+		int[] indices = new int[polygons.size() * 3];
+		Vector3D[] unique = new Vector3D[Math.max(16, polygons.size())];
+		int[] next = new int[unique.length]; // chains vertices in the same cell
+		int count = 0;
+
+		Map<Long, Integer> cells = new HashMap<Long, Integer>();
+
+		int i = 0;
+		for (Polygon poly : polygons) {
+			Vector3D[] verts = poly.getVertices();
+			for (int v = 0; v < 3; v++) {
+				Vector3D p = verts[v];
+				int cx = cell(p.x, epsilon), cy = cell(p.y, epsilon), cz = cell(p.z, epsilon);
+
+				int found = find(p, cx, cy, cz, epsilon, cells, unique, next);
+				if (found < 0) {
+					if (count == unique.length) {
+						unique = Arrays.copyOf(unique, count * 2);
+						next = Arrays.copyOf(next, count * 2);
+					}
+					found = count++;
+					unique[found] = p;
+
+					Long key = key(cx, cy, cz);
+					Integer head = cells.get(key);
+					next[found] = head == null ? -1 : head;
+					cells.put(key, found);
+				}
+
+				indices[i++] = found;
+				verts[v] = unique[found];
+			}
+			poly.setVectors(verts);
+		}
+
+		return new Mesh(Arrays.copyOf(unique, count), indices);
+	}
+
+	/**
+	 * Looks for a vertex within epsilon of p in the cells around (cx, cy,
+	 * cz), returning its index or -1.
+	 */
+	private static int find(Vector3D p, int cx, int cy, int cz, float epsilon, Map<Long, Integer> cells,
+			Vector3D[] unique, int[] next) {
+		for (int dx = -1; dx <= 1; dx++) {
+			for (int dy = -1; dy <= 1; dy++) {
+				for (int dz = -1; dz <= 1; dz++) {
+					Integer head = cells.get(key(cx + dx, cy + dy, cz + dz));
+					for (int j = head == null ? -1 : head; j >= 0; j = next[j]) {
+						Vector3D q = unique[j];
+						if (Math.abs(p.x - q.x) <= epsilon && Math.abs(p.y - q.y) <= epsilon
+								&& Math.abs(p.z - q.z) <= epsilon)
+							return j;
+					}
+				}
+			}
+		}
+		return -1;
+	}
+
+	private static int cell(float value, float epsilon) {
+		return (int) Math.floor(value / epsilon);
+	}
+
+	private static Long key(int cx, int cy, int cz) {
+		// 21 bits per axis is plenty for the size of any model
+		return ((cx & 0x1FFFFFL) << 42) | ((cy & 0x1FFFFFL) << 21) | (cz & 0x1FFFFFL);
+	}
+
+	/**
+	 * Returns this mesh transformed by t, transforming each unique vertex
+	 * once. If the normals have been computed they are transformed along
+	 * with the vertices (see Transform.normalTransform) rather than computed
+	 * again.
+	 */
+	public Mesh transformed(Transform t) {
+		Vector3D[] verts = new Vector3D[vertices.length];
+		for (int v = 0; v < vertices.length; v++)
+			verts[v] = t.multiply(vertices[v]);
+
+		Vector3D[] norms = null;
+		if (normals != null) {
+			Transform normalT = t.normalTransform();
+			norms = new Vector3D[normals.length];
+			for (int v = 0; v < normals.length; v++)
+				norms[v] = normalT.multiplyDirection(normals[v]).unitVector();
+		}
+		return new Mesh(verts, indices, norms);
+	}
+
+	/**
+	 * Returns the part of this mesh made of the polygons numbered
+	 * which[from] to which[to - 1], in that order, transformed by t and with
+	 * only the vertices they use. The normals are carried over from this
+	 * mesh rather than worked out from the part, so polygons at the edge of
+	 * the part are shaded as they are in the whole mesh.
+	 */
+	public Mesh part(int[] which, int from, int to, Transform t) {
+		Vector3D[] allNormals = getNormals();
+		// each vertex's number in the part, plus one, or 0 if it isn't used
+		int[] numbers = new int[vertices.length];
+		int[] used = new int[Math.min(vertices.length, (to - from) * 3)];
+		int[] partIndices = new int[(to - from) * 3];
+		int count = 0;
+		for (int k = from; k < to; k++) {
+			for (int v = 0; v < 3; v++) {
+				int vertex = indices[which[k] * 3 + v];
+				if (numbers[vertex] == 0) {
+					used[count] = vertex;
+					numbers[vertex] = ++count;
+				}
+				partIndices[(k - from) * 3 + v] = numbers[vertex] - 1;
+			}
+		}
+
+		Transform normalT = t.normalTransform();
+		Vector3D[] verts = new Vector3D[count];
+		Vector3D[] norms = new Vector3D[count];
+		for (int v = 0; v < count; v++) {
+			verts[v] = t.multiply(vertices[used[v]]);
+			norms[v] = normalT.multiplyDirection(allNormals[used[v]]).unitVector();
+		}
+		return new Mesh(verts, partIndices, norms);
+	}
+
+	/**
+	 * Points the polygons, which must be the ones this mesh was welded from
+	 * and in the same order, at the given vertices.
+	 */
+	public void bind(List<Polygon> polygons, Vector3D[] verts) {
+		int i = 0;
+		for (Polygon poly : polygons) {
+			Vector3D[] vects = poly.getVertices();
+			vects[0] = verts[indices[i++]];
+			vects[1] = verts[indices[i++]];
+			vects[2] = verts[indices[i++]];
+			poly.setVectors(vects);
+		}
+	}
+}
@@ -0,0 +1,221 @@
+package renderer;
+
+import java.awt.Color;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/**
+ * A model in a binary file that is memory-mapped rather than read in, so it
+ * can be drawn a batch of polygons at a time (see OutOfCoreRenderer) however
+ * much bigger than the heap it is.
+ *
+ * The file is a 64 byte header: "R3DM", the version, the number of
+ * polygons, the light direction and the model's bounding box; followed by
+ * 40 bytes for each polygon: the nine coordinates of its vertices as floats,
+ * then the red, green and blue of its reflectance and a spare byte. All
+ * numbers are little-endian. Text models are turned into this with convert,
+ * which only ever holds one line of the model in memory.
+ */
+public class MeshFile implements Closeable {
+
+	public static final int MAGIC = 0x4d443352; // "R3DM", little-endian
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 64;
+	public static final int RECORD_SIZE = 40;
+	// how much of the file is mapped at once, a whole number of polygons
+	private static final long WINDOW_RECORDS = (1 << 30) / RECORD_SIZE;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final long count;
+	private final Vector3D light;
+	private final float minX, minY, minZ, maxX, maxY, maxZ;
+
+	private MappedByteBuffer window;
+	private long windowStart = -1;
+
+	private MeshFile(RandomAccessFile file) throws IOException {
+		this.file = file;
+		this.channel = file.getChannel();
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		while (header.hasRemaining() && channel.read(header, header.position()) > 0)
+			;
+		header.flip();
+		if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC)
+			throw new IOException("MeshFile: not a mesh file");
+		int version = header.getInt();
+		if (version != VERSION)
+			throw new IOException("MeshFile: unknown version " + version);
+		count = header.getLong();
+		if (count < 0 || channel.size() != HEADER_SIZE + count * RECORD_SIZE)
+			throw new IOException("MeshFile: expected " + count + " polygons but the file is " + channel.size()
+					+ " bytes");
+		light = new Vector3D(header.getFloat(), header.getFloat(), header.getFloat());
+		minX = header.getFloat();
+		minY = header.getFloat();
+		minZ = header.getFloat();
+		maxX = header.getFloat();
+		maxY = header.getFloat();
+		maxZ = header.getFloat();
+	}
+
+	public static MeshFile open(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			return new MeshFile(raf);
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Converts a text model (see SceneLoader) into a mesh file, a line at a
+	 * time. Any lights file next to the model is left for the caller.
+	 */
+	public static void convert(File text, File mesh) throws IOException {
+		BufferedReader in = new BufferedReader(new FileReader(text));
+		RandomAccessFile out = new RandomAccessFile(mesh, "rw");
+		try {
+			out.setLength(0);
+			FileChannel channel = out.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 1024).order(ByteOrder.LITTLE_ENDIAN);
+
+			String headerLine = in.readLine();
+			if (headerLine == null)
+				throw new IOException("MeshFile: " + text + " is empty");
+			String[] light = headerLine.split(" ");
+
+			float[] bounds = { Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE,
+					-Float.MAX_VALUE, -Float.MAX_VALUE };
+			long count = 0;
+			channel.position(HEADER_SIZE);
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.isEmpty())
+					continue;
+				String[] values = line.split(" ");
+				if (values.length < 12)
+					throw new IOException("MeshFile: line " + (count + 2) + " of " + text + " is too short");
+				for (int i = 0; i < 9; i++) {
+					float f = Float.parseFloat(values[i]);
+					bounds[i % 3] = Math.min(bounds[i % 3], f);
+					bounds[3 + i % 3] = Math.max(bounds[3 + i % 3], f);
+					buffer.putFloat(f);
+				}
+				for (int i = 9; i < 12; i++)
+					buffer.put((byte) Integer.parseInt(values[i]));
+				buffer.put((byte) 0);
+				count++;
+
+				if (!buffer.hasRemaining())
+					write(channel, buffer);
+			}
+			write(channel, buffer);
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC);
+			header.putInt(VERSION);
+			header.putLong(count);
+			for (int i = 0; i < 3; i++)
+				header.putFloat(Float.parseFloat(light[i]));
+			for (float f : bounds)
+				header.putFloat(count == 0 ? 0 : f);
+			header.position(HEADER_SIZE);
+			channel.position(0);
+			write(channel, header);
+		} finally {
+			out.close();
+			in.close();
+		}
+	}
+
+	private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+	public long getPolygonCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the light direction from the header.
+	 */
+	public Vector3D getLight() {
+		return light;
+	}
+
+	/**
+	 * Returns the eight corners of the model's bounding box, the nearest
+	 * lowest leftmost first and the opposite one last.
+	 */
+	public Vector3D[] getCorners() {
+		Vector3D[] corners = new Vector3D[8];
+		for (int i = 0; i < 8; i++) {
+			corners[i] = new Vector3D((i & 1) == 0 ? minX : maxX, (i & 2) == 0 ? minY : maxY,
+					(i & 4) == 0 ? minZ : maxZ);
+		}
+		return corners;
+	}
+
+	/**
+	 * Reads up to count polygons, starting with polygon first, transforms
+	 * them, and adds them to polygons.
+	 *
+	 * @return How many polygons were read.
+	 */
+	public int read(long first, int count, Transform t, List<Polygon> polygons) throws IOException {
+		if (first < 0 || count < 0)
+			throw new IllegalArgumentException("MeshFile: bad range " + first + " " + count);
+		int n = (int) Math.max(0, Math.min(count, this.count - first));
+		for (int i = 0; i < n; i++) {
+			long index = first + i;
+			ByteBuffer buffer = map(index / WINDOW_RECORDS);
+			int offset = (int) (index % WINDOW_RECORDS) * RECORD_SIZE;
+
+			Vector3D[] v = new Vector3D[3];
+			for (int j = 0; j < 3; j++) {
+				int at = offset + j * 12;
+				v[j] = t.multiply(new Vector3D(buffer.getFloat(at), buffer.getFloat(at + 4), buffer.getFloat(at + 8)));
+			}
+			Color reflectance = new Color(buffer.get(offset + 36) & 0xFF, buffer.get(offset + 37) & 0xFF,
+					buffer.get(offset + 38) & 0xFF);
+			polygons.add(new Polygon(v[0], v[1], v[2], reflectance));
+		}
+		return n;
+	}
+
+	/**
+	 * Returns the given window of the file, mapping it if it isn't already.
+	 */
+	private ByteBuffer map(long windowIndex) throws IOException {
+		long start = windowIndex * WINDOW_RECORDS;
+		if (start != windowStart) {
+			long records = Math.min(WINDOW_RECORDS, count - start);
+			window = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + start * RECORD_SIZE,
+					records * RECORD_SIZE);
+			window.order(ByteOrder.LITTLE_ENDIAN);
+			windowStart = start;
+		}
+		return window;
+	}
+
+	@Override
+	public void close() throws IOException {
+		window = null;
+		file.close();
+	}
+}
@@ -0,0 +1,209 @@
+package renderer;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Works out an order to draw polygons in so that polygons near each other on
+ * the screen are drawn one after another. The polygons are sorted by the
+ * Morton (Z-order) code of their screen centroid, which interleaves the bits
+ * of x and y, so the order sweeps the screen in small square blocks rather
+ * than jumping about as the file order does. Consecutive polygons then mostly
+ * touch the same rows of the framebuffer, which are still in the cache.
+ * 
+ * The sort is a radix sort on int arrays that are reused from frame to frame.
+ * If the polygons have hardly moved since the last sort the old order is kept,
+ * as it is still almost as good and costs nothing.
+ */
+public class MortonOrder {
+
+	/**
+	 * How far, in pixels, a centroid can move from where it was at the last
+	 * sort before the polygons are sorted again.
+	 */
+	public static final float DEFAULT_TOLERANCE = 4;
+
+	private float tolerance = DEFAULT_TOLERANCE;
+
+	// the order, and the centroids the order was worked out from
+	private int[] order = new int[0];
+	private int count;
+	private float[] sortedX = new float[0];
+	private float[] sortedY = new float[0];
+	private int polygonCount = -1;
+	private boolean culled;
+
+	// scratch for the sort
+	private int[] codes = new int[0];
+	private int[] codesTemp = new int[0];
+	private int[] orderTemp = new int[0];
+	private final int[] buckets = new int[256];
+
+	private int sorts;
+
+	public void setTolerance(float tolerance) {
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * Returns the indices of the polygons to draw, in Morton order. Only the
+	 * first getCount() entries are used. If skipHidden is set, polygons
+	 * marked as hidden are left out.
+	 */
+	public int[] update(List<Polygon> polygons, boolean skipHidden) {
+		int n = polygons.size();
+		if (n != polygonCount || skipHidden != culled || moved(polygons)) {
+			sort(polygons, skipHidden);
+		}
+		return order;
+	}
+
+	/** Returns the last order, as returned by update. */
+	public int[] getOrder() {
+		return order;
+	}
+
+	/** The number of polygons in the last order. */
+	public int getCount() {
+		return count;
+	}
+
+	/** How many times the polygons have actually been sorted. */
+	public int getSortCount() {
+		return sorts;
+	}
+
+	/**
+	 * Forgets the last order, so the next update sorts again.
+	 */
+	public void invalidate() {
+		polygonCount = -1;
+	}
+
+	/**
+	 * Whether any centroid has moved further than the tolerance since the
+	 * last sort. A polygon becoming hidden or visible also means a new sort,
+	 * as the list of polygons to draw has changed.
+	 */
+	private boolean moved(List<Polygon> polygons) {
+		int n = polygons.size();
+		for (int i = 0; i < n; i++) {
+			Polygon poly = polygons.get(i);
+			Vector3D[] v = poly.getVertices();
+			float x = (v[0].x + v[1].x + v[2].x) / 3;
+			float y = (v[0].y + v[1].y + v[2].y) / 3;
+			if (Math.abs(x - sortedX[i]) > tolerance || Math.abs(y - sortedY[i]) > tolerance)
+				return true;
+		}
+		if (culled) {
+			int visible = 0;
+			for (int i = 0; i < n; i++) {
+				if (!polygons.get(i).isHidden())
+					visible++;
+			}
+			if (visible != count)
+				return true;
+			for (int i = 0; i < count; i++) {
+				if (polygons.get(order[i]).isHidden())
+					return true;
+			}
+		}
+		return false;
+	}
+
+	private void sort(List<Polygon> polygons, boolean skipHidden) {
+		int n = polygons.size();
+		if (order.length < n) {
+			order = new int[n];
+			orderTemp = new int[n];
+			codes = new int[n];
+			codesTemp = new int[n];
+			sortedX = new float[n];
+			sortedY = new float[n];
+		}
+
+		count = 0;
+		for (int i = 0; i < n; i++) {
+			Polygon poly = polygons.get(i);
+			Vector3D[] v = poly.getVertices();
+			float x = (v[0].x + v[1].x + v[2].x) / 3;
+			float y = (v[0].y + v[1].y + v[2].y) / 3;
+			sortedX[i] = x;
+			sortedY[i] = y;
+			if (skipHidden && poly.isHidden())
+				continue;
+			order[count] = i;
+			codes[count] = encode(x, y);
+			count++;
+		}
+
+		radixSort(count);
+		polygonCount = n;
+		culled = skipHidden;
+		sorts++;
+	}
+
+	/**
+	 * Sorts the first n codes, and the order along with them, as unsigned
+	 * ints, one byte at a time starting from the lowest. Each pass is stable,
+	 * so polygons with the same code stay in file order.
+	 */
+	private void radixSort(int n) {
+		int[] keys = codes;
+		int[] keysOut = codesTemp;
+		int[] values = order;
+		int[] valuesOut = orderTemp;
+
+		for (int shift = 0; shift < 32; shift += 8) {
+			Arrays.fill(buckets, 0);
+			for (int i = 0; i < n; i++)
+				buckets[(keys[i] >>> shift) & 0xFF]++;
+
+			int sum = 0;
+			for (int b = 0; b < 256; b++) {
+				int c = buckets[b];
+				buckets[b] = sum;
+				sum += c;
+			}
+
+			for (int i = 0; i < n; i++) {
+				int dest = buckets[(keys[i] >>> shift) & 0xFF]++;
+				keysOut[dest] = keys[i];
+				valuesOut[dest] = values[i];
+			}
+
+			int[] t = keys;
+			keys = keysOut;
+			keysOut = t;
+			t = values;
+			values = valuesOut;
+			valuesOut = t;
+		}
+		// four passes, so the results end up back in codes and order
+	}
+
+	/**
+	 * Returns the Morton code of a screen position, which has the bits of x
+	 * and y (clamped to 0 - 65535) interleaved, x in the even bits.
+	 */
+	public static int encode(float x, float y) {
+		return spread(clamp(x)) | (spread(clamp(y)) << 1);
+	}
+
+	private static int clamp(float f) {
+		if (f <= 0)
+			return 0;
+		if (f >= 0xFFFF)
+			return 0xFFFF;
+		return (int) f;
+	}
+
+	/** Spreads the low 16 bits of v out into the even bits. */
+	static int spread(int v) {
+		v = (v | (v << 8)) & 0x00FF00FF;
+		v = (v | (v << 4)) & 0x0F0F0F0F;
+		v = (v | (v << 2)) & 0x33333333;
+		v = (v | (v << 1)) & 0x55555555;
+		return v;
+	}
+}
@@ -0,0 +1,190 @@
+package renderer;
+
+import java.awt.Color;
+import java.util.Arrays;
+
+/**
+ * A framebuffer for anti-aliasing that keeps several depth samples per pixel
+ * but only a few colours. Each pixel has SLOTS colour slots and a small
+ * coverage mask, 2 bits per sample, saying which slot (or the background)
+ * each sample shows. A polygon's colour is stored once per pixel however many
+ * of its samples it covers, and the samples are averaged by resolve() once the
+ * frame is finished.
+ * 
+ * Most pixels on a polygon edge only see two or three polygons, so this looks
+ * almost the same as supersampling with the same number of samples, but a
+ * pixel is shaded once rather than once per sample and the colours take a
+ * fraction of the memory.
+ */
+public class MultisampleBuffer {
+
+	/** The number of colours kept per pixel. */
+	public static final int SLOTS = 3;
+	/** The owner of a sample no polygon has covered. */
+	private static final int BACKGROUND = 3;
+
+	// sample positions within a pixel, from its top left corner. 4x is a
+	// rotated grid and 8x the usual sparse pattern, in 1/16ths of a pixel.
+	private static final float[][] PATTERN_4 = { { 6, 2 }, { 14, 6 }, { 2, 10 }, { 10, 14 } };
+	private static final float[][] PATTERN_8 = { { 9, 5 }, { 7, 11 }, { 13, 9 }, { 5, 3 }, { 3, 13 }, { 1, 7 },
+			{ 11, 15 }, { 15, 1 } };
+
+	private final int width;
+	private final int height;
+	private final int samples;
+	private final float[] sampleX;
+	private final float[] sampleY;
+
+	private final float[] depth; // indexed (y * width + x) * samples + sample
+	private final short[] owners; // indexed y * width + x, 2 bits per sample
+	private final int[] colours; // indexed (y * width + x) * SLOTS + slot
+	private int background;
+	private final int[] uses = new int[SLOTS];
+
+	/**
+	 * @param samples
+	 *            The number of samples per pixel, either 4 or 8.
+	 */
+	public MultisampleBuffer(int width, int height, int samples) {
+		float[][] pattern;
+		if (samples == 4)
+			pattern = PATTERN_4;
+		else if (samples == 8)
+			pattern = PATTERN_8;
+		else
+			throw new IllegalArgumentException("MultisampleBuffer: samples must be 4 or 8: " + samples);
+
+		this.width = width;
+		this.height = height;
+		this.samples = samples;
+		this.sampleX = new float[samples];
+		this.sampleY = new float[samples];
+		for (int s = 0; s < samples; s++) {
+			// pixel (x, y) is the area around the point (x, y)
+			sampleX[s] = pattern[s][0] / 16f - 0.5f;
+			sampleY[s] = pattern[s][1] / 16f - 0.5f;
+		}
+
+		this.depth = new float[width * height * samples];
+		this.owners = new short[width * height];
+		this.colours = new int[width * height * SLOTS];
+	}
+
+	public void clear(Color background) {
+		this.background = background.getRGB() & 0xFFFFFF;
+		Arrays.fill(depth, Integer.MAX_VALUE);
+		Arrays.fill(owners, (short) 0xFFFF); // every sample owned by the background
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getSamples() {
+		return samples;
+	}
+
+	/** The x offset of a sample from the pixel's position. */
+	public float getSampleX(int sample) {
+		return sampleX[sample];
+	}
+
+	/** The y offset of a sample from the pixel's position. */
+	public float getSampleY(int sample) {
+		return sampleY[sample];
+	}
+
+	public float getDepth(int x, int y, int sample) {
+		return depth[(y * width + x) * samples + sample];
+	}
+
+	public void setDepth(int x, int y, int sample, float z) {
+		depth[(y * width + x) * samples + sample] = z;
+	}
+
+	/**
+	 * Stores a colour for the samples of pixel (x, y) in mask, which have
+	 * already passed the depth test. If all the pixel's colour slots are in
+	 * use by other samples, the slot used by the fewest samples is given up,
+	 * and its samples take on the new colour.
+	 */
+	public void write(int x, int y, int mask, int rgb) {
+		int pixel = y * width + x;
+		int owner = owners[pixel] & 0xFFFF;
+
+		// count the samples still using each slot once these are overwritten
+		Arrays.fill(uses, 0);
+		for (int s = 0; s < samples; s++) {
+			int o = (owner >> (2 * s)) & 3;
+			if ((mask & (1 << s)) == 0 && o != BACKGROUND)
+				uses[o]++;
+		}
+
+		int base = pixel * SLOTS;
+		int slot = -1;
+		for (int i = 0; i < SLOTS && slot < 0; i++) {
+			if (uses[i] > 0 && colours[base + i] == rgb)
+				slot = i;
+		}
+		for (int i = 0; i < SLOTS && slot < 0; i++) {
+			if (uses[i] == 0)
+				slot = i;
+		}
+		if (slot < 0) {
+			slot = 0;
+			for (int i = 1; i < SLOTS; i++) {
+				if (uses[i] < uses[slot])
+					slot = i;
+			}
+		}
+
+		colours[base + slot] = rgb;
+		for (int s = 0; s < samples; s++) {
+			if ((mask & (1 << s)) != 0)
+				owner = (owner & ~(3 << (2 * s))) | (slot << (2 * s));
+		}
+		owners[pixel] = (short) owner;
+	}
+
+	/**
+	 * Returns the colour of pixel (x, y): the average of its samples.
+	 */
+	public int resolve(int x, int y) {
+		int pixel = y * width + x;
+		int owner = owners[pixel] & 0xFFFF;
+		int base = pixel * SLOTS;
+
+		int r = 0, g = 0, b = 0;
+		for (int s = 0; s < samples; s++) {
+			int o = (owner >> (2 * s)) & 3;
+			int rgb = o == BACKGROUND ? background : colours[base + o];
+			r += (rgb >> 16) & 0xFF;
+			g += (rgb >> 8) & 0xFF;
+			b += rgb & 0xFF;
+		}
+		return ((r / samples) << 16) | ((g / samples) << 8) | (b / samples);
+	}
+
+	/**
+	 * Resolves every pixel into the framebuffer, along with the nearest depth
+	 * of each pixel's samples.
+	 */
+	public void resolve(Framebuffer framebuffer) {
+		framebuffer.touch(0, 0, width, height);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int index = framebuffer.index(x, y);
+				framebuffer.setRGB(index, resolve(x, y));
+
+				float z = Integer.MAX_VALUE;
+				for (int s = 0; s < samples; s++)
+					z = Math.min(z, getDepth(x, y, s));
+				framebuffer.setDepth(index, z);
+			}
+		}
+	}
+}
@@ -0,0 +1,172 @@
+package renderer;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Renders a MeshFile straight from the file, a fixed-size batch of polygons
+ * at a time, so the most memory it needs depends on the batch size and the
+ * framebuffer and not on how big the model is. Each batch is read,
+ * transformed, culled and drawn over the last with FrameRenderer.draw.
+ *
+ * Each batch is a scene of its own, so the polygons of a model this big
+ * can't share vertices: everything is flat shaded, and shadows and Morton
+ * ordering only work within a batch.
+ */
+public class OutOfCoreRenderer {
+
+	public static final int DEFAULT_BATCH_SIZE = 16384;
+
+	private final MeshFile mesh;
+	private final int batchSize;
+	private final List<Polygon> batch;
+	private Color lightColor = Color.white;
+	private Color ambientLight = new Color(128, 128, 128);
+
+	public OutOfCoreRenderer(MeshFile mesh) {
+		this(mesh, DEFAULT_BATCH_SIZE);
+	}
+
+	public OutOfCoreRenderer(MeshFile mesh, int batchSize) {
+		if (batchSize <= 0)
+			throw new IllegalArgumentException("OutOfCoreRenderer: bad batch size " + batchSize);
+		this.mesh = mesh;
+		this.batchSize = batchSize;
+		this.batch = new ArrayList<Polygon>(batchSize);
+	}
+
+	public void setLightColor(Color lightColor) {
+		this.lightColor = lightColor;
+	}
+
+	public void setAmbientLight(Color ambientLight) {
+		this.ambientLight = ambientLight;
+	}
+
+	/**
+	 * Returns the view of the model from the given pose, scaled to fit a
+	 * screen of the given size and centred on it. It is worked out from the
+	 * bounding box in the file's header, so no polygons are read.
+	 */
+	public Transform view(CameraPose pose, int width, int height) {
+		Vector3D[] corners = mesh.getCorners();
+		Vector3D diagonal = corners[7].minus(corners[0]);
+		float size = diagonal.mag;
+		// leave a small margin around the edge, as SequenceRenderer does
+		float scale = size <= 0 ? 1f : 0.9f * Math.min(width, height) / size;
+		Transform view = pose.toTransform().compose(Transform.newScale(scale, scale, scale));
+
+		float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+		for (Vector3D corner : corners) {
+			Vector3D p = view.multiply(corner);
+			minX = Math.min(minX, p.x);
+			maxX = Math.max(maxX, p.x);
+			minY = Math.min(minY, p.y);
+			maxY = Math.max(maxY, p.y);
+		}
+		return Transform.newTranslation((width - minX - maxX) / 2f, (height - minY - maxY) / 2f, 0).compose(view);
+	}
+
+	/**
+	 * Renders the model seen through the given view (see view) into the
+	 * renderer's framebuffer.
+	 */
+	public void render(FrameRenderer renderer, Transform view) throws IOException {
+		Framebuffer framebuffer = renderer.getFramebuffer();
+		if (framebuffer.getDepthBits() != 32) {
+			float near = Float.MAX_VALUE, far = -Float.MAX_VALUE;
+			for (Vector3D corner : mesh.getCorners()) {
+				float z = view.multiply(corner).z;
+				near = Math.min(near, z);
+				far = Math.max(far, z);
+			}
+			framebuffer.setDepthRange(near, far);
+		}
+
+		renderer.beginFrame();
+		for (long first = 0; first < mesh.getPolygonCount(); first += batchSize) {
+			batch.clear();
+			mesh.read(first, batchSize, view, batch);
+			// the light is the model's, and the view says where it points,
+			// as for a scene placed by SequenceRenderer
+			Scene scene = new Scene(batch, mesh.getLight());
+			scene.setView(view);
+			renderer.draw(scene, mesh.getLight(), lightColor, ambientLight);
+		}
+		batch.clear();
+		renderer.endFrame();
+	}
+
+	/**
+	 * Renders a mesh file, or a text model after converting it to a mesh
+	 * file next to it, to an image file whose format is picked by its
+	 * extension (ppm, pam, png or qoi).
+	 *
+	 * usage: OutOfCoreRenderer [-batch polygons] model.mesh|model.txt width height output
+	 */
+	public static void main(String[] args) throws Exception {
+		int batchSize = DEFAULT_BATCH_SIZE;
+		int first = 0;
+		while (first < args.length && args[first].startsWith("-")) {
+			if (args[first].equals("-batch") && first + 1 < args.length)
+				batchSize = Integer.parseInt(args[++first]);
+			else
+				usage();
+			first++;
+		}
+		args = Arrays.copyOfRange(args, first, args.length);
+		if (args.length < 4)
+			usage();
+
+		File model = new File(args[0]);
+		if (model.getName().endsWith(".txt")) {
+			File converted = new File(model.getPath().replaceFirst("\\.txt$", ".mesh"));
+			if (converted.lastModified() < model.lastModified()) {
+				long start = System.nanoTime();
+				MeshFile.convert(model, converted);
+				System.out.printf("converted to %s in %.1f ms%n", converted, (System.nanoTime() - start) / 1e6);
+			}
+			model = converted;
+		}
+		int width = Integer.parseInt(args[1]);
+		int height = Integer.parseInt(args[2]);
+		File output = new File(args[3]);
+		ImageEncoder encoder = ImageEncoder.forName(output.getName().replaceFirst(".*\\.", ""));
+
+		MeshFile mesh = MeshFile.open(model);
+		try {
+			OutOfCoreRenderer outOfCore = new OutOfCoreRenderer(mesh, batchSize);
+			FrameRenderer renderer = new FrameRenderer(width, height);
+			long start = System.nanoTime();
+			outOfCore.render(renderer, outOfCore.view(new CameraPose(0.3f, 0.5f), width, height));
+			long time = System.nanoTime() - start;
+
+			Runtime runtime = Runtime.getRuntime();
+			System.out.printf("%d polygons in batches of %d, in %.1f ms, %.1f MB heap in use%n",
+					mesh.getPolygonCount(), batchSize, time / 1e6,
+					(runtime.totalMemory() - runtime.freeMemory()) / 1e6);
+
+			FileChannel out = new FileOutputStream(output).getChannel();
+			try {
+				encoder.encode(renderer.getFramebuffer(), out);
+			} finally {
+				out.close();
+				encoder.close();
+			}
+		} finally {
+			mesh.close();
+		}
+	}
+
+	private static void usage() {
+		System.err.println("usage: OutOfCoreRenderer [-batch polygons] model.mesh|model.txt width height output");
+		System.exit(1);
+	}
+}
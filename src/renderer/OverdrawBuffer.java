@@ -0,0 +1,135 @@
+package renderer;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Counts, for every pixel of a frame, how many fragments were depth tested
+ * there and how many of them won the test and were written. Every write after
+ * the first to a pixel is wasted work, since it overwrites a colour that was
+ * already computed and never seen.
+ * 
+ * The counts can be drawn as a false-colour heatmap and summarised for the
+ * whole frame.
+ */
+public class OverdrawBuffer {
+
+	/** The heatmap colours for counts 0, 1, 2, ... up to MAX_COUNT and above. */
+	private static final Color[] RAMP = { Color.black, new Color(0, 0, 160), new Color(0, 120, 255),
+			new Color(0, 200, 120), new Color(120, 230, 0), Color.yellow, Color.orange, Color.red, Color.white };
+	private static final int MAX_COUNT = RAMP.length - 1;
+
+	private final int width;
+	private final int height;
+	// both indexed by y * width + x
+	private final int[] tests;
+	private final int[] writes;
+
+	public OverdrawBuffer(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.tests = new int[width * height];
+		this.writes = new int[width * height];
+	}
+
+	public void clear() {
+		Arrays.fill(tests, 0);
+		Arrays.fill(writes, 0);
+	}
+
+	/** Records a fragment at (x, y) that was depth tested. */
+	public void tested(int x, int y) {
+		tests[y * width + x]++;
+	}
+
+	/** Records a fragment at (x, y) that passed the depth test. */
+	public void written(int x, int y) {
+		writes[y * width + x]++;
+	}
+
+	public int getTests(int x, int y) {
+		return tests[y * width + x];
+	}
+
+	public int getWrites(int x, int y) {
+		return writes[y * width + x];
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/** Returns how many pixels had at least one fragment written. */
+	public long getCoveredPixels() {
+		long covered = 0;
+		for (int w : writes) {
+			if (w > 0)
+				covered++;
+		}
+		return covered;
+	}
+
+	public long getTotalTests() {
+		long total = 0;
+		for (int t : tests)
+			total += t;
+		return total;
+	}
+
+	public long getTotalWrites() {
+		long total = 0;
+		for (int w : writes)
+			total += w;
+		return total;
+	}
+
+	/**
+	 * Returns the average number of writes per covered pixel. 1.0 means no
+	 * colour was ever overwritten.
+	 */
+	public double getOverdrawRatio() {
+		long covered = getCoveredPixels();
+		return covered == 0 ? 0 : getTotalWrites() / (double) covered;
+	}
+
+	/**
+	 * Returns the average number of depth tests per covered pixel.
+	 */
+	public double getDepthComplexity() {
+		long covered = getCoveredPixels();
+		return covered == 0 ? 0 : getTotalTests() / (double) covered;
+	}
+
+	/**
+	 * Draws the counts as a heatmap, from black for none through blue,
+	 * green, yellow and red to white for eight or more.
+	 * 
+	 * @param showWrites
+	 *            If true the number of depth writes per pixel is drawn,
+	 *            otherwise the number of depth tests.
+	 */
+	public BufferedImage toHeatmap(boolean showWrites) {
+		int[] counts = showWrites ? writes : tests;
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int count = Math.min(counts[y * width + x], MAX_COUNT);
+				image.setRGB(x, y, RAMP[count].getRGB());
+			}
+		}
+		return image;
+	}
+
+	/**
+	 * Returns a one line summary of the frame.
+	 */
+	public String summary() {
+		return String.format("covered: %d px, tests: %d, writes: %d, overdraw: %.2f, depth complexity: %.2f",
+				getCoveredPixels(), getTotalTests(), getTotalWrites(), getOverdrawRatio(), getDepthComplexity());
+	}
+}
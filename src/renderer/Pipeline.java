@@ -42,8 +42,15 @@ public class Pipeline {
 	 *            on the direction.
 	 */
 	public static Color getShading(Polygon poly, Vector3D lightDirection, Color lightColor, Color ambientLight) {	
+		return getShading(poly, poly.getReflectance(), lightDirection, lightColor, ambientLight);
+	}
 
- 		Color reflectivity = poly.getReflectance();
+	/**
+	 * The same as getShading above, but with the given reflectance rather
+	 * than the polygon's own, e.g. one from tint.
+	 */
+	public static Color getShading(Polygon poly, Color reflectivity, Vector3D lightDirection, Color lightColor,
+			Color ambientLight) {
  		lightDirection = lightDirection.unitVector();
 
 		Vector3D[] verticies = poly.getVertices();
@@ -54,6 +61,19 @@ public class Pipeline {
 		Vector3D normal = (b.minus(a)).crossProduct((c.minus(b))).unitVector();
 		float cosAngle = normal.cosTheta(lightDirection);		
 
+		return new Color(shade(cosAngle, reflectivity, lightDirection, lightColor, ambientLight));
+	}
+
+	/**
+	 * Does the lighting for getShading, given the cosine of the angle
+	 * between the surface's normal and the light, and returns the colour as
+	 * packed RGB. Smooth shading calls this for every vertex.
+	 * 
+	 * @param lightDirection
+	 *            The unit vector pointing to the directional light.
+	 */
+	public static int shade(float cosAngle, Color reflectivity, Vector3D lightDirection, Color lightColor,
+			Color ambientLight) {
 		int rCol, gCol, bCol;
 		if(lightDirection.z > 0){
 			rCol = (int) ((ambientLight.getRed()  * cosAngle) * (double)(reflectivity.getRed() / 255));
@@ -69,11 +89,32 @@ public class Pipeline {
 		gCol = checkBounds(gCol);
 		bCol = checkBounds(bCol);
 
-		return new Color(Math.abs(rCol), Math.abs(gCol), Math.abs(bCol));
+		return (rCol << 16) | (gCol << 8) | bCol;
 	}
 
 
 
+	/**
+	 * Adds the light from a scene's extra lights, as worked out by
+	 * LightSet.light, to a colour from shade. The red, green and blue of the
+	 * light are light[offset] to light[offset + 2].
+	 */
+	public static int addLight(int rgb, float[] light, int offset, Color reflectivity) {
+		int r = (rgb >> 16 & 0xFF) + (int) (light[offset] * reflectivity.getRed() / 255);
+		int g = (rgb >> 8 & 0xFF) + (int) (light[offset + 1] * reflectivity.getGreen() / 255);
+		int b = (rgb & 0xFF) + (int) (light[offset + 2] * reflectivity.getBlue() / 255);
+		return (checkBounds(r) << 16) | (checkBounds(g) << 8) | checkBounds(b);
+	}
+
+	/**
+	 * Returns a reflectance multiplied by a tint, channel by channel, where
+	 * 255 is 1.
+	 */
+	public static Color tint(Color reflectance, Color tint) {
+		return new Color(reflectance.getRed() * tint.getRed() / 255, reflectance.getGreen() * tint.getGreen() / 255,
+				reflectance.getBlue() * tint.getBlue() / 255);
+	}
+
 	public static int checkBounds(int number){
 
 		number = number > 255 ? 255 : number; // check upper bounds
@@ -147,6 +188,46 @@ public class Pipeline {
 
 	}
 
+	/**
+	 * Computes a bounding box, rounded to whole pixels, that contains all the
+	 * polygons of the scene in the X-Y plane.
+	 */
+	public static BoundingBox computeBounds(Scene scene) {
+		// minX, minY, maxX, maxY
+		int[] bounds = { Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE };
+
+		// a welded scene only needs to look at each shared vertex once
+		if (scene.getMesh() != null) {
+			extendBounds(bounds, scene.getMesh().getVertices());
+		} else {
+			for (Polygon p : scene.getPolygons())
+				extendBounds(bounds, p.getVertices());
+		}
+		return new BoundingBox(bounds[0], bounds[1], bounds[2] - bounds[0], bounds[3] - bounds[1]);
+	}
+
+	private static void extendBounds(int[] bounds, Vector3D[] vertices) {
+		for (Vector3D v : vertices) {
+			if (v.x > bounds[2]) {
+				bounds[2] = Math.round(v.x);
+			}
+			if (v.x < bounds[0]) {
+				bounds[0] = Math.round(v.x);
+			}
+			if (v.y > bounds[3]) {
+				bounds[3] = Math.round(v.y);
+			}
+			if (v.y < bounds[1]) {
+				bounds[1] = Math.round(v.y);
+			}
+		}
+	}
+
+	// the edges of a polygon, as pairs of vertex indices, made once rather
+	// than for every edge list
+	private static final int[][] EDGES = { { 0, 1 }, { 1, 2 }, { 2, 0 } };
+	private static final int[][] EDGES_BACKWARDS = { { 2, 0 }, { 1, 2 }, { 0, 1 } };
+
 	/**
 	 * Computes the edgelist of a single provided polygon, as per the lecture
 	 * slides.
@@ -159,54 +240,115 @@ public class Pipeline {
 	 * 	- y = 3
 	 */
 	public static EdgeList computeEdgeList(Polygon poly) {
-		if(poly.getMinY() < 0)
-			System.out.println(poly.getMinY());
-		
-		int min = poly.getMinY() < 0 ? poly.getMaxY() : 0; 
-		EdgeList edgeList = new EdgeList(min, poly.getMaxY() + 1 );
-
-		Vector3D[] verts = poly.getVertices();
-
-		// calculate edges of the polygon
-		Edge[] edges = new Edge[3];
-		edges[0] = new Edge(verts[0] , verts[1]);
-		edges[1] = new Edge(verts[1] , verts[2]);
-		edges[2] = new Edge(verts[2] , verts[0]);		
+		return computeEdgeList(poly, null);
+	}
 
-		for(Edge e : edges){
+	/**
+	 * Computes the edgelist of a polygon for smooth shading, interpolating
+	 * the colours of its vertices down the edges as well as x and z.
+	 * 
+	 * @param colours
+	 *            The packed RGB colours of the polygon's three vertices, or
+	 *            null for a flat shaded polygon.
+	 */
+	public static EdgeList computeEdgeList(Polygon poly, int[] colours) {
+		return computeEdgeList(poly, colours, null);
+	}
 
-			Vector3D a = e.getMinY(); 
-			Vector3D b = e.getMaxY();
+	/**
+	 * The same as computeEdgeList(poly, colours), but fills in the given edge
+	 * list rather than making a new one, unless it is null. Returns the edge
+	 * list.
+	 */
+	public static EdgeList computeEdgeList(Polygon poly, int[] colours, EdgeList edgeList) {
+		return computeEdgeList(poly, colours, edgeList, 0, Integer.MAX_VALUE);
+	}
 
-			float mx = (b.x - a.x) / (b.y - a.y);
-			float mz = (b.z - a.z) / (b.y - a.y);
+	/**
+	 * The same as computeEdgeList(poly, colours, edgeList), but only works
+	 * out the rows from minY up to but not including maxY, e.g. those of one
+	 * tile of a TileBinner. The rows come out exactly as they do in the
+	 * whole edge list.
+	 */
+	public static EdgeList computeEdgeList(Polygon poly, int[] colours, EdgeList edgeList, int minY, int maxY) {
+		return computeEdgeList(poly, colours, edgeList, minY, maxY, 1);
+	}
 
-			float x = a.x;
-			float z = a.z;
+	/**
+	 * The same as computeEdgeList(poly, colours, edgeList, minY, maxY), but
+	 * for the polygon with its x and y multiplied by scale, e.g. to draw a
+	 * smaller frame of the same scene (see FrameRenderer.setViewportScale).
+	 * Its depths aren't scaled.
+	 */
+	public static EdgeList computeEdgeList(Polygon poly, int[] colours, EdgeList edgeList, int minY, int maxY,
+			float scale) {
+		Vector3D[] verts = poly.getVertices();
+		int min = Math.max((int) (Math.min(verts[0].y, Math.min(verts[1].y, verts[2].y)) * scale), Math.max(minY, 0));
+		int max = Math.max(Math.min((int) (Math.max(verts[0].y, Math.max(verts[1].y, verts[2].y)) * scale) + 1, maxY),
+				min);
+		if (edgeList == null)
+			edgeList = new EdgeList(min, max, colours != null);
+		else
+			edgeList.reset(min, max, colours != null);
+
+		for(int[] e : EDGES){
+
+			// a is the top end of the edge and b the bottom, picked the same
+			// way as Edge.getMinY and Edge.getMaxY
+			float y0 = verts[e[0]].y * scale;
+			float y1 = verts[e[1]].y * scale;
+			int ia = y0 < y1 ? e[0] : e[1];
+			int ib = y0 > y1 ? e[0] : e[1];
+			Vector3D a = verts[ia];
+			Vector3D b = verts[ib];
+			float ax = a.x * scale, ay = a.y * scale;
+			float bx = b.x * scale, by = b.y * scale;
+
+			float mx = (bx - ax) / (by - ay);
+			float mz = (b.z - a.z) / (by - ay);
+
+			int top = Math.round(ay);
+			int maxI = Math.min(Math.round(by), max);
+
+			// colours, only used when smooth shading
+			float r0 = 0, g0 = 0, b0 = 0, mr = 0, mg = 0, mb = 0;
+			if (colours != null) {
+				r0 = (colours[ia] >> 16) & 0xFF;
+				g0 = (colours[ia] >> 8) & 0xFF;
+				b0 = colours[ia] & 0xFF;
+				float dy = by - ay;
+				mr = (((colours[ib] >> 16) & 0xFF) - r0) / dy;
+				mg = (((colours[ib] >> 8) & 0xFF) - g0) / dy;
+				mb = ((colours[ib] & 0xFF) - b0) / dy;
+			}
 
-			int i = Math.round(a.y);
-			double maxI = Math.round(b.y);
+			// skip the rows above the top of the screen, or of the rows
+			// wanted, working each row out from the top of the edge so it
+			// doesn't matter which row is the first
+			int i = Math.max(top, min);
 
 			while(i < maxI){
+				float[] row = edgeList.edge[i - min];
+				int down = i - top;
+				float x = ax + mx * down;
 
 				// if left of left.x
-				if (x < edgeList.edge[i][0]) {
-					edgeList.edge[i][0] = x;
-					edgeList.edge[i][1] = z;
+				if (x < row[0]) {
+					row[0] = x;
+					row[1] = a.z + mz * down;
+					if (colours != null)
+						edgeList.setLeftColour(i, r0 + mr * down, g0 + mg * down, b0 + mb * down);
 				}
 
 				// if right of right.x
-				if (x > edgeList.edge[i][2]) {
-					if(x > 600){
-						System.out.println("x: "+ x + " y:"+i);
-					}
-					edgeList.edge[i][2] = x;
-					edgeList.edge[i][3] = z;
+				if (x > row[2]) {
+					row[2] = x;
+					row[3] = a.z + mz * down;
+					if (colours != null)
+						edgeList.setRightColour(i, r0 + mr * down, g0 + mg * down, b0 + mb * down);
 				}
 
 				i++;
-				x += mx;
-				z += mz;
 			}
 		}
 
@@ -215,6 +357,66 @@ public class Pipeline {
 
 
 
+	/**
+	 * Adds the colours for smooth shading to an edge list made by
+	 * computeEdgeList(poly), giving the same edge list as
+	 * computeEdgeList(poly, colours) would have. This lets the edge list of a
+	 * depth pre-pass be used again without working it out twice.
+	 */
+	public static void computeEdgeColours(EdgeList edgeList, Polygon poly, int[] colours) {
+		computeEdgeColours(edgeList, poly, colours, 1);
+	}
+
+	/**
+	 * The same as computeEdgeColours(edgeList, poly, colours), for an edge
+	 * list made with the given scale.
+	 */
+	public static void computeEdgeColours(EdgeList edgeList, Polygon poly, int[] colours, float scale) {
+		edgeList.addColours();
+		Vector3D[] verts = poly.getVertices();
+
+		// computeEdgeList keeps the first edge to reach the left or right of
+		// a row, so going backwards and keeping the last finds the same one
+		for (int[] e : EDGES_BACKWARDS) {
+			float y0 = verts[e[0]].y * scale;
+			float y1 = verts[e[1]].y * scale;
+			int ia = y0 < y1 ? e[0] : e[1];
+			int ib = y0 > y1 ? e[0] : e[1];
+			Vector3D a = verts[ia];
+			Vector3D b = verts[ib];
+			float ax = a.x * scale, ay = a.y * scale;
+			float bx = b.x * scale, by = b.y * scale;
+
+			float mx = (bx - ax) / (by - ay);
+
+			int top = Math.round(ay);
+			int maxI = Math.min(Math.round(by), edgeList.getEndY());
+
+			float r0 = (colours[ia] >> 16) & 0xFF;
+			float g0 = (colours[ia] >> 8) & 0xFF;
+			float b0 = colours[ia] & 0xFF;
+			float dy = by - ay;
+			float mr = (((colours[ib] >> 16) & 0xFF) - r0) / dy;
+			float mg = (((colours[ib] >> 8) & 0xFF) - g0) / dy;
+			float mb = ((colours[ib] & 0xFF) - b0) / dy;
+
+			// the same rows as computeEdgeList, worked out the same way
+			int i = Math.max(top, edgeList.getStartY());
+
+			while (i < maxI) {
+				float[] row = edgeList.edge[i - edgeList.getStartY()];
+				int down = i - top;
+				float x = ax + mx * down;
+				if (x == row[0])
+					edgeList.setLeftColour(i, r0 + mr * down, g0 + mg * down, b0 + mb * down);
+				if (x == row[2])
+					edgeList.setRightColour(i, r0 + mr * down, g0 + mg * down, b0 + mb * down);
+
+				i++;
+			}
+		}
+	}
+
 	/**
 	 * Fills a zbuffer with the contents of a single edge list according to the
 	 * lecture slides.
@@ -234,7 +436,7 @@ public class Pipeline {
 	 *            The colour of the polygon to add into the zbuffer.
 	 */
 	public static void computeZBuffer(Color[][] zbuffer, float[][] zdepth, EdgeList edgeList, Color polyColor) {
-		for(int y = 0 ; y < edgeList.getEndY() ; y++){
+		for(int y = edgeList.getStartY() ; y < edgeList.getEndY() ; y++){
 
 			int x = (int) Math.ceil(edgeList.getLeftX(y));
 
@@ -246,24 +448,10 @@ public class Pipeline {
 
 			while(x < rightX){
 				
-				//System.out.printf("%d, %d, %f \n" ,x,y,z);
-				
 				if(x >= zdepth.length || y > zdepth[0].length || x < 0 || y < 0){
-					System.out.printf("%d, %d, %f \n", x, y, z);	
-
 					break;
 				}
-				
-				
-				if(x < 0 || y < 0){
-					x++;
-					z+=mz;
-					continue;
-				}
-				
-				
 
-				
 				if(z < zdepth[x][y]){
 					zdepth[x][y] = z; // set the depth
 					zbuffer[x][y] = polyColor;
@@ -274,9 +462,483 @@ public class Pipeline {
 		}
 	}
 
+	/**
+	 * The same as computeZBuffer above, but fills a Framebuffer, and can
+	 * count the fragments and draw shadows.
+	 * 
+	 * @param rgb
+	 *            The colour of the polygon, as packed RGB.
+	 * @param prepassed
+	 *            Whether the depth buffer was filled by a depth pre-pass, in
+	 *            which case only the pixels where the polygon is at the
+	 *            nearest depth are written. See Framebuffer.depthEqual.
+	 * @param shadows
+	 *            If not null, the pixels it says are in shadow are drawn in
+	 *            shadowRgb instead.
+	 * @param fragments
+	 *            If not null, the number of pixels depth tested is added to
+	 *            fragments[0] and the number written to fragments[1].
+	 * @param overdraw
+	 *            If not null, the depth tests and writes are also counted per
+	 *            pixel.
+	 */
+	public static void computeZBuffer(Framebuffer framebuffer, EdgeList edgeList, int rgb, boolean prepassed,
+			ShadowMap shadows, int shadowRgb, long[] fragments, OverdrawBuffer overdraw) {
+		computeZBuffer(framebuffer, edgeList, rgb, prepassed, shadows, shadowRgb, fragments, overdraw, 0, 0,
+				framebuffer.getWidth(), framebuffer.getHeight());
+	}
+
+	/**
+	 * The same as computeZBuffer above, but only draws the part of the
+	 * polygon inside the rectangle from (minX, minY) up to but not including
+	 * (maxX, maxY), e.g. one tile of a TileBinner.
+	 */
+	public static void computeZBuffer(Framebuffer framebuffer, EdgeList edgeList, int rgb, boolean prepassed,
+			ShadowMap shadows, int shadowRgb, long[] fragments, OverdrawBuffer overdraw, int minX, int minY,
+			int maxX, int maxY) {
+		touch(framebuffer, edgeList, minX, minY, maxX, maxY);
+		int width = framebuffer.getWidth();
+		int height = Math.min(maxY, framebuffer.getHeight());
+		int right = Math.min(maxX, width);
+		int tested = 0;
+		int written = 0;
+
+		for(int y = Math.max(minY, edgeList.getStartY()) ; y < edgeList.getEndY() ; y++){
+
+			int leftX = (int) Math.ceil(edgeList.getLeftX(y));
+
+			float leftZ = edgeList.getLeftZ(y);
+			int rightX =  Math.round(edgeList.getRightX(y)); // rightmost x
+
+			float mz = (edgeList.getRightZ(y) - edgeList.getLeftZ(y)) /
+					(edgeList.getRightX(y) - edgeList.getLeftX(y));
+
+			if (y >= height)
+				break;
+			int row = y * width;
+
+			// start at the left of the rectangle, rather than skipping the
+			// row, straight from the left end (see depthAt)
+			int x = Math.max(leftX, Math.max(minX, 0));
+
+			while(x < rightX){
+				
+				if(x >= right){
+					break;
+				}
+
+				tested++;
+				if (overdraw != null)
+					overdraw.tested(x, y);
+
+				float z = depthAt(leftZ, mz, x - leftX);
+				if(prepassed ? framebuffer.depthEqual(row + x, z) : framebuffer.depthTest(row + x, z)){
+					if (shadows != null && shadows.inShadow(x, y, z))
+						framebuffer.setRGB(row + x, shadowRgb);
+					else
+						framebuffer.setRGB(row + x, rgb);
+					written++;
+					if (overdraw != null)
+						overdraw.written(x, y);
+				}
+				x++;
+			}
+		}
+
+		if (fragments != null) {
+			fragments[0] += tested;
+			fragments[1] += written;
+		}
+	}
+
+	/**
+	 * Fills a framebuffer from the edge list of a smooth shaded polygon, i.e.
+	 * one made by computeEdgeList(poly, colours), interpolating the colour
+	 * across each row as well as the depth.
+	 * 
+	 * @param prepassed
+	 *            Whether the depth buffer was filled by a depth pre-pass, as
+	 *            for computeZBuffer.
+	 * @param shadows
+	 *            If not null, the pixels it says are in shadow are drawn in
+	 *            shadowRgb instead.
+	 * @param fragments
+	 *            If not null, the number of pixels depth tested is added to
+	 *            fragments[0] and the number written to fragments[1].
+	 * @param overdraw
+	 *            If not null, the depth tests and writes are also counted per
+	 *            pixel.
+	 */
+	public static void computeSmoothZBuffer(Framebuffer framebuffer, EdgeList edgeList, boolean prepassed,
+			ShadowMap shadows, int shadowRgb, long[] fragments, OverdrawBuffer overdraw) {
+		computeSmoothZBuffer(framebuffer, edgeList, prepassed, shadows, shadowRgb, fragments, overdraw, 0, 0,
+				framebuffer.getWidth(), framebuffer.getHeight());
+	}
+
+	/**
+	 * The same as computeSmoothZBuffer above, but only draws the part of the
+	 * polygon inside the given rectangle, as for computeZBuffer.
+	 */
+	public static void computeSmoothZBuffer(Framebuffer framebuffer, EdgeList edgeList, boolean prepassed,
+			ShadowMap shadows, int shadowRgb, long[] fragments, OverdrawBuffer overdraw, int minX, int minY,
+			int maxX, int maxY) {
+		touch(framebuffer, edgeList, minX, minY, maxX, maxY);
+		int width = framebuffer.getWidth();
+		int height = Math.min(maxY, framebuffer.getHeight());
+		int right = Math.min(maxX, width);
+		int tested = 0;
+		int written = 0;
+
+		for (int y = Math.max(minY, edgeList.getStartY()); y < edgeList.getEndY() && y < height; y++) {
+
+			int leftX = (int) Math.ceil(edgeList.getLeftX(y));
+			int rightX = Math.round(edgeList.getRightX(y));
+			float span = edgeList.getRightX(y) - edgeList.getLeftX(y);
+
+			float leftZ = edgeList.getLeftZ(y);
+			float mz = (edgeList.getRightZ(y) - edgeList.getLeftZ(y)) / span;
+
+			float r0 = edgeList.getLeftColour(y, 0);
+			float g0 = edgeList.getLeftColour(y, 1);
+			float b0 = edgeList.getLeftColour(y, 2);
+			float mr = (edgeList.getRightColour(y, 0) - r0) / span;
+			float mg = (edgeList.getRightColour(y, 1) - g0) / span;
+			float mb = (edgeList.getRightColour(y, 2) - b0) / span;
+
+			int row = y * width;
+
+			// start at the left of the rectangle, as for computeZBuffer
+			int x = Math.max(leftX, Math.max(minX, 0));
+
+			while (x < rightX) {
+
+				if (x >= right) {
+					break;
+				}
+
+				tested++;
+				if (overdraw != null)
+					overdraw.tested(x, y);
+
+				int along = x - leftX;
+				float z = depthAt(leftZ, mz, along);
+				if (prepassed ? framebuffer.depthEqual(row + x, z) : framebuffer.depthTest(row + x, z)) {
+					if (shadows != null && shadows.inShadow(x, y, z))
+						framebuffer.setRGB(row + x, shadowRgb);
+					else
+						framebuffer.setRGB(row + x, (checkBounds(Math.round(r0 + mr * along)) << 16)
+								| (checkBounds(Math.round(g0 + mg * along)) << 8)
+								| checkBounds(Math.round(b0 + mb * along)));
+					written++;
+					if (overdraw != null)
+						overdraw.written(x, y);
+				}
+				x++;
+			}
+		}
+
+		if (fragments != null) {
+			fragments[0] += tested;
+			fragments[1] += written;
+		}
+	}
+
+	/**
+	 * Fills a framebuffer from the edge list of a textured polygon, like
+	 * computeZBuffer, but each pixel is the texel under it modulated by the
+	 * polygon's shaded colour rgb (or shadowRgb where it is in shadow), so a
+	 * white polygon shows the texture as it is lit.
+	 * 
+	 * The view is an orthographic projection, so the texture coordinates are
+	 * a linear function of the screen position, and interpolating them along
+	 * the edge list is already perspective correct. They are worked out once
+	 * as plane equations u = a x + b y + c and stepped along each row. For
+	 * the same reason a pixel covers the same number of texels everywhere in
+	 * the polygon, so the mip level is chosen once rather than per span.
+	 * 
+	 * @param polygon
+	 *            The polygon's number in the scene, i.e. which of uvMap's
+	 *            coordinates are its.
+	 */
+	public static void computeTexturedZBuffer(Framebuffer framebuffer, EdgeList edgeList, Polygon poly,
+			UvMap uvMap, int polygon, int rgb, boolean prepassed, ShadowMap shadows, int shadowRgb,
+			long[] fragments, OverdrawBuffer overdraw) {
+		computeTexturedZBuffer(framebuffer, edgeList, poly, uvMap, polygon, rgb, prepassed, shadows, shadowRgb,
+				fragments, overdraw, 1);
+	}
+
+	/**
+	 * The same as computeTexturedZBuffer above, for an edge list made with
+	 * the given scale.
+	 */
+	public static void computeTexturedZBuffer(Framebuffer framebuffer, EdgeList edgeList, Polygon poly,
+			UvMap uvMap, int polygon, int rgb, boolean prepassed, ShadowMap shadows, int shadowRgb,
+			long[] fragments, OverdrawBuffer overdraw, float scale) {
+		int width = framebuffer.getWidth();
+		int height = framebuffer.getHeight();
+		touch(framebuffer, edgeList, 0, 0, width, height);
+		int tested = 0;
+		int written = 0;
+
+		// the rate the texture coordinates change with x and y, from the
+		// corners relative to the first
+		Vector3D[] v = poly.getVertices();
+		float[] uvs = uvMap.getUvs();
+		int at = polygon * 6;
+		float x0 = v[0].x * scale, y0 = v[0].y * scale;
+		float x1 = v[1].x * scale - x0, y1 = v[1].y * scale - y0;
+		float x2 = v[2].x * scale - x0, y2 = v[2].y * scale - y0;
+		float u1 = uvs[at + 2] - uvs[at], v1 = uvs[at + 3] - uvs[at + 1];
+		float u2 = uvs[at + 4] - uvs[at], v2 = uvs[at + 5] - uvs[at + 1];
+		float det = x1 * y2 - x2 * y1;
+		float ua = 0, ub = 0, va = 0, vb = 0;
+		if (det != 0) {
+			ua = (u1 * y2 - u2 * y1) / det;
+			ub = (x1 * u2 - x2 * u1) / det;
+			va = (v1 * y2 - v2 * y1) / det;
+			vb = (x1 * v2 - x2 * v1) / det;
+		}
+
+		// how many texels of the full size image a pixel covers, the longer
+		// way, picks the level
+		Texture texture = uvMap.getTexture();
+		float w0 = texture.getWidth(0), h0 = texture.getHeight(0);
+		float acrossX = (float) Math.sqrt(ua * w0 * ua * w0 + va * h0 * va * h0);
+		float acrossY = (float) Math.sqrt(ub * w0 * ub * w0 + vb * h0 * vb * h0);
+		int level = texture.levelFor(Math.max(acrossX, acrossY));
+		int[] texels = texture.getTexels(level);
+		int[] mortonX = texture.getMortonX(level);
+		int[] mortonY = texture.getMortonY(level);
+		int maskX = texture.getWidth(level) - 1;
+		int maskY = texture.getHeight(level) - 1;
+
+		// the plane equations, in texels of that level
+		float sx = texture.getWidth(level), sy = texture.getHeight(level);
+		ua *= sx;
+		ub *= sx;
+		va *= sy;
+		vb *= sy;
+		float uc = uvs[at] * sx - ua * x0 - ub * y0;
+		float vc = uvs[at + 1] * sy - va * x0 - vb * y0;
+
+		for (int y = Math.max(0, edgeList.getStartY()); y < edgeList.getEndY() && y < height; y++) {
+
+			int leftX = (int) Math.ceil(edgeList.getLeftX(y));
+			int rightX = Math.round(edgeList.getRightX(y));
+
+			float leftZ = edgeList.getLeftZ(y);
+			float mz = (edgeList.getRightZ(y) - edgeList.getLeftZ(y)) /
+					(edgeList.getRightX(y) - edgeList.getLeftX(y));
+
+			int row = y * width;
+
+			// start at the left edge of the screen, rather than skipping
+			// the row
+			int x = Math.max(leftX, 0);
+			float u = ua * x + ub * y + uc;
+			float t = va * x + vb * y + vc;
+
+			while (x < rightX && x < width) {
+
+				tested++;
+				if (overdraw != null)
+					overdraw.tested(x, y);
+
+				float z = depthAt(leftZ, mz, x - leftX);
+				if (prepassed ? framebuffer.depthEqual(row + x, z) : framebuffer.depthTest(row + x, z)) {
+					int texel = texels[mortonX[floor(u) & maskX] | mortonY[floor(t) & maskY]];
+					if (shadows != null && shadows.inShadow(x, y, z))
+						framebuffer.setRGB(row + x, modulate(texel, shadowRgb));
+					else
+						framebuffer.setRGB(row + x, modulate(texel, rgb));
+					written++;
+					if (overdraw != null)
+						overdraw.written(x, y);
+				}
+				x++;
+				u += ua;
+				t += va;
+			}
+		}
+
+		if (fragments != null) {
+			fragments[0] += tested;
+			fragments[1] += written;
+		}
+	}
+
+	private static int floor(float f) {
+		int i = (int) f;
+		return f < i ? i - 1 : i;
+	}
+
+	/**
+	 * Returns a texel lit by a shaded colour, i.e. each channel of the two
+	 * multiplied together, where 255 is 1.
+	 */
+	private static int modulate(int texel, int rgb) {
+		int r = (texel >> 16 & 0xFF) * (rgb >> 16 & 0xFF) / 255;
+		int g = (texel >> 8 & 0xFF) * (rgb >> 8 & 0xFF) / 255;
+		int b = (texel & 0xFF) * (rgb & 0xFF) / 255;
+		return (r << 16) | (g << 8) | b;
+	}
+
+	/**
+	 * Like computeZBuffer, but only keeps the depth, for when the colour
+	 * isn't wanted, e.g. for a ShadowMap.
+	 * 
+	 * @param depth
+	 *            The depth buffer, indexed by y * width + x.
+	 */
+	public static void computeDepthBuffer(float[] depth, int width, int height, EdgeList edgeList) {
+		for (int y = Math.max(0, edgeList.getStartY()); y < edgeList.getEndY() && y < height; y++) {
+
+			int leftX = (int) Math.ceil(edgeList.getLeftX(y));
+			int rightX = Math.round(edgeList.getRightX(y));
+
+			float leftZ = edgeList.getLeftZ(y);
+			float mz = (edgeList.getRightZ(y) - edgeList.getLeftZ(y)) / (edgeList.getRightX(y) - edgeList.getLeftX(y));
+
+			int row = y * width;
+
+			// start at the left edge of the screen, rather than skipping
+			// the row
+			int x = Math.max(leftX, 0);
+
+			while (x < rightX) {
+				if (x >= width) {
+					break;
+				}
+
+				float z = depthAt(leftZ, mz, x - leftX);
+				if (z < depth[row + x])
+					depth[row + x] = z;
+				x++;
+			}
+		}
+	}
+
+	/**
+	 * The same as computeDepthBuffer above, but for the depth buffer of a
+	 * Framebuffer, whichever way it stores its depths.
+	 */
+	public static void computeDepthBuffer(Framebuffer framebuffer, EdgeList edgeList) {
+		touch(framebuffer, edgeList, 0, 0, framebuffer.getWidth(), framebuffer.getHeight());
+		float[] depth = framebuffer.getDepthBuffer();
+		if (depth != null) {
+			computeDepthBuffer(depth, framebuffer.getWidth(), framebuffer.getHeight(), edgeList);
+			return;
+		}
 
+		int width = framebuffer.getWidth();
+		for (int y = Math.max(0, edgeList.getStartY()); y < edgeList.getEndY() && y < framebuffer.getHeight(); y++) {
 
+			int leftX = (int) Math.ceil(edgeList.getLeftX(y));
+			int rightX = Math.round(edgeList.getRightX(y));
 
+			float leftZ = edgeList.getLeftZ(y);
+			float mz = (edgeList.getRightZ(y) - edgeList.getLeftZ(y)) / (edgeList.getRightX(y) - edgeList.getLeftX(y));
+
+			int row = y * width;
+			int x = Math.max(leftX, 0);
+
+			while (x < rightX && x < width) {
+				framebuffer.depthTest(row + x, depthAt(leftZ, mz, x - leftX));
+				x++;
+			}
+		}
+	}
+
+	/**
+	 * Returns the depth of the pixel along pixels from the left end of a
+	 * row. Every rasterizer works the depth out this way, rather than adding
+	 * up a step per pixel, so that it comes out exactly the same wherever
+	 * drawing the row starts, e.g. at the left of a tile, and a depth
+	 * pre-pass matches the pass after it.
+	 */
+	private static float depthAt(float leftZ, float mz, int along) {
+		return leftZ + mz * along;
+	}
+
+	/**
+	 * If the framebuffer is cleared lazily, clears the tiles the polygon
+	 * will be drawn in, within the given rectangle.
+	 */
+	private static void touch(Framebuffer framebuffer, EdgeList edgeList, int minX, int minY, int maxX, int maxY) {
+		if (!framebuffer.isLazyClear())
+			return;
+		int startY = Math.max(minY, edgeList.getStartY());
+		int endY = Math.min(maxY, edgeList.getEndY());
+		float left = Float.MAX_VALUE;
+		float right = -Float.MAX_VALUE;
+		for (int y = startY; y < endY; y++) {
+			left = Math.min(left, edgeList.getLeftX(y));
+			right = Math.max(right, edgeList.getRightX(y));
+		}
+		if (left <= right)
+			framebuffer.touch(Math.max(minX, (int) Math.ceil(left)), startY, Math.min(maxX, Math.round(right)), endY);
+		else if (startY < endY)
+			// NaN edges from a degenerate polygon: the whole width, to be safe
+			framebuffer.touch(minX, startY, maxX, endY);
+	}
+
+	/**
+	 * Returns the nearest and furthest z of the scene's polygons, for
+	 * Framebuffer.setDepthRange.
+	 */
+	public static float[] computeDepthRange(Scene scene) {
+		float[] range = { Float.MAX_VALUE, -Float.MAX_VALUE };
+		if (scene.getMesh() != null) {
+			extendDepthRange(range, scene.getMesh().getVertices());
+		} else {
+			for (Polygon p : scene.getPolygons())
+				extendDepthRange(range, p.getVertices());
+		}
+		return range;
+	}
+
+	private static void extendDepthRange(float[] range, Vector3D[] vertices) {
+		for (Vector3D v : vertices) {
+			range[0] = Math.min(range[0], v.z);
+			range[1] = Math.max(range[1], v.z);
+		}
+	}
+
+	/**
+	 * After a depth pre-pass, returns whether any pixel of the polygon is at
+	 * the nearest depth, i.e. whether any of it will be seen.
+	 */
+	public static boolean hasVisibleFragment(Framebuffer framebuffer, EdgeList edgeList) {
+		int width = framebuffer.getWidth();
+		float[] depth = framebuffer.getDepthBuffer();
+
+		for (int y = Math.max(0, edgeList.getStartY()); y < edgeList.getEndY() && y < framebuffer.getHeight(); y++) {
+
+			int leftX = (int) Math.ceil(edgeList.getLeftX(y));
+			int rightX = Math.round(edgeList.getRightX(y));
+
+			float leftZ = edgeList.getLeftZ(y);
+			float mz = (edgeList.getRightZ(y) - edgeList.getLeftZ(y)) / (edgeList.getRightX(y) - edgeList.getLeftX(y));
+
+			int row = y * width;
+
+			// start at the left edge of the screen, rather than skipping
+			// the row
+			int x = Math.max(leftX, 0);
+
+			while (x < rightX) {
+				if (x >= width) {
+					break;
+				}
+
+				float z = depthAt(leftZ, mz, x - leftX);
+				if (depth != null ? z == depth[row + x] : framebuffer.depthMatches(row + x, z))
+					return true;
+				x++;
+			}
+		}
+		return false;
+	}
 }
 
 // code for comp261 assignments
@@ -0,0 +1,128 @@
+package renderer;
+
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes 8 bit RGB PNG images, compressed with the fastest deflate level, or
+ * not compressed at all. The compressed data is written out in chunks as it
+ * is made, so only a chunk of it is ever held in memory.
+ */
+public class PngEncoder extends ImageEncoder {
+
+	private static final byte[] SIGNATURE = { (byte) 137, 'P', 'N', 'G', '\r', '\n', 26, '\n' };
+	private static final int CHUNK_SIZE = 1 << 16;
+
+	private final int level;
+	private final Deflater deflater;
+	private final CRC32 crc = new CRC32();
+	private final byte[] chunk = new byte[CHUNK_SIZE];
+	// the filter type byte and the red, green and blue of each pixel
+	private byte[] row = new byte[0];
+
+	/**
+	 * @param level
+	 *            The deflate level, 0 for none up to 9. Levels above 1 are
+	 *            allowed, but are much slower for little gain.
+	 */
+	public PngEncoder(int level) {
+		if (level < 0 || level > 9)
+			throw new IllegalArgumentException("PngEncoder: bad level " + level);
+		this.level = level;
+		this.deflater = new Deflater(level);
+	}
+
+	@Override
+	public String getExtension() {
+		return "png";
+	}
+
+	@Override
+	protected void writeHeader() throws IOException {
+		put(SIGNATURE, 0, SIGNATURE.length);
+		byte[] header = new byte[13];
+		setInt(header, 0, width);
+		setInt(header, 4, height);
+		header[8] = 8; // bits per channel
+		header[9] = 2; // RGB
+		writeChunk("IHDR", header, header.length);
+
+		deflater.reset();
+		if (row.length != width * 3 + 1)
+			row = new byte[width * 3 + 1];
+	}
+
+	@Override
+	public void writeRow(int[] rgb, int offset) throws IOException {
+		if (level == 0) {
+			// no filter, as it wouldn't make the data any smaller
+			row[0] = 0;
+			for (int x = 0; x < width; x++) {
+				int pixel = rgb[offset + x];
+				row[1 + x * 3] = (byte) (pixel >> 16);
+				row[2 + x * 3] = (byte) (pixel >> 8);
+				row[3 + x * 3] = (byte) pixel;
+			}
+		} else {
+			// the sub filter: each byte less the one a pixel to the left,
+			// which turns the flat colours of a render into runs of zeros
+			row[0] = 1;
+			int last = 0;
+			for (int x = 0; x < width; x++) {
+				int pixel = rgb[offset + x];
+				row[1 + x * 3] = (byte) ((pixel >> 16) - (last >> 16));
+				row[2 + x * 3] = (byte) ((pixel >> 8) - (last >> 8));
+				row[3 + x * 3] = (byte) (pixel - last);
+				last = pixel;
+			}
+		}
+		deflater.setInput(row);
+		while (!deflater.needsInput())
+			deflate();
+	}
+
+	/**
+	 * Ends the deflater, whose native memory would otherwise only be freed
+	 * whenever the encoder happens to be garbage collected.
+	 */
+	@Override
+	public void close() {
+		deflater.end();
+	}
+
+	@Override
+	protected void writeTrailer() throws IOException {
+		deflater.finish();
+		while (!deflater.finished())
+			deflate();
+		writeChunk("IEND", chunk, 0);
+	}
+
+	/**
+	 * Deflates as much as will fit in a chunk and writes it.
+	 */
+	private void deflate() throws IOException {
+		int n = deflater.deflate(chunk);
+		if (n > 0)
+			writeChunk("IDAT", chunk, n);
+	}
+
+	private void writeChunk(String type, byte[] data, int length) throws IOException {
+		putInt(length);
+		put(type);
+		put(data, 0, length);
+		crc.reset();
+		for (int i = 0; i < 4; i++)
+			crc.update(type.charAt(i));
+		crc.update(data, 0, length);
+		putInt((int) crc.getValue());
+	}
+
+	private static void setInt(byte[] bytes, int offset, int i) {
+		bytes[offset] = (byte) (i >>> 24);
+		bytes[offset + 1] = (byte) (i >>> 16);
+		bytes[offset + 2] = (byte) (i >>> 8);
+		bytes[offset + 3] = (byte) i;
+	}
+}
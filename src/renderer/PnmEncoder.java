@@ -0,0 +1,48 @@
+package renderer;
+
+import java.io.IOException;
+
+/**
+ * Writes binary PPM (P6) or PAM (P7) images, which are just a short text
+ * header followed by the red, green and blue bytes of each pixel, so cost
+ * next to nothing to write.
+ */
+public class PnmEncoder extends ImageEncoder {
+
+	private final boolean pam;
+	private byte[] row = new byte[0];
+
+	/**
+	 * @param pam
+	 *            Whether to write PAM rather than PPM.
+	 */
+	public PnmEncoder(boolean pam) {
+		this.pam = pam;
+	}
+
+	@Override
+	public String getExtension() {
+		return pam ? "pam" : "ppm";
+	}
+
+	@Override
+	protected void writeHeader() throws IOException {
+		if (pam)
+			put("P7\nWIDTH " + width + "\nHEIGHT " + height + "\nDEPTH 3\nMAXVAL 255\nTUPLTYPE RGB\nENDHDR\n");
+		else
+			put("P6\n" + width + " " + height + "\n255\n");
+		if (row.length != width * 3)
+			row = new byte[width * 3];
+	}
+
+	@Override
+	public void writeRow(int[] rgb, int offset) throws IOException {
+		for (int x = 0; x < width; x++) {
+			int pixel = rgb[offset + x];
+			row[x * 3] = (byte) (pixel >> 16);
+			row[x * 3 + 1] = (byte) (pixel >> 8);
+			row[x * 3 + 2] = (byte) pixel;
+		}
+		put(row, 0, row.length);
+	}
+}
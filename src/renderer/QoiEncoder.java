@@ -0,0 +1,105 @@
+package renderer;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Writes QOI ("Quite OK Image") images, see qoiformat.org. QOI compresses
+ * about as well as fast PNG but in a single pass with no deflate, which makes
+ * it much quicker to write. Each pixel is written as a run of the last pixel,
+ * a reference to a recently seen colour, a small difference from the last
+ * pixel, or failing all those its full colour.
+ */
+public class QoiEncoder extends ImageEncoder {
+
+	private static final int OP_INDEX = 0x00;
+	private static final int OP_DIFF = 0x40;
+	private static final int OP_LUMA = 0x80;
+	private static final int OP_RUN = 0xc0;
+	private static final int OP_RGB = 0xfe;
+	private static final int MAX_RUN = 62;
+
+	// recently seen colours, by hash
+	private final int[] index = new int[64];
+	private int last;
+	private int run;
+	private long pixelsLeft;
+
+	@Override
+	public String getExtension() {
+		return "qoi";
+	}
+
+	@Override
+	protected void writeHeader() throws IOException {
+		put("qoif");
+		putInt(width);
+		putInt(height);
+		put(3); // channels
+		put(0); // sRGB
+
+		// the colours start out as transparent black, and the last pixel as
+		// opaque black; all our pixels are opaque, so none of them can be
+		// found in the index until they are put there
+		Arrays.fill(index, -1);
+		last = 0;
+		run = 0;
+		pixelsLeft = (long) width * height;
+	}
+
+	@Override
+	public void writeRow(int[] rgb, int offset) throws IOException {
+		for (int x = 0; x < width; x++) {
+			int pixel = rgb[offset + x] & 0xFFFFFF;
+			pixelsLeft--;
+
+			if (pixel == last) {
+				run++;
+				if (run == MAX_RUN || pixelsLeft == 0) {
+					put(OP_RUN | (run - 1));
+					run = 0;
+				}
+				continue;
+			}
+			if (run > 0) {
+				put(OP_RUN | (run - 1));
+				run = 0;
+			}
+
+			int r = pixel >> 16, g = (pixel >> 8) & 0xFF, b = pixel & 0xFF;
+			int hash = (r * 3 + g * 5 + b * 7 + 255 * 11) % 64;
+			if (index[hash] == pixel) {
+				put(OP_INDEX | hash);
+				last = pixel;
+				continue;
+			}
+			index[hash] = pixel;
+
+			// the differences wrap around, as bytes
+			int dr = (byte) (r - (last >> 16));
+			int dg = (byte) (g - ((last >> 8) & 0xFF));
+			int db = (byte) (b - (last & 0xFF));
+			int drg = dr - dg;
+			int dbg = db - dg;
+			if (dr >= -2 && dr <= 1 && dg >= -2 && dg <= 1 && db >= -2 && db <= 1) {
+				put(OP_DIFF | (dr + 2) << 4 | (dg + 2) << 2 | (db + 2));
+			} else if (drg >= -8 && drg <= 7 && dg >= -32 && dg <= 31 && dbg >= -8 && dbg <= 7) {
+				put(OP_LUMA | (dg + 32));
+				put((drg + 8) << 4 | (dbg + 8));
+			} else {
+				put(OP_RGB);
+				put(r);
+				put(g);
+				put(b);
+			}
+			last = pixel;
+		}
+	}
+
+	@Override
+	protected void writeTrailer() throws IOException {
+		for (int i = 0; i < 7; i++)
+			put(0);
+		put(1);
+	}
+}
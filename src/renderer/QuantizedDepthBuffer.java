@@ -0,0 +1,219 @@
+package renderer;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * A depth buffer that stores each depth as a 16 or 24 bit whole number rather
+ * than as a float, taking 2 or 3 bytes a pixel rather than 4. Depths are
+ * scaled so that the range set by setRange, normally the nearest and furthest
+ * z of the scene (see Pipeline.computeDepthRange), covers all the numbers
+ * there are. Two surfaces closer together than getStep() in z can then no
+ * longer be told apart, and whichever is drawn first wins.
+ *
+ * The 24 bit depths are packed into 3 bytes each, most significant first.
+ *
+ * With reversed depth the nearest depth is stored as the biggest number
+ * rather than the smallest, and the depth test keeps bigger numbers. As the
+ * view is orthographic, z is spread evenly over the numbers either way, so
+ * this doesn't change the precision; see precisionReport.
+ */
+public class QuantizedDepthBuffer {
+
+	private final int bits;
+	private final boolean reversed;
+	// the biggest number that can be stored, which is what clear fills the
+	// buffer with (or 0 if reversed)
+	private final int max;
+	private final short[] shorts;
+	private final byte[] bytes;
+
+	private float near;
+	private float scale;
+
+	/**
+	 * @param bits
+	 *            16 or 24.
+	 * @param reversed
+	 *            Whether to store nearer depths as bigger numbers.
+	 */
+	public QuantizedDepthBuffer(int width, int height, int bits, boolean reversed) {
+		if (bits != 16 && bits != 24)
+			throw new IllegalArgumentException("QuantizedDepthBuffer: can't store depth in " + bits + " bits");
+		this.bits = bits;
+		this.reversed = reversed;
+		this.max = (1 << bits) - 1;
+		this.shorts = bits == 16 ? new short[width * height] : null;
+		this.bytes = bits == 24 ? new byte[width * height * 3] : null;
+		setRange(0, 1);
+	}
+
+	public int getBits() {
+		return bits;
+	}
+
+	public boolean isReversed() {
+		return reversed;
+	}
+
+	/**
+	 * Sets the depths that the nearest and furthest numbers stand for. Depths
+	 * outside the range are clamped to it.
+	 */
+	public void setRange(float near, float far) {
+		if (!(far > near))
+			far = near + 1;
+		this.near = near;
+		// 0 and max are left for the cleared buffer and for depthEqual
+		this.scale = (max - 2) / (far - near);
+	}
+
+	/** The difference in z one step of the stored numbers stands for. */
+	public float getStep() {
+		return 1 / scale;
+	}
+
+	/** The number of bytes the depths take up. */
+	public int getByteCount() {
+		return shorts != null ? shorts.length * 2 : bytes.length;
+	}
+
+	/**
+	 * Returns the number z is stored as, from 1 to max - 1.
+	 */
+	public int quantize(float z) {
+		float t = (z - near) * scale;
+		int q = t <= 0 ? 1 : t >= max - 2 ? max - 1 : 1 + Math.round(t);
+		return reversed ? max - q : q;
+	}
+
+	/** Returns the depth a stored number stands for. */
+	public float dequantize(int q) {
+		if (reversed)
+			q = max - q;
+		return near + (q - 1) / scale;
+	}
+
+	/**
+	 * Pushes every depth as far away as it will go.
+	 */
+	public void clear() {
+		if (shorts != null)
+			Arrays.fill(shorts, (short) (reversed ? 0 : max));
+		else
+			Arrays.fill(bytes, (byte) (reversed ? 0 : 0xFF));
+	}
+
+	/**
+	 * Clears the depths from index from up to but not including index to.
+	 */
+	public void clear(int from, int to) {
+		if (shorts != null)
+			Arrays.fill(shorts, from, to, (short) (reversed ? 0 : max));
+		else
+			Arrays.fill(bytes, from * 3, to * 3, (byte) (reversed ? 0 : 0xFF));
+	}
+
+	private int get(int index) {
+		if (shorts != null)
+			return shorts[index] & 0xFFFF;
+		int i = index * 3;
+		return (bytes[i] & 0xFF) << 16 | (bytes[i + 1] & 0xFF) << 8 | bytes[i + 2] & 0xFF;
+	}
+
+	private void put(int index, int q) {
+		if (shorts != null) {
+			shorts[index] = (short) q;
+			return;
+		}
+		int i = index * 3;
+		bytes[i] = (byte) (q >> 16);
+		bytes[i + 1] = (byte) (q >> 8);
+		bytes[i + 2] = (byte) q;
+	}
+
+	public float getDepth(int index) {
+		return dequantize(get(index));
+	}
+
+	public void setDepth(int index, float z) {
+		put(index, quantize(z));
+	}
+
+	/** As for Framebuffer.depthTest. */
+	public boolean depthTest(int index, float z) {
+		int q = quantize(z);
+		if (reversed ? q > get(index) : q < get(index)) {
+			put(index, q);
+			return true;
+		}
+		return false;
+	}
+
+	/** As for Framebuffer.depthEqual. */
+	public boolean depthEqual(int index, float z) {
+		int q = quantize(z);
+		if (q == get(index)) {
+			// one step nearer, which no fragment can be as the pre-pass kept
+			// the nearest of them
+			put(index, reversed ? q + 1 : q - 1);
+			return true;
+		}
+		return false;
+	}
+
+	/** Whether z is stored as the same number as the depth at index. */
+	public boolean depthMatches(int index, float z) {
+		return quantize(z) == get(index);
+	}
+
+	/**
+	 * Describes how finely each way of storing depth can tell surfaces apart
+	 * across the z range from near to far, and how much memory it takes at the
+	 * given size.
+	 */
+	public static String precisionReport(float near, float far, int width, int height) {
+		StringBuilder report = new StringBuilder();
+		long pixels = (long) width * height;
+		report.append(String.format("depth from %.2f to %.2f at %dx%d%n", near, far, width, height));
+
+		// a float of raw z is finest near 0 and coarsest at the end furthest
+		// from it
+		float furthest = Math.max(Math.abs(near), Math.abs(far));
+		report.append(String.format("  float     %9.3f MB  step %.3g to %.3g%n", pixels * 4 / 1e6,
+				Math.ulp(Math.min(Math.abs(near), Math.abs(far))), Math.ulp(furthest)));
+
+		for (int bits : new int[] { 24, 16 }) {
+			for (boolean reversed : new boolean[] { false, true }) {
+				QuantizedDepthBuffer buffer = new QuantizedDepthBuffer(1, 1, bits, reversed);
+				buffer.setRange(near, far);
+				report.append(String.format("  %d bit%s %9.3f MB  step %.3g everywhere%n", bits,
+						reversed ? " rev" : "    ", pixels * (bits / 8) / 1e6, buffer.getStep()));
+			}
+		}
+		return report.toString();
+	}
+
+	/**
+	 * Prints the precision report for a model, fitted to the screen as
+	 * SequenceRenderer does, at the screen size and at 4K and 8K.
+	 * 
+	 * usage: QuantizedDepthBuffer model.txt ...
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length == 0) {
+			System.err.println("usage: QuantizedDepthBuffer model.txt ...");
+			System.exit(1);
+		}
+		for (String name : args) {
+			Scene scene = SceneLoader.load(new File(name));
+			float scale = SequenceRenderer.fitScale(scene, GUI.CANVAS_WIDTH, GUI.CANVAS_HEIGHT);
+			float[] range = Pipeline.computeDepthRange(
+					SequenceRenderer.place(scene, scale, new CameraPose(0, 0), GUI.CANVAS_WIDTH, GUI.CANVAS_HEIGHT));
+			System.out.println(name);
+			System.out.print(precisionReport(range[0], range[1], GUI.CANVAS_WIDTH, GUI.CANVAS_HEIGHT));
+			System.out.print(precisionReport(range[0], range[1], 3840, 2160));
+			System.out.print(precisionReport(range[0], range[1], 7680, 4320));
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package renderer;
+
+import java.awt.Color;
+import java.io.File;
+import java.util.List;
+
+/**
+ * A small benchmark that renders a turntable of each model given on the
+ * command line in each of the modes below, and prints the time per frame
+ * along with how far apart, on average, consecutive polygons are on the
+ * screen. The second number is a rough stand in for cache misses: the further
+ * apart two polygons are, the less of the framebuffer the second one will
+ * find already in the cache.
+ * 
+ * The modes are: file order, Morton order (see MortonOrder), a depth
+ * pre-pass, smooth shading, and smooth shading with a depth pre-pass.
+ * 
+ * The frames are the size of the GUI's canvas unless -size says otherwise.
+ * Tile binning only pays off once the framebuffer is too big for the cache.
+ * 
+ * usage: RenderBenchmark [-size widthxheight] [frames] model.txt ...
+ */
+public class RenderBenchmark {
+
+	private static final int WARMUP_ROUNDS = 3;
+	private static final int ROUNDS = 5;
+
+	private static final String[] MODES = { "file", "morton", "prepass", "binned", "smooth", "smooth+prepass",
+			"smooth+binned" };
+
+	public static void main(String[] args) throws Exception {
+		int first = 0;
+		int frames = 90;
+		int width = GUI.CANVAS_WIDTH;
+		int height = GUI.CANVAS_HEIGHT;
+		if (args.length > first + 1 && args[first].equals("-size") && args[first + 1].matches("\\d+x\\d+")) {
+			String[] size = args[first + 1].split("x");
+			width = Integer.parseInt(size[0]);
+			height = Integer.parseInt(size[1]);
+			first += 2;
+		}
+		if (args.length > first && args[first].matches("\\d+")) {
+			frames = Integer.parseInt(args[first]);
+			first++;
+		}
+		if (args.length <= first) {
+			System.err.println("usage: RenderBenchmark [-size widthxheight] [frames] model.txt ...");
+			System.exit(1);
+		}
+
+		for (int i = first; i < args.length; i++) {
+			Scene scene = SceneLoader.load(new File(args[i]));
+			float scale = SequenceRenderer.fitScale(scene, width, height);
+			List<CameraPose> poses = SequenceRenderer.turntable(frames, 0.3f);
+			for (String mode : MODES) {
+				FrameRenderer renderer = new FrameRenderer(width, height);
+				renderer.setMortonOrdering(mode.equals("morton"));
+				renderer.setDepthPrepass(mode.endsWith("prepass"));
+				renderer.setSmoothShading(mode.startsWith("smooth"));
+				renderer.setTileBinning(mode.endsWith("binned"));
+
+				for (int round = 0; round < WARMUP_ROUNDS; round++)
+					run(scene, scale, poses, renderer, null);
+
+				double[] jump = new double[1];
+				long best = Long.MAX_VALUE;
+				for (int round = 0; round < ROUNDS; round++) {
+					jump[0] = 0;
+					best = Math.min(best, run(scene, scale, poses, renderer, jump));
+				}
+
+				System.out.printf("%-12s %-15s %8.3f ms/frame %8.1f px between polygons%n",
+						new File(args[i]).getName(), mode, best / 1e6 / frames, jump[0] / frames);
+			}
+		}
+	}
+
+	/**
+	 * Renders every pose once and returns the total time taken. If jump isn't
+	 * null, the mean distance between consecutive polygons of each frame is
+	 * added to jump[0].
+	 */
+	private static long run(Scene scene, float scale, List<CameraPose> poses, FrameRenderer renderer,
+			double[] jump) {
+		Framebuffer framebuffer = renderer.getFramebuffer();
+		long total = 0;
+		for (CameraPose pose : poses) {
+			Scene frame = SequenceRenderer.place(scene, scale, pose, framebuffer.getWidth(), framebuffer.getHeight());
+			long start = System.nanoTime();
+			renderer.render(frame, scene.getLight(), Color.white, Color.gray);
+			total += System.nanoTime() - start;
+
+			if (jump != null)
+				jump[0] += meanJump(frame.getPolygons(), renderer.getDrawOrder());
+		}
+		return total;
+	}
+
+	private static double meanJump(List<Polygon> polygons, int[] order) {
+		double sum = 0;
+		float lastX = 0, lastY = 0;
+		for (int i = 0; i < polygons.size(); i++) {
+			Vector3D[] v = polygons.get(order == null ? i : order[i]).getVertices();
+			float x = (v[0].x + v[1].x + v[2].x) / 3;
+			float y = (v[0].y + v[1].y + v[2].y) / 3;
+			if (i > 0)
+				sum += Math.hypot(x - lastX, y - lastY);
+			lastX = x;
+			lastY = y;
+		}
+		return polygons.size() > 1 ? sum / (polygons.size() - 1) : 0;
+	}
+}
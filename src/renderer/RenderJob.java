@@ -0,0 +1,98 @@
+package renderer;
+
+import java.awt.Color;
+
+/**
+ * One request to a RenderScheduler: a scene, where to look at it from, how
+ * to light it and how big a picture to make. The scene is only ever read, so
+ * any number of jobs can share it.
+ *
+ * Once the job has finished, it holds how long it waited to be started and
+ * how long it took from being submitted to being done.
+ */
+public class RenderJob {
+
+	private final Scene scene;
+	private final CameraPose pose;
+	private final int width;
+	private final int height;
+	private Color lightColor = Color.white;
+	private Color ambientLight = new Color(128, 128, 128);
+	private boolean smoothShading;
+
+	volatile long submitted;
+	private volatile long queueNanos;
+	private volatile long latencyNanos;
+
+	public RenderJob(Scene scene, CameraPose pose, int width, int height) {
+		if (width <= 0 || height <= 0 || width > StripRenderer.MAX_SIZE || height > StripRenderer.MAX_SIZE)
+			throw new IllegalArgumentException("RenderJob: bad size " + width + "x" + height);
+		this.scene = scene;
+		this.pose = pose;
+		this.width = width;
+		this.height = height;
+
+		// work out the vertex normals now, rather than on whichever threads
+		// happen to render the scene first
+		if (scene.getMesh() != null)
+			scene.getMesh().getNormals();
+	}
+
+	public Scene getScene() {
+		return scene;
+	}
+
+	public CameraPose getPose() {
+		return pose;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public Color getLightColor() {
+		return lightColor;
+	}
+
+	public void setLightColor(Color lightColor) {
+		this.lightColor = lightColor;
+	}
+
+	public Color getAmbientLight() {
+		return ambientLight;
+	}
+
+	public void setAmbientLight(Color ambientLight) {
+		this.ambientLight = ambientLight;
+	}
+
+	public boolean isSmoothShading() {
+		return smoothShading;
+	}
+
+	public void setSmoothShading(boolean smoothShading) {
+		this.smoothShading = smoothShading;
+	}
+
+	/** How long the job waited before it was started. */
+	public long getQueueNanos() {
+		return queueNanos;
+	}
+
+	/** How long the job took from being submitted to being finished. */
+	public long getLatencyNanos() {
+		return latencyNanos;
+	}
+
+	void started(long now) {
+		queueNanos = now - submitted;
+	}
+
+	void finished(long now) {
+		latencyNanos = now - submitted;
+	}
+}
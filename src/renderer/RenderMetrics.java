@@ -0,0 +1,274 @@
+package renderer;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Per-stage timings and counters for the rendering pipeline, published as an
+ * MBean so they can be read from a running renderer.
+ * 
+ * A FrameRenderer collects the numbers for a frame in its own fields and hands
+ * them over once, at the end of the frame, so the hot loops never touch this
+ * class. When metrics are disabled the renderer doesn't even read the clock.
+ * Several renderers on different threads may share one RenderMetrics.
+ */
+public class RenderMetrics implements RenderMetricsMBean {
+
+	// stages
+	public static final int CULL = 0;
+	public static final int NORMALS = 1;
+	public static final int SHADE = 2;
+	public static final int EDGE_LIST = 3;
+	public static final int Z_BUFFER = 4;
+	public static final int BLIT = 5;
+	public static final int SHADOW = 6;
+	public static final int STAGES = 7;
+
+	// counters
+	public static final int POLYGONS_SUBMITTED = 0;
+	public static final int POLYGONS_CULLED = 1;
+	public static final int POLYGONS_RASTERIZED = 2;
+	public static final int PIXELS_TESTED = 3;
+	public static final int PIXELS_WRITTEN = 4;
+	public static final int DEPTH_REJECTS = 5;
+	public static final int POLYGONS_PREPASS_REJECTED = 6;
+	public static final int COUNTERS = 7;
+
+	private static final String[] STAGE_NAMES = { "cull", "normals", "shade", "edgeList", "zBuffer", "blit", "shadow" };
+	private static final int BUCKETS = 64;
+
+	// everything registered so far, so registering a name twice shares it
+	private static final Map<String, RenderMetrics> registered = new HashMap<String, RenderMetrics>();
+
+	private volatile boolean enabled;
+	// the name it was registered under, and how many have registered it
+	// and not yet released it, both guarded by RenderMetrics.class
+	private String name;
+	private int users;
+
+	private long frames;
+	private final long[] lastStageNanos = new long[STAGES];
+	private final long[] totalStageNanos = new long[STAGES];
+	private final long[] stageSamples = new long[STAGES];
+	private final long[][] histograms = new long[STAGES][BUCKETS];
+	private final long[] lastCounters = new long[COUNTERS];
+
+	public RenderMetrics(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Creates a RenderMetrics and registers it with the platform MBean server
+	 * as renderer:type=RenderMetrics,name=[name]. Metrics start enabled if
+	 * the system property renderer.metrics is true, and can be switched on and
+	 * off through JMX at any time. If the name has already been registered,
+	 * the same RenderMetrics is returned, so any number of renderers can
+	 * share one name. Each register should be matched by a release.
+	 */
+	public static synchronized RenderMetrics register(String name) {
+		RenderMetrics metrics = registered.get(name);
+		if (metrics != null) {
+			metrics.users++;
+			return metrics;
+		}
+
+		metrics = new RenderMetrics(Boolean.getBoolean("renderer.metrics"));
+		metrics.name = name;
+		metrics.users = 1;
+		registered.put(name, metrics);
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, objectName(name));
+		} catch (JMException e) {
+			// the renderer works fine without being visible through JMX
+			e.printStackTrace();
+		}
+		return metrics;
+	}
+
+	/**
+	 * Gives up a RenderMetrics returned by register. Once everything that
+	 * registered it has released it, it is taken off the MBean server, and
+	 * registering the name again starts afresh.
+	 */
+	public void release() {
+		synchronized (RenderMetrics.class) {
+			if (name == null || users == 0)
+				return;
+			if (--users > 0)
+				return;
+			registered.remove(name);
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName(name));
+			} catch (JMException e) {
+				// it was never registered, see register
+			}
+		}
+	}
+
+	/**
+	 * Whether a RenderMetrics is registered under the given name.
+	 */
+	public static synchronized boolean isRegistered(String name) {
+		return registered.containsKey(name);
+	}
+
+	private static ObjectName objectName(String name) throws JMException {
+		return new ObjectName("renderer:type=RenderMetrics,name=" + ObjectName.quote(name));
+	}
+
+	/**
+	 * Records a finished frame.
+	 * 
+	 * @param stageNanos
+	 *            Time spent in each stage, indexed by the stage constants.
+	 *            The blit is usually recorded on its own, with recordStage.
+	 * @param stagesRun
+	 *            Which stages ran in the frame, bit 1 << stage for each. The
+	 *            others, e.g. the shadow map for a frame that reused the last
+	 *            one, aren't counted in their means and histograms.
+	 * @param counters
+	 *            The frame's counters, indexed by the counter constants.
+	 */
+	public synchronized void recordFrame(long[] stageNanos, int stagesRun, long[] counters) {
+		frames++;
+		for (int stage = 0; stage < STAGES; stage++) {
+			if (stage == BLIT)
+				continue;
+			if ((stagesRun & 1 << stage) != 0)
+				addStage(stage, stageNanos[stage]);
+			else
+				lastStageNanos[stage] = 0;
+		}
+		System.arraycopy(counters, 0, lastCounters, 0, COUNTERS);
+	}
+
+	/**
+	 * Records the time taken by a single stage of the last frame.
+	 */
+	public synchronized void recordStage(int stage, long nanos) {
+		addStage(stage, nanos);
+	}
+
+	private void addStage(int stage, long nanos) {
+		lastStageNanos[stage] = nanos;
+		totalStageNanos[stage] += nanos;
+		stageSamples[stage]++;
+		histograms[stage][64 - Long.numberOfLeadingZeros(Math.max(nanos, 0))]++;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public synchronized long getFrames() {
+		return frames;
+	}
+
+	public synchronized long getLastCullNanos() {
+		return lastStageNanos[CULL];
+	}
+
+	public synchronized long getLastNormalsNanos() {
+		return lastStageNanos[NORMALS];
+	}
+
+	public synchronized long getLastShadeNanos() {
+		return lastStageNanos[SHADE];
+	}
+
+	public synchronized long getLastEdgeListNanos() {
+		return lastStageNanos[EDGE_LIST];
+	}
+
+	public synchronized long getLastZBufferNanos() {
+		return lastStageNanos[Z_BUFFER];
+	}
+
+	public synchronized long getLastBlitNanos() {
+		return lastStageNanos[BLIT];
+	}
+
+	public synchronized long getLastShadowNanos() {
+		return lastStageNanos[SHADOW];
+	}
+
+	public synchronized long getLastPolygonsSubmitted() {
+		return lastCounters[POLYGONS_SUBMITTED];
+	}
+
+	public synchronized long getLastPolygonsCulled() {
+		return lastCounters[POLYGONS_CULLED];
+	}
+
+	public synchronized long getLastPolygonsRasterized() {
+		return lastCounters[POLYGONS_RASTERIZED];
+	}
+
+	public synchronized long getLastPixelsTested() {
+		return lastCounters[PIXELS_TESTED];
+	}
+
+	public synchronized long getLastPixelsWritten() {
+		return lastCounters[PIXELS_WRITTEN];
+	}
+
+	public synchronized long getLastDepthRejects() {
+		return lastCounters[DEPTH_REJECTS];
+	}
+
+	public synchronized long getLastPolygonsPrepassRejected() {
+		return lastCounters[POLYGONS_PREPASS_REJECTED];
+	}
+
+	public String[] getStageNames() {
+		return STAGE_NAMES.clone();
+	}
+
+	public synchronized double getMeanStageNanos(String stage) {
+		int i = stageIndex(stage);
+		return stageSamples[i] == 0 ? 0 : totalStageNanos[i] / (double) stageSamples[i];
+	}
+
+	public synchronized long[] getStageHistogram(String stage) {
+		return histograms[stageIndex(stage)].clone();
+	}
+
+	public synchronized void reset() {
+		frames = 0;
+		for (int stage = 0; stage < STAGES; stage++) {
+			lastStageNanos[stage] = 0;
+			totalStageNanos[stage] = 0;
+			stageSamples[stage] = 0;
+			Arrays.fill(histograms[stage], 0);
+		}
+		Arrays.fill(lastCounters, 0);
+	}
+
+	private static int stageIndex(String stage) {
+		for (int i = 0; i < STAGE_NAMES.length; i++) {
+			if (STAGE_NAMES[i].equals(stage))
+				return i;
+		}
+		throw new IllegalArgumentException("RenderMetrics: no such stage: " + stage);
+	}
+
+	@Override
+	public synchronized String toString() {
+		StringBuilder ans = new StringBuilder("frame " + frames + ":");
+		for (int stage = 0; stage < STAGES; stage++)
+			ans.append(' ').append(STAGE_NAMES[stage]).append('=').append(lastStageNanos[stage] / 1000).append("us");
+		ans.append(" polygons=").append(lastCounters[POLYGONS_RASTERIZED]).append('/')
+				.append(lastCounters[POLYGONS_SUBMITTED]);
+		ans.append(" pixels=").append(lastCounters[PIXELS_WRITTEN]).append('/').append(lastCounters[PIXELS_TESTED]);
+		return ans.toString();
+	}
+}
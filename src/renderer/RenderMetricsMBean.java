@@ -0,0 +1,71 @@
+package renderer;
+
+/**
+ * The management interface of RenderMetrics, as seen through JMX (e.g. in
+ * jconsole or VisualVM). All the "Last" attributes describe the most recently
+ * finished frame; times are in nanoseconds.
+ */
+public interface RenderMetricsMBean {
+
+	boolean isEnabled();
+
+	void setEnabled(boolean enabled);
+
+	long getFrames();
+
+	long getLastCullNanos();
+
+	long getLastNormalsNanos();
+
+	long getLastShadeNanos();
+
+	long getLastEdgeListNanos();
+
+	long getLastZBufferNanos();
+
+	long getLastBlitNanos();
+
+	/**
+	 * The time spent building the shadow map, which is 0 for frames that
+	 * could reuse the last one.
+	 */
+	long getLastShadowNanos();
+
+	long getLastPolygonsSubmitted();
+
+	long getLastPolygonsCulled();
+
+	/**
+	 * The polygons drawn into the framebuffer, which leaves out those culled,
+	 * those the depth pre-pass found hidden everywhere, and those entirely
+	 * off the screen when tile binning.
+	 */
+	long getLastPolygonsRasterized();
+
+	long getLastPixelsTested();
+
+	long getLastPixelsWritten();
+
+	long getLastDepthRejects();
+
+	/**
+	 * The polygons the depth pre-pass found hidden everywhere, so that they
+	 * weren't shaded or drawn.
+	 */
+	long getLastPolygonsPrepassRejected();
+
+	String[] getStageNames();
+
+	/**
+	 * Returns the mean time, over all frames so far, spent in the named stage.
+	 */
+	double getMeanStageNanos(String stage);
+
+	/**
+	 * Returns the histogram of frame times for the named stage. Bucket i
+	 * counts the frames that took between 2^(i-1) and 2^i nanoseconds.
+	 */
+	long[] getStageHistogram(String stage);
+
+	void reset();
+}
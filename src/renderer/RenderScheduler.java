@@ -0,0 +1,238 @@
+package renderer;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders any number of independent RenderJobs at once, e.g. the thumbnails
+ * asked for by hundreds of clients. Submitting a job never blocks: it is
+ * queued, and a fixed number of render threads take jobs off the queue, so
+ * however many jobs are waiting only that many are drawing at once. Each job
+ * draws into a framebuffer lent by a FramebufferPool, so the memory taken by
+ * framebuffers stays within a budget however many sizes are asked for.
+ *
+ * How long each job waited and how long it took are kept in the job, and in
+ * the scheduler's totals.
+ */
+public class RenderScheduler {
+
+	private final ExecutorService pool;
+	private final FramebufferPool framebuffers;
+
+	// the totals, guarded by this
+	private final FrameStats queueStats = new FrameStats("jobs");
+	private final FrameStats latencyStats = new FrameStats("jobs");
+	private long submitted;
+	private long failed;
+	private int queued;
+	private int running;
+	private int peakQueued;
+
+	/**
+	 * @param threads
+	 *            How many jobs to draw at once, usually the number of cores.
+	 * @param budget
+	 *            How many bytes the framebuffers may take, see
+	 *            FramebufferPool.
+	 */
+	public RenderScheduler(int threads, long budget) {
+		if (threads <= 0)
+			throw new IllegalArgumentException("RenderScheduler: threads must be positive: " + threads);
+		this.framebuffers = new FramebufferPool(budget);
+		this.pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private int count;
+
+			@Override
+			public synchronized Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "render-" + ++count);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Queues a job, and returns the picture it will make. The future fails
+	 * if the job does, e.g. if it is bigger than the framebuffer budget, or
+	 * if the scheduler has been shut down.
+	 */
+	public CompletableFuture<BufferedImage> submit(final RenderJob job) {
+		final CompletableFuture<BufferedImage> result = new CompletableFuture<BufferedImage>();
+		job.submitted = System.nanoTime();
+		int peakBefore;
+		synchronized (this) {
+			peakBefore = peakQueued;
+			submitted++;
+			queued++;
+			peakQueued = Math.max(peakQueued, queued);
+		}
+		try {
+			pool.execute(new Runnable() {
+				@Override
+				public void run() {
+					started(job);
+					BufferedImage image = null;
+					Throwable error = null;
+					try {
+						image = render(job);
+					} catch (Throwable e) {
+						error = e;
+					}
+					// the totals include the job by the time anyone waiting
+					// for it hears it is done
+					finished(job, error != null);
+					if (error == null)
+						result.complete(image);
+					else
+						result.completeExceptionally(error);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// it was never queued, so take it back out of the totals
+			synchronized (this) {
+				submitted--;
+				queued--;
+				peakQueued = Math.max(peakBefore, queued);
+			}
+			result.completeExceptionally(e);
+		}
+		return result;
+	}
+
+	private BufferedImage render(RenderJob job) throws InterruptedException {
+		Scene scene = job.getScene();
+		float scale = SequenceRenderer.fitScale(scene, job.getWidth(), job.getHeight());
+		Scene frame = SequenceRenderer.place(scene, scale, job.getPose(), job.getWidth(), job.getHeight());
+
+		Framebuffer framebuffer = framebuffers.acquire(job.getWidth(), job.getHeight());
+		try {
+			FrameRenderer renderer = new FrameRenderer(framebuffer);
+			renderer.setSmoothShading(job.isSmoothShading());
+			renderer.render(frame, scene.getLight(), job.getLightColor(), job.getAmbientLight());
+			return renderer.toImage();
+		} finally {
+			framebuffers.release(framebuffer);
+		}
+	}
+
+	private synchronized void started(RenderJob job) {
+		job.started(System.nanoTime());
+		queued--;
+		running++;
+		queueStats.record(job.getQueueNanos());
+	}
+
+	private synchronized void finished(RenderJob job, boolean failed) {
+		job.finished(System.nanoTime());
+		running--;
+		if (failed)
+			this.failed++;
+		latencyStats.record(job.getLatencyNanos());
+	}
+
+	public FramebufferPool getFramebufferPool() {
+		return framebuffers;
+	}
+
+	public synchronized long getSubmittedCount() {
+		return submitted;
+	}
+
+	public synchronized long getFailedCount() {
+		return failed;
+	}
+
+	/** How many jobs are waiting to be started. */
+	public synchronized int getQueuedCount() {
+		return queued;
+	}
+
+	public synchronized int getRunningCount() {
+		return running;
+	}
+
+	/** The most jobs that have ever been waiting at once. */
+	public synchronized int getPeakQueuedCount() {
+		return peakQueued;
+	}
+
+	/**
+	 * Returns a summary of how long jobs have waited to be started.
+	 */
+	public synchronized String getQueueSummary() {
+		return queueStats.toString();
+	}
+
+	/**
+	 * Returns a summary of how long jobs have taken from being submitted to
+	 * being done.
+	 */
+	public synchronized String getLatencySummary() {
+		return latencyStats.toString();
+	}
+
+	public synchronized double getMeanLatencyMillis() {
+		return latencyStats.getMeanMillis();
+	}
+
+	public synchronized double getMeanQueueMillis() {
+		return queueStats.getMeanMillis();
+	}
+
+	/**
+	 * Stops taking jobs, and waits for the ones already queued to finish.
+	 */
+	public void shutdown() throws InterruptedException {
+		pool.shutdown();
+		pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Renders a burst of thumbnails of a model, of random sizes from random
+	 * angles, all submitted at once, and reports how long they waited and
+	 * took.
+	 *
+	 * usage: RenderScheduler model.txt [jobs] [threads] [budgetMB]
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("usage: RenderScheduler model.txt [jobs] [threads] [budgetMB]");
+			System.exit(1);
+		}
+		Scene scene = SceneLoader.load(new File(args[0]));
+		int jobs = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		long budget = (args.length > 3 ? Long.parseLong(args[3]) : 16) << 20;
+
+		RenderScheduler scheduler = new RenderScheduler(threads, budget);
+		Random random = new Random(1);
+		List<CompletableFuture<BufferedImage>> results = new ArrayList<CompletableFuture<BufferedImage>>();
+		long start = System.nanoTime();
+		for (int i = 0; i < jobs; i++) {
+			int size = 64 << random.nextInt(3);
+			CameraPose pose = new CameraPose(random.nextFloat() - 0.5f, random.nextFloat() * 6.28f);
+			results.add(scheduler.submit(new RenderJob(scene, pose, size, size)));
+		}
+		for (CompletableFuture<BufferedImage> result : results)
+			result.get();
+		long time = System.nanoTime() - start;
+
+		FramebufferPool framebuffers = scheduler.getFramebufferPool();
+		System.out.printf("%d jobs in %.1f ms on %d threads, %d queued at most%n", jobs, time / 1e6, threads,
+				scheduler.getPeakQueuedCount());
+		System.out.println("queue   " + scheduler.getQueueSummary());
+		System.out.println("latency " + scheduler.getLatencySummary());
+		System.out.printf("framebuffers: %d made, %.1f of %.1f MB at most%n", framebuffers.getCreatedCount(),
+				framebuffers.getPeakBytes() / 1e6, framebuffers.getBudget() / 1e6);
+		scheduler.shutdown();
+	}
+}
@@ -1,133 +1,171 @@
 package renderer;
 import java.awt.Color;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.awt.image.BufferedImage;
-import java.io.BufferedReader;
-import java.io.Closeable;
 import java.io.File;
-import java.io.FileReader;
-import java.io.IOException;
-import java.io.Reader;
-import java.util.ArrayList;
-import java.util.List;
+
+import javax.swing.Timer;
 
 public class Renderer extends GUI {
 
-	private static Color[][] colour;
-	private static float[][] depth;
-	
+	private final FrameRenderer frameRenderer = new FrameRenderer(CANVAS_WIDTH, CANVAS_HEIGHT);
+	private final RenderMetrics metrics = RenderMetrics.register("gui");
+
 	private BoundingBox boundingBox;
 
 	private float shift = 0.5f;
+
+	// rotation asked for by key presses since the last frame. it is applied
+	// to the scene once at the start of the next render.
+	private float pendingXRot;
+	private float pendingYRot;
+	// 0 renders normally, 1 shows a heatmap of depth tests and 2 a heatmap of
+	// depth writes per pixel. the O key cycles through them.
+	private int overdrawMode;
 	private Scene scene;
 	private Vector3D lightDirection;
+	// the load still going, if there is one
+	private SceneLoadTask loading;
+
+	// while adaptive resolution is on (the R key), frames drawn while the
+	// model is being rotated are drawn smaller by preview, to keep within
+	// the scaler's budget, and a whole frame is drawn once the keys have
+	// been left alone for REFINE_DELAY_MS
+	private static final int REFINE_DELAY_MS = 250;
+	private boolean adaptive;
+	private boolean interacting;
+	private final ResolutionScaler scaler = new ResolutionScaler(ResolutionScaler.DEFAULT_BUDGET_NANOS);
+	private FrameRenderer preview;
+	private final Timer refine = new Timer(REFINE_DELAY_MS, new ActionListener() {
+		public void actionPerformed(ActionEvent ev) {
+			interacting = false;
+			requestFrame();
+		}
+	});
 
 
-	private Renderer(){
-		colour = new Color[CANVAS_HEIGHT][CANVAS_WIDTH];
-		depth = new float[CANVAS_HEIGHT][CANVAS_WIDTH];
+	private Renderer() {
+		frameRenderer.setMetrics(metrics);
+		refine.setRepeats(false);
 	}
 
 
+	/**
+	 * Starts loading the file in the background. The current scene is drawn
+	 * until the new one has loaded, and is kept if it fails to. Picking
+	 * another file cancels a load that hasn't finished, rather than waiting
+	 * for it.
+	 */
 	@Override
-	protected void onLoad(File file)  {
-		List<Polygon> polygons = new ArrayList<Polygon>();
-
-		try{
-			BufferedReader data = new BufferedReader(new FileReader(file) );
-
-			String headerLine = data.readLine();
-			this.lightDirection = createVector(headerLine);
-
-			String line;
-			while((line = data.readLine()) != null){
-
-				String[] values = line.split(" ");
-
-				// add points
-				float[] points = new float[9];
-				for(int i=0; i < 9; i++) 
-					points[i] = Float.parseFloat(values[i]);
-
-				//add color				
-				int[] colour = new int[3];
-				colour[0] = Integer.parseInt(values[9]);
-				colour[1] = Integer.parseInt(values[10]);
-				colour[2] = Integer.parseInt(values[11]);
-
-
-				polygons.add(new Polygon(points, colour));
-			}
-
-
+	protected void onLoad(File file) {
+		if (loading != null)
+			loading.cancel(true);
+		showProgress("Loading " + file.getName(), 0);
+		loading = new SceneLoadTask(file, loadListener);
+		loading.execute();
+	}
 
-			this.scene = new Scene(polygons, this.lightDirection);
-			render();
+	private final SceneLoadTask.Listener loadListener = new SceneLoadTask.Listener() {
+		@Override
+		public void progress(File file, long bytes, long total, int polygons) {
+			int percent = total == 0 ? 100 : (int) (bytes * 100 / total);
+			showProgress(file.getName() + ": " + polygons + " polygons", percent);
+		}
 
-		}catch(IOException e){
-			e.printStackTrace();
+		@Override
+		public void loaded(File file, Scene scene) {
+			// on the event dispatch thread, as render is, so the next frame
+			// sees either all of the old scene or all of the new one
+			Renderer.this.scene = scene;
+			lightDirection = scene.getLight();
+			boundingBox = null;
+			pendingXRot = 0f;
+			pendingYRot = 0f;
+			scaler.reset();
+			loading = null;
+			hideProgress();
+			requestFrame();
 		}
-	}
 
+		@Override
+		public void failed(File file, Exception e) {
+			loading = null;
+			hideProgress();
+			showError("Couldn't load " + file.getName() + ":\n" + e.getMessage());
+		}
+	};
 
-	/**
-	 * Creates a new 3D vector
-	 * @param line String inputed from the line. Use space to separate values
-	 * @return Vector3D 
-	 */
-	private Vector3D createVector(String line){
-		String[] data = line.split(" ");
-		float a = Float.parseFloat(data[0]);
-		float b = Float.parseFloat(data[1]);
-		float c = Float.parseFloat(data[2]);
-		return new Vector3D(a,b,c);
-	}
 
 	/**
-	 * Creates a new bounding box that contains all the polygons
-	 * @return
+	 * Key presses only accumulate into the pending rotation, the scene itself
+	 * is rotated once per frame in render().
 	 */
-	private BoundingBox createBoundingBox() {
-		int maxX = Integer.MIN_VALUE;
-		int minX = Integer.MAX_VALUE;
-		int maxY = Integer.MIN_VALUE;
-		int minY = Integer.MAX_VALUE;
-
-		for (Polygon p : this.scene.getPolygons()) {
-			for (Vector3D v : p.getVertices()) {
-				if (v.x > maxX) {
-					maxX = Math.round(v.x);
-				}
-				if (v.x < minX) {
-					minX = Math.round(v.x);
-				}
-				if (v.y > maxY) {
-					maxY = Math.round(v.y);
-				}
-				if (v.y < minY) {
-					minY = Math.round(v.y);
-				}
-			}
-		}
-		return new BoundingBox(minX, minY, maxX - minX, maxY - minY);
-	}
-
-
 	@Override
 	protected void onKeyPress(KeyEvent ev) {
+		float xRot = pendingXRot, yRot = pendingYRot;
 		if (ev.getKeyCode() == KeyEvent.VK_LEFT
 				|| Character.toUpperCase(ev.getKeyChar()) == 'A')
-			Pipeline.rotateScene(this.scene, 0 , shift);
+			pendingYRot += shift;
 		else if (ev.getKeyCode() == KeyEvent.VK_RIGHT
 				|| Character.toUpperCase(ev.getKeyChar()) == 'D')
-			Pipeline.rotateScene(this.scene, 0, -shift);
+			pendingYRot -= shift;
 		else if (ev.getKeyCode() == KeyEvent.VK_UP
 				|| Character.toUpperCase(ev.getKeyChar()) == 'W')
-			Pipeline.rotateScene(this.scene, -shift, 0);
+			pendingXRot -= shift;
 		else if (ev.getKeyCode() == KeyEvent.VK_DOWN
 				|| Character.toUpperCase(ev.getKeyChar()) == 'S')
-			Pipeline.rotateScene(this.scene, shift, 0);
+			pendingXRot += shift;
+		else if (Character.toUpperCase(ev.getKeyChar()) == 'G')
+			frameRenderer.setSmoothShading(!frameRenderer.isSmoothShading());
+		else if (Character.toUpperCase(ev.getKeyChar()) == 'M') {
+			// cycle anti-aliasing: off, 4x, 8x
+			int samples = frameRenderer.getAntialiasing();
+			frameRenderer.setAntialiasing(samples == 0 ? 4 : samples == 4 ? 8 : 0);
+		}
+		else if (Character.toUpperCase(ev.getKeyChar()) == 'H')
+			frameRenderer.setShadows(!frameRenderer.hasShadows());
+		else if (Character.toUpperCase(ev.getKeyChar()) == 'P')
+			frameRenderer.setDepthPrepass(!frameRenderer.isDepthPrepass());
+		else if (Character.toUpperCase(ev.getKeyChar()) == 'B')
+			frameRenderer.setTileBinning(!frameRenderer.isTileBinning());
+		else if (Character.toUpperCase(ev.getKeyChar()) == 'Q') {
+			// cycle the depth buffer: float, 24 bit, 16 bit
+			int bits = frameRenderer.getDepthBits();
+			frameRenderer.setDepthBits(bits == 32 ? 24 : bits == 24 ? 16 : 32, false);
+		}
+		else if (Character.toUpperCase(ev.getKeyChar()) == 'Z')
+			frameRenderer.setMortonOrdering(!frameRenderer.isMortonOrdering());
+		else if (Character.toUpperCase(ev.getKeyChar()) == 'O') {
+			overdrawMode = (overdrawMode + 1) % 3;
+			frameRenderer.setOverdrawTracking(overdrawMode != 0);
+			if (overdrawMode == 0)
+				setStatus("");
+		}
+		else if (Character.toUpperCase(ev.getKeyChar()) == 'R') {
+			adaptive = !adaptive;
+			scaler.reset();
+		}
+
+		// a rotation key starts or carries on an interaction
+		if (pendingXRot != xRot || pendingYRot != yRot) {
+			interacting = true;
+			refine.restart();
+		}
+
+	}
 
+	/**
+	 * Applies the rotation accumulated since the last frame to the scene.
+	 */
+	private void applyPendingRotation() {
+		if (pendingXRot == 0f && pendingYRot == 0f)
+			return;
+
+		Pipeline.rotateScene(this.scene, pendingXRot, pendingYRot);
+		pendingXRot = 0f;
+		pendingYRot = 0f;
 	}
 
 
@@ -142,65 +180,61 @@ public class Renderer extends GUI {
 		if(this.scene == null || this.scene.getPolygons() == null)
 			return null;
 
-		initBuffer(); // set bufferer to default
-		calculateIfHidden(); // calculate which polygons are hidden or not
-		computeNormals(); // calculate all polygons normals
-		movePolygonsIntoView();	
+		applyPendingRotation(); // rotate once for all the key presses since the last frame
+		movePolygonsIntoView();
 
-		for(Polygon poly : this.scene.getPolygons()){
+		int[] ambVals = getAmbientLight();
+		Color ambientLight = new Color(ambVals[0], ambVals[1], ambVals[2]);
+		Color lightColor = new Color(255,255,255);
 
-			int[] ambVals = getAmbientLight();
-			Color ambientLight = new Color(ambVals[0], ambVals[1], ambVals[2]);
-			Color lightColor = new Color(255,255,255);
+		// the overdraw heatmaps are always of a whole frame
+		if (adaptive && interacting && overdrawMode == 0 && scaler.getScale() < 1)
+			return renderPreview(lightColor, ambientLight);
 
-			Color polyColor = Pipeline.getShading(poly, this.lightDirection, lightColor, ambientLight);
+		long start = System.nanoTime();
+		frameRenderer.render(this.scene, this.lightDirection, lightColor, ambientLight);
 
-			EdgeList polyEdgeList = Pipeline.computeEdgeList(poly);
-			Pipeline.computeZBuffer(colour, depth, polyEdgeList, polyColor);			
-		}	
-		return convertBitmapToImage(colour);
-	}
-
-	/**
-	 * Sets the polygons to be hidden or not
-	 */
-	public void calculateIfHidden(){			
-		for(Polygon p : this.scene.getPolygons())
-			p.setHidden(Pipeline.isHidden(p));
+		if (overdrawMode != 0) {
+			OverdrawBuffer overdraw = frameRenderer.getOverdraw();
+			setStatus(overdraw.summary());
+			return overdraw.toHeatmap(overdrawMode == 2);
+		}
+		BufferedImage image = frameRenderer.toImage();
+		if (adaptive)
+			scaler.record(System.nanoTime() - start, 1);
+		return image;
 	}
 
 	/**
-	 * Calculates the normal for all polygons in the scene
+	 * Draws the scene smaller, at the scaler's scale, with the same settings
+	 * as the whole frame. The scene itself is drawn, scaled down as it is
+	 * rasterized, rather than a scaled copy of it. The GUI stretches it to
+	 * fill the canvas.
 	 */
-	public void computeNormals(){
-		for(Polygon p : scene.getPolygons()){
-			Vector3D[] vectors = p.getVertices();
-			Vector3D first = vectors[0];
-			Vector3D second = vectors[1];
-			Vector3D third = vectors[2];
-
-			Vector3D secondV = second.minus(first);
-			Vector3D thirdV = third.minus(second);
-			
-			Vector3D normal = secondV.crossProduct(thirdV).unitVector();
-			p.setNormal(normal);
-		}
+	private BufferedImage renderPreview(Color lightColor, Color ambientLight) {
+		long start = System.nanoTime();
+		int width = scaler.scaled(CANVAS_WIDTH);
+		int height = scaler.scaled(CANVAS_HEIGHT);
+		if (preview == null || preview.getFramebuffer().getWidth() != width
+				|| preview.getFramebuffer().getHeight() != height)
+			preview = new FrameRenderer(width, height);
+		preview.setSmoothShading(frameRenderer.isSmoothShading());
+		preview.setAntialiasing(frameRenderer.getAntialiasing());
+		preview.setShadows(frameRenderer.hasShadows());
+		preview.setDepthPrepass(frameRenderer.isDepthPrepass());
+		preview.setTileBinning(frameRenderer.isTileBinning());
+		preview.setDepthBits(frameRenderer.getDepthBits(), false);
+		preview.setMortonOrdering(frameRenderer.isMortonOrdering());
+
+		float scale = scaler.getScale();
+		preview.setViewportScale(scale);
+		preview.render(scene, lightDirection, lightColor, ambientLight);
+		BufferedImage image = preview.toImage();
+		scaler.record(System.nanoTime() - start, scale);
+		return image;
 	}
 
 
-	/**
-	 * Initilises the buffer to the defaults
-	 */
-	private void initBuffer() {
-		for (int i = 0; i < CANVAS_HEIGHT; i++) {
-			for (int j = 0; j < CANVAS_WIDTH; j++) {
-				colour[i][j] = Color.gray;
-				depth[i][j] = Integer.MAX_VALUE;
-			}
-		}
-	}
-	
-	
 	/**
 	 * Sets up the polygons and moves them onto the screen
 	 */
@@ -211,42 +245,22 @@ public class Renderer extends GUI {
 //		float height = CANVAS_HEIGHT / this.boundingBox.getHeight();
 		
 		if (this.boundingBox == null) {
-			this.boundingBox = createBoundingBox();
-			float scaleX = 300f / this.boundingBox.getWidth();
-			float scaleY = 300f / this.boundingBox.getHeight();
+			this.boundingBox = Pipeline.computeBounds(this.scene);
+			float scaleX = CANVAS_WIDTH / 2f / this.boundingBox.getWidth();
+			float scaleY = CANVAS_HEIGHT / 2f / this.boundingBox.getHeight();
 			float scale = Math.min(scaleX, scaleY);
 
 			Pipeline.scaleScene(this.scene, scale);
 		}
 
-		this.boundingBox = createBoundingBox();
-
-		System.out.println("Bounds: " + this.boundingBox.getX() + ", "
-				+ this.boundingBox.getY() + ", " + this.boundingBox.getWidth() + ", "
-				+ this.boundingBox.getHeight());
+		this.boundingBox = Pipeline.computeBounds(this.scene);
 
 		float shiftX = this.boundingBox.getX();
 		float shiftY = this.boundingBox.getY();
-		Pipeline.translateScene(scene,-shiftX + 50, -shiftY + 50, 0);
-		this.boundingBox = createBoundingBox();
+		Pipeline.translateScene(scene,-shiftX + CANVAS_WIDTH / 12f, -shiftY + CANVAS_HEIGHT / 12f, 0);
+		this.boundingBox = Pipeline.computeBounds(this.scene);
 
 	}
-	
-	/**
-	 * Converts a 2D array of Colors to a BufferedImage. Assumes that bitmap is
-	 * indexed by column then row and has imageHeight rows and imageWidth
-	 * columns. Note that image.setRGB requires x (col) and y (row) are given in
-	 * that order.
-	 */
-	private BufferedImage convertBitmapToImage(Color[][] bitmap) {
-		BufferedImage image = new BufferedImage(CANVAS_WIDTH, CANVAS_HEIGHT, BufferedImage.TYPE_INT_RGB);
-		for (int x = 0; x < CANVAS_WIDTH; x++) {
-			for (int y = 0; y < CANVAS_HEIGHT; y++) {
-				image.setRGB(x, y, bitmap[x][y].getRGB());
-			}
-		}
-		return image;
-	}
 
 	public static void main(String[] args) {
 		new Renderer();
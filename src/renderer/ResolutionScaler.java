@@ -0,0 +1,86 @@
+package renderer;
+
+/**
+ * Picks how big to draw the frames shown while the model is being moved, so
+ * that they keep within a time budget, e.g. 16 ms for 60 frames a second.
+ * Each frame's time is recorded along with the scale it was drawn at, and
+ * the scale is the largest that the recent frames say will fit.
+ *
+ * A frame drawn at scale s has s * s of the pixels, so its time is taken as
+ * s * s of what the whole frame would take. The work done per polygon doesn't
+ * shrink with the frame, so this overestimates the whole frame, and the
+ * scale errs on the small side rather than going over the budget. Scales go
+ * down at once, but only back up a step at a time, and are whole steps of
+ * 1/STEPS so that the frame isn't a different size every time.
+ */
+public class ResolutionScaler {
+
+	public static final long DEFAULT_BUDGET_NANOS = 16000000L;
+	public static final int STEPS = 16;
+	public static final float MIN_SCALE = 4f / STEPS;
+
+	// how much of the budget to aim for, to leave room for the odd slow
+	// frame
+	private static final double HEADROOM = 0.9;
+
+	private long budget;
+	// what a whole frame would take, averaged over the recent frames, or 0
+	// before the first
+	private double fullNanos;
+	private int steps = STEPS;
+
+	public ResolutionScaler(long budgetNanos) {
+		setBudgetNanos(budgetNanos);
+	}
+
+	public long getBudgetNanos() {
+		return budget;
+	}
+
+	public void setBudgetNanos(long budgetNanos) {
+		if (budgetNanos <= 0)
+			throw new IllegalArgumentException("ResolutionScaler: bad budget " + budgetNanos);
+		this.budget = budgetNanos;
+	}
+
+	/**
+	 * Records how long a frame took, and the scale it was drawn at, 1 for a
+	 * whole frame.
+	 */
+	public void record(long nanos, float scale) {
+		double full = nanos / ((double) scale * scale);
+		fullNanos = fullNanos == 0 ? full : (fullNanos + full) / 2;
+
+		// the scale that would just fit, in whole steps
+		int fits = (int) Math.floor(Math.sqrt(budget * HEADROOM / fullNanos) * STEPS);
+		int min = Math.round(MIN_SCALE * STEPS);
+		if (fits < steps)
+			steps = Math.max(min, fits);
+		else if (fits > steps + 1)
+			steps = Math.min(STEPS, steps + 1);
+	}
+
+	/**
+	 * Returns the scale to draw the next frame at while the model is moving,
+	 * from MIN_SCALE to 1.
+	 */
+	public float getScale() {
+		return steps / (float) STEPS;
+	}
+
+	/**
+	 * Returns a width or height of the whole frame at the current scale.
+	 */
+	public int scaled(int size) {
+		return Math.max(1, size * steps / STEPS);
+	}
+
+	/**
+	 * Forgets the frames recorded so far, e.g. when a different model is
+	 * loaded.
+	 */
+	public void reset() {
+		fullNanos = 0;
+		steps = STEPS;
+	}
+}
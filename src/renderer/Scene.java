@@ -1,6 +1,7 @@
 package renderer;
 
 import java.awt.Color;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -17,10 +18,37 @@ public class Scene {
 
 	private Vector3D lightPos;
 	private List<Polygon> polygons;
+	private Mesh mesh;
+	private LightSet lights;
+	private UvMap uvMap;
+	private Color tint;
+
+	// everything that has been done to the scene since it was loaded
+	private Transform view = Transform.identity();
+	// the header light, as it was loaded
+	private Vector3D modelLight;
+	// the same for every copy made by transformed, so renderers can tell
+	// when they are looking at the same model from a different angle
+	private long geometryId = nextGeometryId();
+	private static long lastGeometryId;
 
 	public Scene(List<Polygon> polygons, Vector3D lightPos) {
+		this(polygons, lightPos, null);
+	}
+
+	/**
+	 * A scene whose polygons share vertices, as welded by Mesh.weld. The
+	 * mesh may be null if they don't.
+	 */
+	public Scene(List<Polygon> polygons, Vector3D lightPos, Mesh mesh) {
 		this.lightPos = lightPos;
+		this.modelLight = lightPos;
 		this.polygons = polygons;
+		this.mesh = mesh;
+	}
+
+	private static synchronized long nextGeometryId() {
+		return ++lastGeometryId;
 	}
 
 	public Vector3D getLight() {
@@ -31,11 +59,195 @@ public class Scene {
 		return this.polygons;
 	}
 
+	/**
+	 * Returns the shared vertices of the polygons, or null if the scene
+	 * hasn't been welded.
+	 */
+	public Mesh getMesh() {
+		return this.mesh;
+	}
+
+	/**
+	 * Returns the scene's extra lights, or null if it only has the one.
+	 */
+	public LightSet getLights() {
+		return this.lights;
+	}
+
+	public void setLights(LightSet lights) {
+		this.lights = lights;
+	}
+
+	/**
+	 * Returns the scene's texture and texture coordinates, or null if it
+	 * isn't textured.
+	 */
+	public UvMap getUvMap() {
+		return this.uvMap;
+	}
+
+	public void setUvMap(UvMap uvMap) {
+		if (uvMap != null && uvMap.getPolygonCount() != polygons.size())
+			throw new IllegalArgumentException("Scene: texture coordinates for " + uvMap.getPolygonCount()
+					+ " polygons, but there are " + polygons.size());
+		this.uvMap = uvMap;
+	}
+
+	/**
+	 * Returns the colour each polygon's reflectance is multiplied by when it
+	 * is shaded, or null if it isn't tinted.
+	 */
+	public Color getTint() {
+		return this.tint;
+	}
+
+	public void setTint(Color tint) {
+		this.tint = tint;
+	}
+
+	/**
+	 * Returns all the transformations applied to the scene since it was
+	 * created, as one transform from the model's own coordinates.
+	 */
+	public Transform getView() {
+		return this.view;
+	}
+
+	/**
+	 * Records that the polygons were put where they are by view, from a
+	 * model whose header light is the scene's light, e.g. when they were
+	 * read from a MeshFile already transformed. The scene is then shadowed
+	 * as a copy made by transformed would be.
+	 */
+	void setView(Transform view) {
+		this.view = view;
+	}
+
+	/**
+	 * Returns the header light as it was loaded, i.e. in the model's own
+	 * coordinates. Use getView to find where it points now.
+	 */
+	public Vector3D getModelLight() {
+		return this.modelLight;
+	}
+
+	/**
+	 * Identifies the shape of the scene. Copies made by transformed share it,
+	 * as they only differ in where they are being looked at from.
+	 */
+	public long getGeometryId() {
+		return this.geometryId;
+	}
+
+	/**
+	 * Should be called after changing the polygons other than through
+	 * applyTransformation, so anything worked out from them is redone.
+	 */
+	public void geometryChanged() {
+		this.geometryId = nextGeometryId();
+	}
+
+	/**
+	 * Returns a new Scene holding transformed copies of this scene's polygons
+	 * and light, leaving this scene untouched. This is what lets several
+	 * frames be rendered from the same scene at once.
+	 */
+	public Scene transformed(Transform t) {
+		return transformed(t, null);
+	}
+
+	/**
+	 * The same as transformed(t), but polygon i of the copy has reflectance
+	 * reflectances[i] rather than the reflectance of polygon i of this
+	 * scene, unless reflectances is null.
+	 */
+	public Scene transformed(Transform t, Color[] reflectances) {
+		if (mesh != null) {
+			Mesh copy = mesh.transformed(t);
+			Vector3D[] verts = copy.getVertices();
+			int[] indices = mesh.getIndices();
+			List<Polygon> copies = new ArrayList<Polygon>(polygons.size());
+			int i = 0;
+			for (Polygon poly : polygons) {
+				copies.add(new Polygon(verts[indices[i]], verts[indices[i + 1]], verts[indices[i + 2]],
+						reflectances == null ? poly.getReflectance() : reflectances[i / 3]));
+				i += 3;
+			}
+			return copyOf(new Scene(copies, t.multiply(lightPos), copy), t);
+		}
+
+		List<Polygon> copies = new ArrayList<Polygon>(polygons.size());
+		for (Polygon poly : polygons) {
+			Vector3D[] vects = poly.getVertices();
+			copies.add(new Polygon(t.multiply(vects[0]), t.multiply(vects[1]),
+					t.multiply(vects[2]), reflectances == null ? poly.getReflectance() : reflectances[copies.size()]));
+		}
+		return copyOf(new Scene(copies, t.multiply(lightPos)), t);
+	}
+
+	/**
+	 * The same as transformed(t), but only copies the polygons numbered
+	 * which[from] to which[to - 1], in that order, e.g. those that reach one
+	 * strip of a StripRenderer. The copy is still part of the same model: it
+	 * has the same geometry id, so a shadow map drawn from the whole scene is
+	 * used for it as it is, and its mesh keeps the whole mesh's normals.
+	 */
+	public Scene transformedPart(Transform t, int[] which, int from, int to) {
+		List<Polygon> copies = new ArrayList<Polygon>(to - from);
+		Scene part;
+		if (mesh != null) {
+			Mesh copy = mesh.part(which, from, to, t);
+			Vector3D[] verts = copy.getVertices();
+			int[] indices = copy.getIndices();
+			for (int k = from; k < to; k++) {
+				int i = (k - from) * 3;
+				copies.add(new Polygon(verts[indices[i]], verts[indices[i + 1]], verts[indices[i + 2]],
+						polygons.get(which[k]).getReflectance()));
+			}
+			part = copyOf(new Scene(copies, t.multiply(lightPos), copy), t);
+		} else {
+			for (int k = from; k < to; k++) {
+				Polygon poly = polygons.get(which[k]);
+				Vector3D[] vects = poly.getVertices();
+				copies.add(new Polygon(t.multiply(vects[0]), t.multiply(vects[1]), t.multiply(vects[2]),
+						poly.getReflectance()));
+			}
+			part = copyOf(new Scene(copies, t.multiply(lightPos)), t);
+		}
+		if (uvMap != null)
+			part.uvMap = uvMap.part(which, from, to);
+		return part;
+	}
+
+	/**
+	 * Fills in the rest of a copy of this scene made by transformed.
+	 */
+	private Scene copyOf(Scene scene, Transform t) {
+		if (lights != null)
+			scene.lights = lights.transformed(t);
+		scene.uvMap = uvMap;
+		scene.tint = tint;
+		scene.view = t.compose(view);
+		scene.modelLight = modelLight;
+		scene.geometryId = geometryId;
+		return scene;
+	}
+
 	public void applyTransformation(Transform t) {	
 		if(polygons == null)
 			return;
 		
 		lightPos = t.multiply(lightPos);
+		view = t.compose(view);
+		if (lights != null)
+			lights = lights.transformed(t);
+
+		// each shared vertex only needs transforming once
+		if (mesh != null) {
+			mesh = mesh.transformed(t);
+			mesh.bind(polygons, mesh.getVertices());
+			return;
+		}
 
 		for(Polygon poly : polygons){
 
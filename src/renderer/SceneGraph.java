@@ -0,0 +1,183 @@
+package renderer;
+
+import java.awt.Color;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+/**
+ * A scene made of Instances of shared meshes, arranged in a tree of
+ * SceneNodes. Rather than holding a copy of every polygon of every instance,
+ * each instance is placed and drawn in turn, so only one copy of a mesh is
+ * ever being drawn at a time. Instances whose bounding box is entirely off the
+ * screen are skipped without looking at their polygons.
+ */
+public class SceneGraph {
+
+	private final SceneNode root = new SceneNode();
+	private Vector3D light = new Vector3D(0, 0, -1);
+
+	private int drawn;
+	private int culled;
+
+	public SceneNode getRoot() {
+		return root;
+	}
+
+	/**
+	 * Adds an instance at the top of the tree.
+	 */
+	public Instance add(SharedMesh mesh, Transform transform, Color tint) {
+		Instance instance = new Instance(mesh, transform, tint);
+		root.addChild(instance);
+		return instance;
+	}
+
+	public Vector3D getLight() {
+		return light;
+	}
+
+	/**
+	 * Sets the direction of the light, which is fixed to the viewer like the
+	 * header light of a model file.
+	 */
+	public void setLight(Vector3D light) {
+		this.light = light;
+	}
+
+	/**
+	 * Renders every instance that can be seen into one frame.
+	 * 
+	 * @param view
+	 *            The transform from world coordinates to the screen.
+	 */
+	public void render(FrameRenderer renderer, Transform view, Color lightColor, Color ambientLight) {
+		int width = renderer.getFramebuffer().getWidth();
+		int height = renderer.getFramebuffer().getHeight();
+		drawn = 0;
+		culled = 0;
+
+		if (renderer.getDepthBits() != 32)
+			setDepthRange(renderer.getFramebuffer(), view);
+		renderer.beginFrame();
+		List<SceneNode> stack = new ArrayList<SceneNode>();
+		stack.add(root);
+		while (!stack.isEmpty()) {
+			SceneNode node = stack.remove(stack.size() - 1);
+			stack.addAll(node.getChildren());
+			if (!(node instanceof Instance))
+				continue;
+
+			Instance instance = (Instance) node;
+			if (!onScreen(instance, view, width, height)) {
+				culled++;
+				continue;
+			}
+
+			Scene placed = instance.getMesh().place(view.compose(instance.getWorldTransform()), instance.getTint());
+			renderer.draw(placed, light, lightColor, ambientLight);
+			drawn++;
+		}
+		renderer.endFrame();
+	}
+
+	/**
+	 * Sets the depth range of the framebuffer to cover the bounding boxes of
+	 * all the instances, for quantized depths.
+	 */
+	private void setDepthRange(Framebuffer framebuffer, Transform view) {
+		float near = Float.MAX_VALUE, far = -Float.MAX_VALUE;
+		List<SceneNode> stack = new ArrayList<SceneNode>();
+		stack.add(root);
+		while (!stack.isEmpty()) {
+			SceneNode node = stack.remove(stack.size() - 1);
+			stack.addAll(node.getChildren());
+			if (!(node instanceof Instance))
+				continue;
+			for (Vector3D corner : ((Instance) node).getWorldCorners()) {
+				float z = view.multiply(corner).z;
+				near = Math.min(near, z);
+				far = Math.max(far, z);
+			}
+		}
+		framebuffer.setDepthRange(near, far);
+	}
+
+	/**
+	 * Whether any of the instance's bounding box is on the screen.
+	 */
+	private static boolean onScreen(Instance instance, Transform view, int width, int height) {
+		float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+		for (Vector3D corner : instance.getWorldCorners()) {
+			Vector3D p = view.multiply(corner);
+			minX = Math.min(minX, p.x);
+			maxX = Math.max(maxX, p.x);
+			minY = Math.min(minY, p.y);
+			maxY = Math.max(maxY, p.y);
+		}
+		return maxX >= 0 && maxY >= 0 && minX < width && minY < height;
+	}
+
+	/** The number of instances drawn by the last render. */
+	public int getDrawnCount() {
+		return drawn;
+	}
+
+	/** The number of instances skipped by the last render as off the screen. */
+	public int getCulledCount() {
+		return culled;
+	}
+
+	/**
+	 * Renders a yard of copies of a model, laid out in a square grid that
+	 * carries on past the edge of the screen when there are many of them.
+	 * 
+	 * usage: SceneGraph model.txt instances output.png
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err.println("usage: SceneGraph model.txt instances output.png");
+			System.exit(1);
+		}
+		SharedMesh mesh = SharedMesh.load(new File(args[0]));
+		int count = Integer.parseInt(args[1]);
+
+		// each copy gets a cell of the grid
+		final float cell = 60;
+		Vector3D[] corners = mesh.getCorners();
+		float size = Math.max(corners[7].x - corners[0].x, Math.max(corners[7].y - corners[0].y,
+				corners[7].z - corners[0].z));
+		float scale = 0.8f * cell / size;
+		int columns = (int) Math.ceil(Math.sqrt(count));
+
+		SceneGraph graph = new SceneGraph();
+		graph.setLight(mesh.getModel().getLight());
+		Random random = new Random(1);
+		for (int i = 0; i < count; i++) {
+			Transform t = Transform.newTranslation((i % columns) * cell, (i / columns) * cell, 0)
+					.compose(Transform.newYRotation(random.nextFloat() * 6.28f))
+					.compose(Transform.newScale(scale, scale, scale))
+					.compose(Transform.newTranslation(-corners[0].x, -corners[0].y, -corners[0].z));
+			Color tint = new Color(128 + random.nextInt(128), 128 + random.nextInt(128), 128 + random.nextInt(128));
+			graph.add(mesh, t, tint);
+		}
+
+		Transform view = Transform.newTranslation(20, 20, 0).compose(Transform.newXRotation(0.3f));
+		FrameRenderer renderer = new FrameRenderer(GUI.CANVAS_WIDTH, GUI.CANVAS_HEIGHT);
+
+		long start = System.nanoTime();
+		graph.render(renderer, view, Color.white, Color.gray);
+		long time = System.nanoTime() - start;
+
+		Runtime runtime = Runtime.getRuntime();
+		System.gc();
+		System.out.printf("%d instances, %d drawn, %d culled, in %.1f ms, %.1f MB in use%n", count,
+				graph.getDrawnCount(), graph.getCulledCount(), time / 1e6,
+				(runtime.totalMemory() - runtime.freeMemory()) / 1e6);
+		ImageIO.write(renderer.toImage(), "png", new File(args[2]));
+	}
+}
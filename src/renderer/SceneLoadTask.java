@@ -0,0 +1,85 @@
+package renderer;
+
+import java.io.File;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.SwingWorker;
+
+/**
+ * Loads a model on a background thread, so the window keeps going while a
+ * big model is read. How far it has got, and how it ended, are handed to a
+ * Listener on the event dispatch thread, where the loaded scene can be
+ * swapped in between two frames. Cancelling the task (cancel(true)) stops
+ * the load within a few thousand lines, and nothing more is heard from it.
+ *
+ * Models are loaded through SceneSnapshot, so only the first load of a model
+ * reads the text.
+ */
+public class SceneLoadTask extends SwingWorker<Scene, long[]> {
+
+	/**
+	 * Hears about a load, always on the event dispatch thread.
+	 */
+	public interface Listener {
+		/** How much of the file has been read, as for SceneLoader.Progress. */
+		void progress(File file, long bytes, long total, int polygons);
+
+		void loaded(File file, Scene scene);
+
+		void failed(File file, Exception e);
+	}
+
+	private final File file;
+	private final Listener listener;
+
+	public SceneLoadTask(File file, Listener listener) {
+		this.file = file;
+		this.listener = listener;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	@Override
+	protected Scene doInBackground() throws Exception {
+		return SceneSnapshot.load(file, new SceneLoader.Progress() {
+			@Override
+			public void progress(long bytes, long total, int polygons) {
+				publish(new long[] { bytes, total, polygons });
+			}
+		});
+	}
+
+	@Override
+	protected void process(List<long[]> chunks) {
+		if (isCancelled())
+			return;
+		// only the latest matters
+		long[] last = chunks.get(chunks.size() - 1);
+		listener.progress(file, last[0], last[1], (int) last[2]);
+	}
+
+	@Override
+	protected void done() {
+		if (isCancelled())
+			return;
+		Scene scene;
+		try {
+			scene = get();
+		} catch (CancellationException e) {
+			return;
+		} catch (InterruptedException e) {
+			return;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof InterruptedIOException)
+				return;
+			listener.failed(file, e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+			return;
+		}
+		listener.loaded(file, scene);
+	}
+}
@@ -0,0 +1,170 @@
+package renderer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a scene from a model file. The first line of the file is the light
+ * direction, and every line after that is one polygon: the nine coordinates
+ * of its three vertices followed by the red, green and blue of its
+ * reflectance.
+ * 
+ * If there is a lights file next to the model, e.g. car.lights for car.txt,
+ * its lights are added to the scene. See LightSet.load. Likewise a texture
+ * coordinates file, e.g. car.uv, textures it. See UvMap.load.
+ */
+public class SceneLoader {
+
+	// how many lines are read between progress reports and checks for
+	// being cancelled
+	private static final int REPORT_LINES = 4096;
+
+	/**
+	 * Hears how far a load has got.
+	 */
+	public interface Progress {
+		/**
+		 * @param bytes
+		 *            How much of the file has been read.
+		 * @param total
+		 *            How big the file is.
+		 * @param polygons
+		 *            How many polygons have been read.
+		 */
+		void progress(long bytes, long total, int polygons);
+	}
+
+	public static Scene load(File file) throws IOException {
+		return load(file, null);
+	}
+
+	/**
+	 * Loads a scene, reporting how far it has got every few thousand lines
+	 * to progress, if it isn't null. The load can be cancelled by
+	 * interrupting the thread doing it, which makes it throw an
+	 * InterruptedIOException. A line that isn't a polygon makes it throw an
+	 * IOException saying which line it was.
+	 */
+	public static Scene load(File file, Progress progress) throws IOException {
+		List<Polygon> polygons = new ArrayList<Polygon>();
+
+		final long total = file.length();
+		final long[] read = new long[1];
+		InputStream counted = new FilterInputStream(new FileInputStream(file)) {
+			@Override
+			public int read() throws IOException {
+				int b = super.read();
+				if (b >= 0)
+					read[0]++;
+				return b;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				int n = super.read(b, off, len);
+				if (n > 0)
+					read[0] += n;
+				return n;
+			}
+		};
+
+		BufferedReader data = new BufferedReader(new InputStreamReader(counted));
+		try {
+			String headerLine = data.readLine();
+			if (headerLine == null)
+				throw new IOException(file.getName() + ":1: no light direction");
+			Vector3D lightDirection;
+			try {
+				lightDirection = createVector(headerLine);
+			} catch (RuntimeException e) {
+				throw new IOException(file.getName() + ":1: not a light direction: " + headerLine, e);
+			}
+
+			String line;
+			int lineNumber = 1;
+			while ((line = data.readLine()) != null) {
+				lineNumber++;
+				if (lineNumber % REPORT_LINES == 0) {
+					if (Thread.currentThread().isInterrupted())
+						throw new InterruptedIOException("loading " + file.getName() + " was cancelled");
+					if (progress != null)
+						progress.progress(read[0], total, polygons.size());
+				}
+				if (line.isEmpty())
+					continue;
+
+				String[] values = line.split(" ");
+				try {
+					// add points
+					float[] points = new float[9];
+					for (int i = 0; i < 9; i++)
+						points[i] = Float.parseFloat(values[i]);
+
+					// add color
+					int[] colour = new int[3];
+					colour[0] = Integer.parseInt(values[9]);
+					colour[1] = Integer.parseInt(values[10]);
+					colour[2] = Integer.parseInt(values[11]);
+
+					polygons.add(new Polygon(points, colour));
+				} catch (RuntimeException e) {
+					// a number that isn't one, too few of them, or a colour
+					// out of range
+					throw new IOException(file.getName() + ":" + lineNumber + ": not a polygon: " + line, e);
+				}
+			}
+			if (progress != null)
+				progress.progress(total, total, polygons.size());
+
+			// weld the vertices the polygons share so they are only
+			// transformed once
+			Mesh mesh = Mesh.weld(polygons, Mesh.WELD_EPSILON);
+			if (Thread.currentThread().isInterrupted())
+				throw new InterruptedIOException("loading " + file.getName() + " was cancelled");
+			Scene scene = new Scene(polygons, lightDirection, mesh);
+			loadSidecars(file, scene);
+			return scene;
+		} finally {
+			data.close();
+		}
+	}
+
+	/**
+	 * Adds whatever is in the files next to a model to the scene loaded from
+	 * it, i.e. its lights and texture.
+	 */
+	static void loadSidecars(File model, Scene scene) throws IOException {
+		File lights = LightSet.sidecar(model);
+		if (lights.isFile())
+			scene.setLights(LightSet.load(lights));
+		File uvs = UvMap.sidecar(model);
+		if (uvs.isFile()) {
+			try {
+				scene.setUvMap(UvMap.load(uvs));
+			} catch (IllegalArgumentException e) {
+				throw new IOException(uvs.getName() + ": " + e.getMessage(), e);
+			}
+		}
+	}
+
+	/**
+	 * Creates a new 3D vector
+	 * @param line String inputed from the line. Use space to separate values
+	 * @return Vector3D 
+	 */
+	private static Vector3D createVector(String line) {
+		String[] data = line.split(" ");
+		float a = Float.parseFloat(data[0]);
+		float b = Float.parseFloat(data[1]);
+		float c = Float.parseFloat(data[2]);
+		return new Vector3D(a, b, c);
+	}
+}
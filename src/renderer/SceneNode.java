@@ -0,0 +1,92 @@
+package renderer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A node of a SceneGraph. Each node has a transform relative to its parent,
+ * so moving a node moves everything under it. The transform from the node to
+ * the world is the parent's world transform followed by the node's own, and
+ * is only worked out again after something above it has moved.
+ */
+public class SceneNode {
+
+	private Transform transform = Transform.identity();
+	private SceneNode parent;
+	private final List<SceneNode> children = new ArrayList<SceneNode>();
+
+	private Transform world;
+	private boolean dirty = true;
+
+	/**
+	 * Returns the node's transform, relative to its parent.
+	 */
+	public Transform getTransform() {
+		return transform;
+	}
+
+	public void setTransform(Transform transform) {
+		this.transform = transform;
+		invalidate();
+	}
+
+	public SceneNode getParent() {
+		return parent;
+	}
+
+	public List<SceneNode> getChildren() {
+		return Collections.unmodifiableList(children);
+	}
+
+	/**
+	 * Adds a child, which is taken away from its old parent if it has one.
+	 */
+	public void addChild(SceneNode child) {
+		if (child.parent != null)
+			child.parent.children.remove(child);
+		child.parent = this;
+		children.add(child);
+		child.invalidate();
+	}
+
+	public void removeChild(SceneNode child) {
+		if (children.remove(child)) {
+			child.parent = null;
+			child.invalidate();
+		}
+	}
+
+	/**
+	 * Returns the transform from this node's coordinates to the world's.
+	 */
+	public Transform getWorldTransform() {
+		if (dirty) {
+			world = parent == null ? transform : parent.getWorldTransform().compose(transform);
+			dirty = false;
+			updated();
+		}
+		return world;
+	}
+
+	/**
+	 * Marks the world transform of this node and everything under it as out
+	 * of date.
+	 */
+	protected void invalidate() {
+		// working out a node's world transform works out its parent's
+		// first, so if this is out of date everything under it is too
+		if (dirty)
+			return;
+		dirty = true;
+		for (SceneNode child : children)
+			child.invalidate();
+	}
+
+	/**
+	 * Called after the world transform has been worked out again, for nodes
+	 * that keep things that depend on it.
+	 */
+	protected void updated() {
+	}
+}
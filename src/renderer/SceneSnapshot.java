@@ -0,0 +1,239 @@
+package renderer;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A model as it is once it has been loaded, welded and its normals worked
+ * out, saved next to the model file (car.snap for car.txt) so that the next
+ * time it is opened none of that has to be done again. A snapshot is memory
+ * mapped and turned straight back into a Scene.
+ *
+ * The file is an 80 byte header: "R3DS", the version, the length and
+ * modification time of the model file it was made from, the number of
+ * vertices and polygons, the light direction, the bounding box, and a CRC32
+ * of everything after the header. Then come the vertices and their normals
+ * as floats, three vertex indices for each polygon, and each polygon's
+ * reflectance as a packed RGB int. All numbers are little-endian.
+ *
+ * A snapshot whose model has changed since, or from a different version, or
+ * whose checksum doesn't match, is ignored and made again. The checksum
+ * doesn't cover the header, so the bounding box is checked against the
+ * vertices as they are read back.
+ */
+public class SceneSnapshot {
+
+	public static final int MAGIC = 0x53443352; // "R3DS", little-endian
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 80;
+
+	/**
+	 * Returns the snapshot file that goes with a model file, i.e. car.snap
+	 * for car.txt.
+	 */
+	public static File sidecar(File model) {
+		String name = model.getName();
+		int dot = name.lastIndexOf('.');
+		return new File(model.getParentFile(), (dot < 0 ? name : name.substring(0, dot)) + ".snap");
+	}
+
+	/**
+	 * Loads a model from its snapshot if it has an up to date one, or
+	 * otherwise from the model file itself (see SceneLoader.load), and then
+	 * saves a snapshot for next time. A snapshot that can't be saved, e.g.
+	 * as the directory is read only, is just left out.
+	 */
+	public static Scene load(File model, SceneLoader.Progress progress) throws IOException {
+		File snapshot = sidecar(model);
+		if (snapshot.isFile()) {
+			try {
+				Scene scene = read(snapshot, model);
+				if (scene != null) {
+					if (progress != null)
+						progress.progress(model.length(), model.length(), scene.getPolygons().size());
+					return scene;
+				}
+			} catch (IOException e) {
+				// no good, so make it again
+			}
+		}
+
+		Scene scene = SceneLoader.load(model, progress);
+		try {
+			write(scene, model, snapshot);
+		} catch (IOException e) {
+			snapshot.delete();
+		}
+		return scene;
+	}
+
+	/**
+	 * Saves a snapshot of a scene loaded from the given model file. The
+	 * scene must be welded, and not yet moved. The snapshot is written to
+	 * another file first and then moved into place, so a snapshot that is
+	 * there is always whole.
+	 */
+	public static void write(Scene scene, File model, File snapshot) throws IOException {
+		Mesh mesh = scene.getMesh();
+		if (mesh == null)
+			throw new IllegalArgumentException("SceneSnapshot: the scene isn't welded");
+		Vector3D[] vertices = mesh.getVertices();
+		Vector3D[] normals = mesh.getNormals();
+		int[] indices = mesh.getIndices();
+		List<Polygon> polygons = scene.getPolygons();
+
+		int size = vertices.length * 24 + indices.length * 4 + polygons.size() * 4;
+		ByteBuffer payload = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+		float[] bounds = { Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE,
+				-Float.MAX_VALUE, -Float.MAX_VALUE };
+		for (Vector3D v : vertices) {
+			payload.putFloat(v.x).putFloat(v.y).putFloat(v.z);
+			bounds[0] = Math.min(bounds[0], v.x);
+			bounds[1] = Math.min(bounds[1], v.y);
+			bounds[2] = Math.min(bounds[2], v.z);
+			bounds[3] = Math.max(bounds[3], v.x);
+			bounds[4] = Math.max(bounds[4], v.y);
+			bounds[5] = Math.max(bounds[5], v.z);
+		}
+		for (Vector3D n : normals)
+			payload.putFloat(n.x).putFloat(n.y).putFloat(n.z);
+		for (int index : indices)
+			payload.putInt(index);
+		for (Polygon poly : polygons)
+			payload.putInt(poly.getReflectance().getRGB() & 0xFFFFFF);
+		payload.flip();
+		CRC32 crc = new CRC32();
+		crc.update(payload.duplicate());
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		header.putLong(model.length());
+		header.putLong(model.lastModified());
+		header.putInt(vertices.length);
+		header.putInt(polygons.size());
+		Vector3D light = scene.getModelLight();
+		header.putFloat(light.x).putFloat(light.y).putFloat(light.z);
+		for (float f : bounds)
+			header.putFloat(polygons.isEmpty() ? 0 : f);
+		header.putInt((int) crc.getValue());
+		header.position(HEADER_SIZE);
+		header.flip();
+
+		// written under a name of its own in the same directory, so that two
+		// writers don't share a temporary file and the move can be atomic
+		Path temp = Files.createTempFile(snapshot.getAbsoluteFile().getParentFile().toPath(), snapshot.getName(),
+				".tmp");
+		boolean moved = false;
+		try {
+			FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE);
+			try {
+				while (header.hasRemaining())
+					channel.write(header);
+				while (payload.hasRemaining())
+					channel.write(payload);
+			} finally {
+				channel.close();
+			}
+			Files.move(temp, snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			moved = true;
+		} finally {
+			if (!moved)
+				Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Reads a snapshot back as a scene, along with any lights or texture
+	 * coordinates files next to the model. Returns null if the snapshot was made from a different
+	 * version of the model file, or by a different version of this class.
+	 *
+	 * @throws IOException
+	 *             If the snapshot can't be read or is damaged.
+	 */
+	public static Scene read(File snapshot, File model) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(snapshot, "r");
+		try {
+			FileChannel channel = in.getChannel();
+			if (channel.size() < HEADER_SIZE)
+				throw new IOException("SceneSnapshot: " + snapshot.getName() + " is too short");
+			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			map.order(ByteOrder.LITTLE_ENDIAN);
+
+			if (map.getInt(0) != MAGIC)
+				throw new IOException("SceneSnapshot: " + snapshot.getName() + " is not a snapshot");
+			if (map.getInt(4) != VERSION || map.getLong(8) != model.length() || map.getLong(16) != model.lastModified())
+				return null;
+			int vertexCount = map.getInt(24);
+			int polygonCount = map.getInt(28);
+			long size = (long) vertexCount * 24 + (long) polygonCount * 16;
+			if (vertexCount < 0 || polygonCount < 0 || channel.size() != HEADER_SIZE + size)
+				throw new IOException("SceneSnapshot: " + snapshot.getName() + " is the wrong size");
+			Vector3D light = new Vector3D(map.getFloat(32), map.getFloat(36), map.getFloat(40));
+
+			map.position(HEADER_SIZE);
+			ByteBuffer payload = map.slice().order(ByteOrder.LITTLE_ENDIAN);
+			CRC32 crc = new CRC32();
+			crc.update(payload.duplicate());
+			if ((int) crc.getValue() != map.getInt(68))
+				throw new IOException("SceneSnapshot: " + snapshot.getName() + " is damaged");
+
+			FloatBuffer floats = payload.asFloatBuffer();
+			Vector3D[] vertices = new Vector3D[vertexCount];
+			float[] bounds = { Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE,
+					-Float.MAX_VALUE, -Float.MAX_VALUE };
+			for (int v = 0; v < vertexCount; v++) {
+				Vector3D vertex = new Vector3D(floats.get(v * 3), floats.get(v * 3 + 1), floats.get(v * 3 + 2));
+				vertices[v] = vertex;
+				bounds[0] = Math.min(bounds[0], vertex.x);
+				bounds[1] = Math.min(bounds[1], vertex.y);
+				bounds[2] = Math.min(bounds[2], vertex.z);
+				bounds[3] = Math.max(bounds[3], vertex.x);
+				bounds[4] = Math.max(bounds[4], vertex.y);
+				bounds[5] = Math.max(bounds[5], vertex.z);
+			}
+			for (int i = 0; i < 6; i++) {
+				if (Float.compare(polygonCount == 0 ? 0 : bounds[i], map.getFloat(44 + i * 4)) != 0)
+					throw new IOException("SceneSnapshot: " + snapshot.getName() + " has the wrong bounds");
+			}
+			Vector3D[] normals = new Vector3D[vertexCount];
+			int at = vertexCount * 3;
+			for (int v = 0; v < vertexCount; v++)
+				normals[v] = new Vector3D(floats.get(at + v * 3), floats.get(at + v * 3 + 1),
+						floats.get(at + v * 3 + 2));
+
+			payload.position(vertexCount * 24);
+			IntBuffer ints = payload.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+			int[] indices = new int[polygonCount * 3];
+			ints.get(indices);
+			List<Polygon> polygons = new ArrayList<Polygon>(polygonCount);
+			for (int i = 0; i < polygonCount; i++) {
+				int a = indices[i * 3], b = indices[i * 3 + 1], c = indices[i * 3 + 2];
+				if (a < 0 || b < 0 || c < 0 || a >= vertexCount || b >= vertexCount || c >= vertexCount)
+					throw new IOException("SceneSnapshot: " + snapshot.getName() + " has a bad index");
+				polygons.add(new Polygon(vertices[a], vertices[b], vertices[c], new Color(ints.get())));
+			}
+
+			Scene scene = new Scene(polygons, light, new Mesh(vertices, indices, normals));
+			SceneLoader.loadSidecars(model, scene);
+			return scene;
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,528 @@
+package renderer;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Renders a sequence of frames of one scene, e.g. a turntable, from a list of
+ * camera poses. Frames are rendered concurrently: the scene is shared between
+ * the workers and never modified, each frame renders a transformed copy of it,
+ * and each worker thread has its own FrameRenderer and so its own
+ * framebuffer. The images are written out as a numbered sequence, in order.
+ */
+public class SequenceRenderer {
+
+	private final Scene scene;
+	private final int width;
+	private final int height;
+	private final int threads;
+	private final float scale;
+
+	// shared by every SequenceRenderer, until close
+	private final RenderMetrics metrics = RenderMetrics.register("sequence");
+	private boolean closed;
+
+	private boolean overdraw;
+	private int antialiasing;
+	private boolean smoothShading;
+	private boolean mortonOrdering;
+	private boolean shadows;
+	private boolean depthPrepass;
+	private boolean tileBinning;
+	private int depthBits = 32;
+	private boolean reversedDepth;
+	private boolean lazyClear;
+	private volatile boolean direct;
+	private boolean raw;
+	private ImageEncoder encoder;
+	// pixel arrays handed back by the writer, for the workers to reuse
+	private final ConcurrentLinkedQueue<int[]> sparePixels = new ConcurrentLinkedQueue<int[]>();
+	private Color lightColor = new Color(255, 255, 255);
+	private Color ambientLight = new Color(128, 128, 128);
+
+	private final ThreadLocal<FrameRenderer> renderers = new ThreadLocal<FrameRenderer>() {
+		@Override
+		protected FrameRenderer initialValue() {
+			FrameRenderer renderer = new FrameRenderer(new Framebuffer(width, height, direct));
+			renderer.setMetrics(metrics);
+			return renderer;
+		}
+	};
+
+	/**
+	 * @param scene
+	 *            The scene to render. It is only ever read.
+	 * @param threads
+	 *            How many frames to render at once.
+	 */
+	public SequenceRenderer(Scene scene, int width, int height, int threads) {
+		if (threads <= 0)
+			throw new IllegalArgumentException("SequenceRenderer: threads must be positive: " + threads);
+		if (width <= 0 || height <= 0 || width > StripRenderer.MAX_SIZE || height > StripRenderer.MAX_SIZE)
+			throw new IllegalArgumentException("SequenceRenderer: bad size " + width + "x" + height);
+
+		this.scene = scene;
+		this.width = width;
+		this.height = height;
+		this.threads = threads;
+		this.scale = fitScale(scene, width, height);
+
+		// work out the vertex normals now, so every frame's copy of the mesh
+		// gets them rotated rather than computing them again
+		if (scene.getMesh() != null)
+			scene.getMesh().getNormals();
+	}
+
+	public void setLightColor(Color lightColor) {
+		this.lightColor = lightColor;
+	}
+
+	public void setAmbientLight(Color ambientLight) {
+		this.ambientLight = ambientLight;
+	}
+
+	/**
+	 * Whether a heatmap of the depth tests per pixel is written alongside
+	 * each frame, as prefix_0000_overdraw.png.
+	 */
+	public void setOverdraw(boolean overdraw) {
+		this.overdraw = overdraw;
+	}
+
+	/**
+	 * Sets the number of anti-aliasing samples per pixel, 0, 4 or 8.
+	 */
+	public void setAntialiasing(int samples) {
+		this.antialiasing = samples;
+	}
+
+	public void setSmoothShading(boolean smoothShading) {
+		this.smoothShading = smoothShading;
+	}
+
+	/**
+	 * Whether polygons are drawn in screen order, see MortonOrder. Each
+	 * thread keeps its own order, so consecutive frames on a thread are what
+	 * decides whether it can be reused.
+	 */
+	public void setMortonOrdering(boolean mortonOrdering) {
+		this.mortonOrdering = mortonOrdering;
+	}
+
+	/**
+	 * Whether the header light casts shadows. The light then turns with the
+	 * model, and each thread only draws the shadow map once.
+	 */
+	public void setShadows(boolean shadows) {
+		this.shadows = shadows;
+	}
+
+	/**
+	 * Whether to draw the depth of each frame before shading it, see
+	 * FrameRenderer.setDepthPrepass.
+	 */
+	public void setDepthPrepass(boolean depthPrepass) {
+		this.depthPrepass = depthPrepass;
+	}
+
+	/**
+	 * Whether to draw each frame a tile at a time, see
+	 * FrameRenderer.setTileBinning.
+	 */
+	public void setTileBinning(boolean tileBinning) {
+		this.tileBinning = tileBinning;
+	}
+
+	/**
+	 * Whether the workers' framebuffers are kept outside the Java heap, see
+	 * Framebuffer. It has to be set before the first frame is rendered.
+	 */
+	public void setDirect(boolean direct) {
+		this.direct = direct;
+	}
+
+	/**
+	 * Whether render writes each frame as it is in the framebuffer, 4 bytes
+	 * a pixel (see Framebuffer.writeTo), rather than as a PNG. Each worker
+	 * then writes its own frames.
+	 */
+	public void setRaw(boolean raw) {
+		this.raw = raw;
+	}
+
+	/**
+	 * Sets the format render writes the frames in, see ImageEncoder.forName,
+	 * or null to write PNGs through ImageIO. The workers only copy the pixels
+	 * out of their framebuffers, and the frames are encoded on the thread
+	 * calling render while the workers get on with the next frames.
+	 */
+	public void setFormat(String format) {
+		if (encoder != null)
+			encoder.close();
+		this.encoder = format == null ? null : ImageEncoder.forName(format);
+	}
+
+	/**
+	 * Whether the framebuffers are cleared lazily, see
+	 * FrameRenderer.setLazyClear.
+	 */
+	public void setLazyClear(boolean lazyClear) {
+		this.lazyClear = lazyClear;
+	}
+
+	/**
+	 * How many bits to store each depth in, see
+	 * FrameRenderer.setDepthBits.
+	 */
+	public void setDepthBits(int depthBits, boolean reversed) {
+		this.depthBits = depthBits;
+		this.reversedDepth = reversed;
+	}
+
+	/**
+	 * Returns the poses for a turntable of the given number of frames, one
+	 * full turn around the Y-axis, looking down at the model at the given
+	 * angle.
+	 */
+	public static List<CameraPose> turntable(int frames, float xRot) {
+		List<CameraPose> poses = new ArrayList<CameraPose>(frames);
+		for (int i = 0; i < frames; i++)
+			poses.add(new CameraPose(xRot, (float) (2 * Math.PI * i / frames)));
+		return poses;
+	}
+
+	/**
+	 * Returns a copy of the scene seen from the given pose, scaled to fit and
+	 * centred on the canvas, ready to be rendered.
+	 */
+	Scene place(CameraPose pose) {
+		return place(scene, scale, pose, width, height);
+	}
+
+	/**
+	 * Returns a copy of the scene seen from the given pose, scaled by the
+	 * given scale (see fitScale) and centred on a screen of the given size.
+	 */
+	static Scene place(Scene scene, float scale, CameraPose pose, int width, int height) {
+		Transform view = pose.toTransform().compose(Transform.newScale(scale, scale, scale));
+		Scene frame = scene.transformed(view);
+
+		// centre the model on the canvas
+		BoundingBox bounds = Pipeline.computeBounds(frame);
+		float dx = (width - bounds.getWidth()) / 2f - bounds.getX();
+		float dy = (height - bounds.getHeight()) / 2f - bounds.getY();
+		Pipeline.translateScene(frame, dx, dy, 0);
+		return frame;
+	}
+
+	/**
+	 * Renders a single frame. This can be called from any thread.
+	 */
+	public BufferedImage renderFrame(CameraPose pose) {
+		return renderFrame(pose, (RenderedFrame) null);
+	}
+
+	/**
+	 * Renders a single frame, and fills in the overdraw heatmap and summary
+	 * of frame if overdraw is on and frame isn't null.
+	 */
+	private BufferedImage renderFrame(CameraPose pose, RenderedFrame frameOut) {
+		FrameRenderer renderer = draw(pose);
+		if (overdraw && frameOut != null) {
+			frameOut.heatmap = renderer.getOverdraw().toHeatmap(false);
+			frameOut.overdrawSummary = renderer.getOverdraw().summary();
+		}
+		return renderer.toImage();
+	}
+
+	/**
+	 * Renders a single frame and writes it to a channel, straight from the
+	 * framebuffer, see Framebuffer.writeTo.
+	 */
+	public void renderFrame(CameraPose pose, WritableByteChannel out) throws IOException {
+		draw(pose).getFramebuffer().writeTo(out);
+	}
+
+	/**
+	 * Renders a single frame with this thread's FrameRenderer, and returns
+	 * it.
+	 */
+	private FrameRenderer draw(CameraPose pose) {
+		Scene frame = place(pose);
+
+		FrameRenderer renderer = renderers.get();
+		renderer.setOverdrawTracking(overdraw);
+		renderer.setAntialiasing(antialiasing);
+		renderer.setSmoothShading(smoothShading);
+		renderer.setMortonOrdering(mortonOrdering);
+		renderer.setShadows(shadows);
+		renderer.setDepthPrepass(depthPrepass);
+		renderer.setTileBinning(tileBinning);
+		renderer.setDepthBits(depthBits, reversedDepth);
+		renderer.setLazyClear(lazyClear);
+		renderer.render(frame, scene.getLight(), lightColor, ambientLight);
+		return renderer;
+	}
+
+	/**
+	 * Renders every pose and writes the frames to dir as prefix_0000.png,
+	 * prefix_0001.png and so on, or with the extension of the format if one
+	 * has been set, or prefix_0000.xrgb and so on if raw. Only a few frames are rendered ahead of the
+	 * one being written, so memory use does not grow with the number of
+	 * frames.
+	 */
+	public void render(List<CameraPose> poses, File dir, String prefix) throws IOException, InterruptedException {
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("could not create " + dir);
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			Deque<Future<RenderedFrame>> inFlight = new ArrayDeque<Future<RenderedFrame>>();
+			int submitted = 0;
+			int written = 0;
+
+			while (written < poses.size()) {
+				// keep every worker busy with a couple of frames queued up
+				while (submitted < poses.size() && inFlight.size() < threads * 2) {
+					final CameraPose pose = poses.get(submitted);
+					final File rawFile = raw ? new File(dir, String.format("%s_%04d.xrgb", prefix, submitted)) : null;
+					submitted++;
+					inFlight.add(pool.submit(new Callable<RenderedFrame>() {
+						public RenderedFrame call() throws IOException {
+							RenderedFrame frame = new RenderedFrame();
+							if (rawFile == null && encoder != null) {
+								frame.pixels = copyPixels(draw(pose).getFramebuffer());
+								return frame;
+							}
+							if (rawFile == null) {
+								frame.image = renderFrame(pose, frame);
+								return frame;
+							}
+							FileChannel out = new FileOutputStream(rawFile).getChannel();
+							try {
+								renderFrame(pose, out);
+							} finally {
+								out.close();
+							}
+							return frame;
+						}
+					}));
+				}
+
+				RenderedFrame frame = get(inFlight.poll());
+				if (frame.image != null)
+					ImageIO.write(frame.image, "png", new File(dir, String.format("%s_%04d.png", prefix, written)));
+				if (frame.pixels != null) {
+					File file = new File(dir, String.format("%s_%04d.%s", prefix, written, encoder.getExtension()));
+					FileChannel out = new FileOutputStream(file).getChannel();
+					try {
+						encoder.encode(frame.pixels, width, height, out);
+					} finally {
+						out.close();
+					}
+					sparePixels.add(frame.pixels);
+				}
+				if (frame.heatmap != null) {
+					ImageIO.write(frame.heatmap, "png", new File(dir, String.format("%s_%04d_overdraw.png", prefix, written)));
+					System.out.printf("frame %04d: %s%n", written, frame.overdrawSummary);
+				}
+				written++;
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Gives up this renderer's share of the "sequence" metrics, which are
+	 * taken off the MBean server once every SequenceRenderer has been
+	 * closed, and closes the encoder.
+	 */
+	public synchronized void close() {
+		if (closed)
+			return;
+		closed = true;
+		metrics.release();
+		if (encoder != null)
+			encoder.close();
+	}
+
+	/**
+	 * Copies the colours of a framebuffer into a spare array, or a new one
+	 * if there isn't one.
+	 */
+	private int[] copyPixels(Framebuffer framebuffer) {
+		int[] pixels = sparePixels.poll();
+		if (pixels == null)
+			pixels = new int[width * height];
+		for (int y = 0; y < height; y++)
+			framebuffer.getRow(y, pixels, y * width);
+		return pixels;
+	}
+
+	private static RenderedFrame get(Future<RenderedFrame> frame) throws IOException, InterruptedException {
+		try {
+			return frame.get();
+		} catch (ExecutionException e) {
+			throw new IOException("rendering a frame failed", e.getCause());
+		}
+	}
+
+	/**
+	 * What a worker hands back for one frame.
+	 */
+	private static class RenderedFrame {
+		BufferedImage image;
+		// the frame as packed RGB, when it is to be written by an encoder
+		int[] pixels;
+		BufferedImage heatmap;
+		String overdrawSummary;
+	}
+
+	/**
+	 * Works out a scale that fits the model on the canvas whichever way it is
+	 * turned, so that the size doesn't change from frame to frame. The
+	 * diagonal of the model's bounding box is the furthest apart two of its
+	 * points can ever be on the screen.
+	 */
+	static float fitScale(Scene scene, int width, int height) {
+		float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+
+		for (Polygon p : scene.getPolygons()) {
+			for (Vector3D v : p.getVertices()) {
+				minX = Math.min(minX, v.x);
+				minY = Math.min(minY, v.y);
+				minZ = Math.min(minZ, v.z);
+				maxX = Math.max(maxX, v.x);
+				maxY = Math.max(maxY, v.y);
+				maxZ = Math.max(maxZ, v.z);
+			}
+		}
+
+		float dx = maxX - minX, dy = maxY - minY, dz = maxZ - minZ;
+		float diagonal = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+		if (diagonal <= 0)
+			return 1f;
+
+		// leave a small margin around the edge
+		return 0.9f * Math.min(width, height) / diagonal;
+	}
+
+	/**
+	 * Renders a turntable of a model file.
+	 * 
+	 * usage: SequenceRenderer [-overdraw] [-smooth] [-morton] [-shadows] [-prepass]
+	 *     [-binned] [-depth 16|24] [-reversed] [-direct] [-lazyclear] [-raw]
+	 *     [-format ppm|pam|png|png0|qoi] [-aa 4|8] [-size WxH] model.txt outputDir
+	 *     [frames] [threads]
+	 */
+	public static void main(String[] args) throws Exception {
+		boolean overdraw = false;
+		boolean smoothShading = false;
+		boolean mortonOrdering = false;
+		boolean shadows = false;
+		boolean depthPrepass = false;
+		boolean tileBinning = false;
+		int depthBits = 32;
+		boolean reversedDepth = false;
+		boolean direct = false;
+		boolean lazyClear = false;
+		boolean raw = false;
+		String format = null;
+		int antialiasing = 0;
+		int width = GUI.CANVAS_WIDTH;
+		int height = GUI.CANVAS_HEIGHT;
+		int first = 0;
+		while (first < args.length && args[first].startsWith("-")) {
+			if (args[first].equals("-overdraw"))
+				overdraw = true;
+			else if (args[first].equals("-smooth"))
+				smoothShading = true;
+			else if (args[first].equals("-morton"))
+				mortonOrdering = true;
+			else if (args[first].equals("-shadows"))
+				shadows = true;
+			else if (args[first].equals("-prepass"))
+				depthPrepass = true;
+			else if (args[first].equals("-binned"))
+				tileBinning = true;
+			else if (args[first].equals("-depth") && first + 1 < args.length)
+				depthBits = Integer.parseInt(args[++first]);
+			else if (args[first].equals("-reversed"))
+				reversedDepth = true;
+			else if (args[first].equals("-direct"))
+				direct = true;
+			else if (args[first].equals("-lazyclear"))
+				lazyClear = true;
+			else if (args[first].equals("-raw"))
+				raw = true;
+			else if (args[first].equals("-format") && first + 1 < args.length)
+				format = args[++first];
+			else if (args[first].equals("-aa") && first + 1 < args.length)
+				antialiasing = Integer.parseInt(args[++first]);
+			else if (args[first].equals("-size") && first + 1 < args.length) {
+				String[] size = args[++first].split("x");
+				if (size.length != 2)
+					usage();
+				width = Integer.parseInt(size[0]);
+				height = Integer.parseInt(size[1]);
+			} else
+				usage();
+			first++;
+		}
+		args = Arrays.copyOfRange(args, first, args.length);
+		if (args.length < 2)
+			usage();
+
+		File model = new File(args[0]);
+		int frames = args.length > 2 ? Integer.parseInt(args[2]) : 360;
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+		Scene scene = SceneLoader.load(model);
+		SequenceRenderer sequence = new SequenceRenderer(scene, width, height, threads);
+		sequence.setOverdraw(overdraw);
+		sequence.setAntialiasing(antialiasing);
+		sequence.setSmoothShading(smoothShading);
+		sequence.setMortonOrdering(mortonOrdering);
+		sequence.setShadows(shadows);
+		sequence.setDepthPrepass(depthPrepass);
+		sequence.setTileBinning(tileBinning);
+		sequence.setDepthBits(depthBits, reversedDepth);
+		sequence.setDirect(direct);
+		sequence.setLazyClear(lazyClear);
+		sequence.setRaw(raw);
+		sequence.setFormat(format);
+
+		String prefix = model.getName().replaceFirst("\\.txt$", "");
+		long start = System.nanoTime();
+		sequence.render(turntable(frames, 0.3f), new File(args[1]), prefix);
+		System.out.printf("%d frames in %.1f ms on %d threads%n", frames, (System.nanoTime() - start) / 1e6, threads);
+		sequence.close();
+	}
+
+	private static void usage() {
+		System.err.println("usage: SequenceRenderer [-overdraw] [-smooth] [-morton] [-shadows] [-prepass] [-binned]"
+				+ " [-depth 16|24] [-reversed] [-direct] [-lazyclear] [-raw] [-format ppm|pam|png|png0|qoi]"
+				+ " [-aa 4|8] [-size WxH] model.txt outputDir [frames] [threads]");
+		System.exit(1);
+	}
+}
@@ -0,0 +1,167 @@
+package renderer;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A shadow map for the header light of a scene: the depth of the nearest
+ * surface to the light, seen from the light, drawn with the same edge lists
+ * as the frame itself but without any colours. A point on the screen is in
+ * shadow if something is nearer the light than it is.
+ *
+ * The light is fixed to the model, so the map is worked out in the model's own
+ * coordinates. It only has to be drawn again when the model or the light
+ * change; when just the view changes, e.g. the model is rotated, the map is
+ * kept and setView works out how to find screen positions in it.
+ */
+public class ShadowMap {
+
+	public static final int DEFAULT_SIZE = 512;
+	/** Big enough for a shadow map the size of a 4K frame. */
+	public static final int MAX_SIZE = 4096;
+
+	/**
+	 * How much further from the light than the map a point has to be to be
+	 * in shadow, in map pixels, for a surface facing the light. Without it
+	 * surfaces shadow themselves. Surfaces at an angle to the light need
+	 * more, as their depth changes across each pixel of the map.
+	 */
+	public static final float BIAS = 1f;
+	private static final float SLOPE_BIAS = 1.5f;
+	private static final float MAX_BIAS = 10f;
+
+	private final int size;
+	private final float[] depth;
+
+	// what the map was drawn from
+	private long geometryId = -1;
+	private Vector3D light;
+	// from the model's coordinates into the map, x and y in map pixels
+	private Transform modelToMap;
+	private int builds;
+	private float bias = BIAS;
+
+	// from the screen into the map, for the view set by setView
+	private float m00, m01, m02, m03, m10, m11, m12, m13, m20, m21, m22, m23;
+
+	public ShadowMap() {
+		this(DEFAULT_SIZE);
+	}
+
+	/**
+	 * @param size
+	 *            The width and height of the map, up to MAX_SIZE.
+	 */
+	public ShadowMap(int size) {
+		if (size <= 0 || size > MAX_SIZE)
+			throw new IllegalArgumentException("ShadowMap: bad size " + size);
+		this.size = size;
+		this.depth = new float[size * size];
+	}
+
+	/**
+	 * Draws the map again if the scene's geometry or light has changed
+	 * since it was last drawn, and returns whether it did.
+	 */
+	public boolean update(Scene scene) {
+		if (scene.getGeometryId() == geometryId && scene.getModelLight().equals(light))
+			return false;
+
+		build(scene);
+		geometryId = scene.getGeometryId();
+		light = scene.getModelLight();
+		builds++;
+		return true;
+	}
+
+	/** How many times the map has been drawn. */
+	public int getBuildCount() {
+		return builds;
+	}
+
+	/**
+	 * Works out how to find screen positions in the map for a scene with the
+	 * given view, i.e. Scene.getView. Must be called after update, before
+	 * inShadow.
+	 */
+	public void setView(Transform view) {
+		float[][] m = modelToMap.compose(view.inverse()).getValues();
+		m00 = m[0][0]; m01 = m[0][1]; m02 = m[0][2]; m03 = m[0][3];
+		m10 = m[1][0]; m11 = m[1][1]; m12 = m[1][2]; m13 = m[1][3];
+		m20 = m[2][0]; m21 = m[2][1]; m22 = m[2][2]; m23 = m[2][3];
+	}
+
+	/**
+	 * Sets the bias for the surface about to be drawn, from the cosine of
+	 * the angle between its normal and the light.
+	 */
+	public void setSurface(float cosAngle) {
+		float cos = Math.abs(cosAngle);
+		if (cos < 1e-3f) {
+			bias = MAX_BIAS;
+			return;
+		}
+		float tan = (float) Math.sqrt(1 - Math.min(cos * cos, 1)) / cos;
+		bias = Math.min(BIAS + SLOPE_BIAS * tan, MAX_BIAS);
+	}
+
+	/**
+	 * Whether the point at screen position (x, y) with depth z is hidden
+	 * from the light. Points outside the map are never in shadow.
+	 */
+	public boolean inShadow(float x, float y, float z) {
+		int mx = (int) (m00 * x + m01 * y + m02 * z + m03);
+		int my = (int) (m10 * x + m11 * y + m12 * z + m13);
+		if (mx < 0 || my < 0 || mx >= size || my >= size)
+			return false;
+
+		float mz = m20 * x + m21 * y + m22 * z + m23;
+		return mz > depth[my * size + mx] + bias;
+	}
+
+	private void build(Scene scene) {
+		// looking along the light, with any up that isn't the light itself
+		Vector3D w = scene.getModelLight().unitVector();
+		Vector3D up = Math.abs(w.y) > 0.9f ? new Vector3D(1, 0, 0) : new Vector3D(0, 1, 0);
+		Vector3D u = up.crossProduct(w).unitVector();
+		Vector3D v = w.crossProduct(u);
+		Transform lightRotation = new Transform(new float[][] { { u.x, u.y, u.z, 0 }, { v.x, v.y, v.z, 0 },
+				{ -w.x, -w.y, -w.z, 0 } });
+
+		// the polygons are in screen space, so undo the view first
+		Transform screenToLight = lightRotation.compose(scene.getView().inverse());
+		List<Polygon> polygons = scene.getPolygons();
+
+		// fit the model into the map, leaving a pixel around the edge
+		float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+		Vector3D[] lightVerts = new Vector3D[polygons.size() * 3];
+		int i = 0;
+		for (Polygon poly : polygons) {
+			for (Vector3D vert : poly.getVertices()) {
+				Vector3D p = screenToLight.multiply(vert);
+				lightVerts[i++] = p;
+				minX = Math.min(minX, p.x);
+				maxX = Math.max(maxX, p.x);
+				minY = Math.min(minY, p.y);
+				maxY = Math.max(maxY, p.y);
+				minZ = Math.min(minZ, p.z);
+			}
+		}
+		float extent = Math.max(maxX - minX, maxY - minY);
+		float scale = extent > 0 ? (size - 2) / extent : 1;
+		Transform fit = Transform.newTranslation(1 - minX * scale, 1 - minY * scale, -minZ * scale)
+				.compose(Transform.newScale(scale, scale, scale));
+		modelToMap = fit.compose(lightRotation);
+
+		Arrays.fill(depth, Float.MAX_VALUE);
+		i = 0;
+		for (int p = 0; p < polygons.size(); p++) {
+			Polygon mapped = new Polygon(fit.multiply(lightVerts[i]), fit.multiply(lightVerts[i + 1]),
+					fit.multiply(lightVerts[i + 2]), Color.black);
+			i += 3;
+			Pipeline.computeDepthBuffer(depth, size, size, Pipeline.computeEdgeList(mapped));
+		}
+	}
+}
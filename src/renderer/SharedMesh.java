@@ -0,0 +1,86 @@
+package renderer;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A model that is drawn many times by the Instances of a SceneGraph. It is
+ * never changed after it is made, so any number of instances can share it,
+ * and all an instance needs of its own is a transform and a tint.
+ */
+public class SharedMesh {
+
+	private final Scene model;
+	// the model's bounding box, in its own coordinates
+	private final float minX, minY, minZ, maxX, maxY, maxZ;
+
+	/**
+	 * @param model
+	 *            The model. It must not be changed after this.
+	 */
+	public SharedMesh(Scene model) {
+		this.model = model;
+
+		float[] bounds = { Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE,
+				-Float.MAX_VALUE };
+		for (Polygon poly : model.getPolygons()) {
+			for (Vector3D v : poly.getVertices()) {
+				bounds[0] = Math.min(bounds[0], v.x);
+				bounds[1] = Math.min(bounds[1], v.y);
+				bounds[2] = Math.min(bounds[2], v.z);
+				bounds[3] = Math.max(bounds[3], v.x);
+				bounds[4] = Math.max(bounds[4], v.y);
+				bounds[5] = Math.max(bounds[5], v.z);
+			}
+		}
+		minX = bounds[0];
+		minY = bounds[1];
+		minZ = bounds[2];
+		maxX = bounds[3];
+		maxY = bounds[4];
+		maxZ = bounds[5];
+
+		// work out the vertex normals now, so every copy gets them rotated
+		// rather than computing them again
+		if (model.getMesh() != null)
+			model.getMesh().getNormals();
+	}
+
+	public static SharedMesh load(File file) throws IOException {
+		return new SharedMesh(SceneLoader.load(file));
+	}
+
+	public Scene getModel() {
+		return model;
+	}
+
+	public int getPolygonCount() {
+		return model.getPolygons().size();
+	}
+
+	/**
+	 * Returns the eight corners of the model's bounding box.
+	 */
+	public Vector3D[] getCorners() {
+		Vector3D[] corners = new Vector3D[8];
+		for (int i = 0; i < 8; i++) {
+			corners[i] = new Vector3D((i & 1) == 0 ? minX : maxX, (i & 2) == 0 ? minY : maxY,
+					(i & 4) == 0 ? minZ : maxZ);
+		}
+		return corners;
+	}
+
+	/**
+	 * Returns a copy of the model with the transform applied, ready to draw.
+	 * 
+	 * @param tint
+	 *            If not null, each polygon's reflectance is multiplied by it
+	 *            as it is shaded, see Scene.setTint.
+	 */
+	public Scene place(Transform t, Color tint) {
+		Scene placed = model.transformed(t);
+		placed.setTint(tint);
+		return placed;
+	}
+}
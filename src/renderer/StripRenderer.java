@@ -0,0 +1,199 @@
+package renderer;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Renders frames of any size up to MAX_SIZE by drawing them a horizontal
+ * strip at a time into a framebuffer only as tall as a strip, and handing
+ * each finished strip's rows to an ImageEncoder. However big the frame is,
+ * only one strip's colours and depths are ever held in memory, e.g. a 16K
+ * frame in 16 MB strips rather than 2 GB all at once.
+ *
+ * The polygons are sorted into the strips they reach once, and each strip is
+ * drawn from a copy of just its own polygons moved up by the strip's top,
+ * with the same FrameRenderer, so everything the FrameRenderer is set up to
+ * do (smooth shading, shadows, extra lights, and so on) works across strips.
+ * The shadow map is drawn once from the whole scene, and the depth range of
+ * quantized depths is the whole scene's, so strips meet without seams.
+ */
+public class StripRenderer {
+
+	public static final int MAX_SIZE = 16384;
+	/** How much memory a strip's framebuffer takes, unless set otherwise. */
+	public static final int DEFAULT_STRIP_BYTES = 16 << 20;
+
+	private final int width;
+	private final int height;
+	private final int stripHeight;
+	private final FrameRenderer renderer;
+
+	public StripRenderer(int width, int height) {
+		this(width, height, stripHeightFor(width, DEFAULT_STRIP_BYTES));
+	}
+
+	/**
+	 * @param stripHeight
+	 *            How many rows to draw at a time.
+	 */
+	public StripRenderer(int width, int height, int stripHeight) {
+		if (width <= 0 || height <= 0 || width > MAX_SIZE || height > MAX_SIZE)
+			throw new IllegalArgumentException("StripRenderer: bad size " + width + "x" + height);
+		if (stripHeight <= 0)
+			throw new IllegalArgumentException("StripRenderer: bad strip height " + stripHeight);
+		this.width = width;
+		this.height = height;
+		this.stripHeight = Math.min(stripHeight, height);
+		this.renderer = new FrameRenderer(width, this.stripHeight);
+	}
+
+	/**
+	 * Returns how many rows of the given width fit in the given number of
+	 * bytes of colours and depths.
+	 */
+	public static int stripHeightFor(int width, int bytes) {
+		return Math.max(1, bytes / (width * 8));
+	}
+
+	/**
+	 * The FrameRenderer each strip is drawn with, to set up how to draw.
+	 */
+	public FrameRenderer getRenderer() {
+		return renderer;
+	}
+
+	public int getStripHeight() {
+		return stripHeight;
+	}
+
+	/**
+	 * Renders a scene that is already placed on a screen of this renderer's
+	 * size, and writes it out with the encoder.
+	 */
+	public void render(Scene scene, Vector3D lightDirection, Color lightColor, Color ambientLight,
+			ImageEncoder encoder, WritableByteChannel out) throws IOException {
+		int strips = (height + stripHeight - 1) / stripHeight;
+		int[] starts = new int[strips + 1];
+		int[] bins = bin(scene.getPolygons(), strips, starts);
+
+		Framebuffer framebuffer = renderer.getFramebuffer();
+		if (framebuffer.getDepthBits() != 32) {
+			float[] range = Pipeline.computeDepthRange(scene);
+			framebuffer.setDepthRange(range[0], range[1]);
+		}
+		if (renderer.getShadowMap() != null)
+			renderer.getShadowMap().update(scene);
+
+		int[] row = new int[width];
+		encoder.begin(width, height, out);
+		for (int s = 0; s < strips; s++) {
+			int top = s * stripHeight;
+			Scene strip = scene.transformedPart(Transform.newTranslation(0, -top, 0), bins, starts[s], starts[s + 1]);
+			renderer.beginFrame();
+			renderer.draw(strip, lightDirection, lightColor, ambientLight);
+			renderer.endFrame();
+
+			int rows = Math.min(stripHeight, height - top);
+			for (int y = 0; y < rows; y++) {
+				framebuffer.getRow(y, row, 0);
+				encoder.writeRow(row, 0);
+			}
+		}
+		encoder.end();
+	}
+
+	/**
+	 * Sorts the polygons into the strips they reach, in their own order
+	 * within each strip. Returns the polygon numbers, with strip s's from
+	 * starts[s] up to starts[s + 1].
+	 */
+	private int[] bin(List<Polygon> polygons, int strips, int[] starts) {
+		int[] first = new int[polygons.size()];
+		int[] last = new int[polygons.size()];
+		for (int i = 0; i < polygons.size(); i++) {
+			Vector3D[] v = polygons.get(i).getVertices();
+			// a row past the bounds either way, as the rasterizer rounds
+			int minY = (int) Math.floor(Math.min(v[0].y, Math.min(v[1].y, v[2].y))) - 1;
+			int maxY = (int) Math.ceil(Math.max(v[0].y, Math.max(v[1].y, v[2].y))) + 1;
+			first[i] = Math.max(0, Math.floorDiv(minY, stripHeight));
+			last[i] = Math.min(strips - 1, Math.floorDiv(maxY, stripHeight));
+			for (int s = first[i]; s <= last[i]; s++)
+				starts[s + 1]++;
+		}
+		for (int s = 0; s < strips; s++)
+			starts[s + 1] += starts[s];
+
+		int[] bins = new int[starts[strips]];
+		int[] next = Arrays.copyOf(starts, strips);
+		for (int i = 0; i < polygons.size(); i++)
+			for (int s = first[i]; s <= last[i]; s++)
+				bins[next[s]++] = i;
+		return bins;
+	}
+
+	/**
+	 * Renders a model at any size, fitted to the frame as SequenceRenderer
+	 * does, to an image file whose format is picked by its extension (ppm,
+	 * pam, png or qoi).
+	 *
+	 * usage: StripRenderer [-smooth] [-shadows] [-strip rows] model.txt width height output
+	 */
+	public static void main(String[] args) throws Exception {
+		boolean smooth = false;
+		boolean shadows = false;
+		int stripRows = 0;
+		int first = 0;
+		while (first < args.length && args[first].startsWith("-")) {
+			if (args[first].equals("-smooth"))
+				smooth = true;
+			else if (args[first].equals("-shadows"))
+				shadows = true;
+			else if (args[first].equals("-strip") && first + 1 < args.length)
+				stripRows = Integer.parseInt(args[++first]);
+			else
+				usage();
+			first++;
+		}
+		args = Arrays.copyOfRange(args, first, args.length);
+		if (args.length < 4)
+			usage();
+
+		int width = Integer.parseInt(args[1]);
+		int height = Integer.parseInt(args[2]);
+		File output = new File(args[3]);
+		ImageEncoder encoder = ImageEncoder.forName(output.getName().replaceFirst(".*\\.", ""));
+
+		Scene scene = SceneLoader.load(new File(args[0]));
+		Scene placed = SequenceRenderer.place(scene, SequenceRenderer.fitScale(scene, width, height),
+				new CameraPose(0.3f, 0.5f), width, height);
+
+		StripRenderer strips = stripRows > 0 ? new StripRenderer(width, height, stripRows)
+				: new StripRenderer(width, height);
+		strips.getRenderer().setSmoothShading(smooth);
+		strips.getRenderer().setShadows(shadows);
+
+		long start = System.nanoTime();
+		FileChannel out = new FileOutputStream(output).getChannel();
+		try {
+			strips.render(placed, scene.getLight(), Color.white, new Color(128, 128, 128), encoder, out);
+		} finally {
+			out.close();
+			encoder.close();
+		}
+		Runtime runtime = Runtime.getRuntime();
+		System.out.printf("%dx%d in strips of %d rows, in %.1f ms, %.1f MB heap in use%n", width, height,
+				strips.getStripHeight(), (System.nanoTime() - start) / 1e6,
+				(runtime.totalMemory() - runtime.freeMemory()) / 1e6);
+	}
+
+	private static void usage() {
+		System.err.println("usage: StripRenderer [-smooth] [-shadows] [-strip rows] model.txt width height output");
+		System.exit(1);
+	}
+}
@@ -0,0 +1,188 @@
+package renderer;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * An image to paint polygons with, kept as a mipmap chain: the image itself,
+ * then half the size, then a quarter, down to a single texel, each level the
+ * average of 2x2 texels of the one before. A polygon that is small on the
+ * screen is painted from a small level, so neighbouring pixels read
+ * neighbouring texels rather than ones scattered all over a big image.
+ *
+ * The texels of each level are stored in Morton (Z-order) order, so texels
+ * that are close in both x and y are close in memory, and a span walking
+ * across the texture at any angle keeps reading the same few cache lines.
+ * The index of texel (x, y) is mortonX[x] | mortonY[y], from tables made
+ * once per level. A level that isn't square interleaves the bits that x and
+ * y both have, and puts the rest of the longer side's bits above them.
+ *
+ * The image is stretched to a power of two each way, at most MAX_SIZE, and
+ * wraps around, so texture coordinates outside 0 - 1 repeat it.
+ */
+public class Texture {
+
+	public static final int MAX_SIZE = 4096;
+
+	private final int[] widths;
+	private final int[] heights;
+	// packed RGB, in Morton order
+	private final int[][] texels;
+	private final int[][] mortonX;
+	private final int[][] mortonY;
+
+	public Texture(BufferedImage image) {
+		int width = powerOfTwo(image.getWidth());
+		int height = powerOfTwo(image.getHeight());
+		if (width != image.getWidth() || height != image.getHeight())
+			image = resize(image, width, height);
+
+		int levels = 1;
+		for (int size = Math.max(width, height); size > 1; size >>= 1)
+			levels++;
+		widths = new int[levels];
+		heights = new int[levels];
+		texels = new int[levels][];
+		mortonX = new int[levels][];
+		mortonY = new int[levels][];
+
+		int[] rows = image.getRGB(0, 0, width, height, null, 0, width);
+		for (int level = 0; level < levels; level++) {
+			widths[level] = width;
+			heights[level] = height;
+			makeTables(level, width, height);
+			int[] ordered = new int[width * height];
+			for (int y = 0; y < height; y++)
+				for (int x = 0; x < width; x++)
+					ordered[mortonX[level][x] | mortonY[level][y]] = rows[y * width + x] & 0xFFFFFF;
+			texels[level] = ordered;
+
+			if (level + 1 < levels) {
+				rows = halve(rows, width, height);
+				width = Math.max(1, width >> 1);
+				height = Math.max(1, height >> 1);
+			}
+		}
+	}
+
+	/**
+	 * Reads a texture from an image file, in any format ImageIO knows.
+	 */
+	public static Texture load(File file) throws IOException {
+		BufferedImage image = ImageIO.read(file);
+		if (image == null)
+			throw new IOException("Texture: " + file.getName() + " is not an image");
+		return new Texture(image);
+	}
+
+	private static int powerOfTwo(int size) {
+		int power = 1;
+		while (power < size && power < MAX_SIZE)
+			power <<= 1;
+		return power;
+	}
+
+	private static BufferedImage resize(BufferedImage image, int width, int height) {
+		BufferedImage resized = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = resized.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g.drawImage(image, 0, 0, width, height, null);
+		g.dispose();
+		return resized;
+	}
+
+	/**
+	 * Returns the next level down of a row-major image, each texel the
+	 * average of the two or four it covers.
+	 */
+	private static int[] halve(int[] rows, int width, int height) {
+		int w = Math.max(1, width >> 1);
+		int h = Math.max(1, height >> 1);
+		int stepX = width > 1 ? 1 : 0;
+		int stepY = height > 1 ? width : 0;
+		int[] half = new int[w * h];
+		for (int y = 0; y < h; y++) {
+			for (int x = 0; x < w; x++) {
+				int at = (y * (height > 1 ? 2 : 1)) * width + x * (width > 1 ? 2 : 1);
+				int a = rows[at], b = rows[at + stepX], c = rows[at + stepY], d = rows[at + stepY + stepX];
+				int r = ((a >> 16 & 0xFF) + (b >> 16 & 0xFF) + (c >> 16 & 0xFF) + (d >> 16 & 0xFF) + 2) >> 2;
+				int g = ((a >> 8 & 0xFF) + (b >> 8 & 0xFF) + (c >> 8 & 0xFF) + (d >> 8 & 0xFF) + 2) >> 2;
+				int bl = ((a & 0xFF) + (b & 0xFF) + (c & 0xFF) + (d & 0xFF) + 2) >> 2;
+				half[y * w + x] = (r << 16) | (g << 8) | bl;
+			}
+		}
+		return half;
+	}
+
+	private void makeTables(int level, int width, int height) {
+		int shared = Integer.numberOfTrailingZeros(Math.min(width, height));
+		int mask = (1 << shared) - 1;
+		int[] xs = new int[width];
+		for (int x = 0; x < width; x++)
+			xs[x] = MortonOrder.spread(x & mask) | ((x >> shared) << (shared * 2));
+		int[] ys = new int[height];
+		for (int y = 0; y < height; y++)
+			ys[y] = (MortonOrder.spread(y & mask) << 1) | ((y >> shared) << (shared * 2));
+		mortonX[level] = xs;
+		mortonY[level] = ys;
+	}
+
+	public int getLevelCount() {
+		return texels.length;
+	}
+
+	public int getWidth(int level) {
+		return widths[level];
+	}
+
+	public int getHeight(int level) {
+		return heights[level];
+	}
+
+	/**
+	 * Returns the level to paint with when one pixel on the screen covers
+	 * the given number of texels of level 0: the largest level whose texels
+	 * are still no smaller than a pixel.
+	 */
+	public int levelFor(float texelsPerPixel) {
+		int level = 0;
+		while (texelsPerPixel >= 2 && level + 1 < texels.length) {
+			texelsPerPixel /= 2;
+			level++;
+		}
+		return level;
+	}
+
+	/**
+	 * Returns texel (x, y) of a level as packed RGB, wrapping x and y around.
+	 */
+	public int getTexel(int level, int x, int y) {
+		return texels[level][mortonX[level][x & (widths[level] - 1)] | mortonY[level][y & (heights[level] - 1)]];
+	}
+
+	/**
+	 * Returns the texel of a level at texture coordinates (u, v), where 0 - 1
+	 * covers the whole image, the nearest one rather than a blend.
+	 */
+	public int sample(int level, float u, float v) {
+		return getTexel(level, (int) Math.floor(u * widths[level]), (int) Math.floor(v * heights[level]));
+	}
+
+	/** The texels of a level in Morton order, for the rasterizer. */
+	int[] getTexels(int level) {
+		return texels[level];
+	}
+
+	int[] getMortonX(int level) {
+		return mortonX[level];
+	}
+
+	int[] getMortonY(int level) {
+		return mortonY[level];
+	}
+}
@@ -0,0 +1,170 @@
+package renderer;
+
+import java.util.Arrays;
+
+/**
+ * Sorts the polygons of a frame into square tiles of the screen, so they can
+ * be drawn a tile at a time rather than a polygon at a time. While a tile is
+ * being drawn only its own part of the framebuffer is touched, which is small
+ * enough to stay in the cache however big the frame is, and different tiles
+ * never touch the same pixels.
+ *
+ * Each polygon is added once, which works out its bounds on the screen and
+ * puts its number in the bin of every tile the bounds cover. Within a bin the
+ * polygons stay in the order they were added, so drawing a tile's bin in order
+ * gives the same picture as drawing every polygon over the whole screen.
+ *
+ * The bins all have the same capacity and are packed into one int array, with
+ * the polygons of tile t in getBins()[getStart(t)] to
+ * getBins()[getStart(t) + getCount(t) - 1]. The arrays are kept from frame to
+ * frame; the capacity only grows when a tile overflows, which stops happening
+ * once the bins are big enough for the scene.
+ */
+public class TileBinner {
+
+	public static final int TILE_SIZE = 64;
+	public static final int DEFAULT_CAPACITY = 64;
+
+	private final int width;
+	private final int height;
+	private final int columns;
+	private final int rows;
+
+	private int capacity = DEFAULT_CAPACITY;
+	private int[] bins;
+	private final int[] counts;
+	private int added;
+	private int binned;
+
+	public TileBinner(int width, int height) {
+		if (width <= 0 || height <= 0)
+			throw new IllegalArgumentException("TileBinner: bad size " + width + "x" + height);
+		this.width = width;
+		this.height = height;
+		this.columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+		this.rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+		this.counts = new int[columns * rows];
+		this.bins = new int[columns * rows * capacity];
+	}
+
+	/**
+	 * Empties every bin, ready for the next frame.
+	 */
+	public void clear() {
+		Arrays.fill(counts, 0);
+		added = 0;
+		binned = 0;
+	}
+
+	/**
+	 * Bins the next polygon, which is numbered by how many have been added
+	 * since clear, and returns its number. Polygons entirely off the screen
+	 * aren't put in any bin, but still get a number.
+	 */
+	public int add(Polygon poly) {
+		return add(poly, 1);
+	}
+
+	/**
+	 * Bins the next polygon with its x and y multiplied by scale, as for
+	 * add(poly).
+	 */
+	public int add(Polygon poly, float scale) {
+		Vector3D[] v = poly.getVertices();
+		float minX = Math.min(v[0].x, Math.min(v[1].x, v[2].x));
+		float maxX = Math.max(v[0].x, Math.max(v[1].x, v[2].x));
+		float minY = Math.min(v[0].y, Math.min(v[1].y, v[2].y));
+		float maxY = Math.max(v[0].y, Math.max(v[1].y, v[2].y));
+		return add(minX * scale, minY * scale, maxX * scale, maxY * scale);
+	}
+
+	/**
+	 * Bins the next polygon by its bounds on the screen, as for add(poly).
+	 */
+	public int add(float minX, float minY, float maxX, float maxY) {
+		int number = added++;
+		if (maxX < 0 || maxY < 0 || minX >= width || minY >= height)
+			return number;
+		binned++;
+
+		// the rasterizer rounds the ends of each row, so a polygon can reach
+		// a pixel past its bounds
+		int minCol = Math.max(0, (int) Math.floor(minX - 1) / TILE_SIZE);
+		int maxCol = Math.min(columns - 1, (int) Math.ceil(maxX + 1) / TILE_SIZE);
+		int minRow = Math.max(0, (int) Math.floor(minY - 1) / TILE_SIZE);
+		int maxRow = Math.min(rows - 1, (int) Math.ceil(maxY + 1) / TILE_SIZE);
+
+		for (int row = minRow; row <= maxRow; row++) {
+			for (int col = minCol; col <= maxCol; col++) {
+				int t = row * columns + col;
+				if (counts[t] == capacity)
+					grow();
+				bins[t * capacity + counts[t]++] = number;
+			}
+		}
+		return number;
+	}
+
+	/**
+	 * Doubles the capacity of every bin, keeping what is in them.
+	 */
+	private void grow() {
+		int[] bigger = new int[bins.length * 2];
+		for (int t = 0; t < counts.length; t++)
+			System.arraycopy(bins, t * capacity, bigger, t * capacity * 2, counts[t]);
+		bins = bigger;
+		capacity *= 2;
+	}
+
+	/** The number of polygons added since clear. */
+	public int getAddedCount() {
+		return added;
+	}
+
+	/**
+	 * The number of polygons added since clear that were put in at least one
+	 * bin, i.e. that weren't entirely off the screen.
+	 */
+	public int getBinnedCount() {
+		return binned;
+	}
+
+	public int getTileCount() {
+		return columns * rows;
+	}
+
+	/** The number of polygons each bin can hold before they all grow. */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public int[] getBins() {
+		return bins;
+	}
+
+	public int getStart(int tile) {
+		return tile * capacity;
+	}
+
+	public int getCount(int tile) {
+		return counts[tile];
+	}
+
+	public int getTileMinX(int tile) {
+		return (tile % columns) * TILE_SIZE;
+	}
+
+	public int getTileMinY(int tile) {
+		return (tile / columns) * TILE_SIZE;
+	}
+
+	/** The x just past the right of the tile. */
+	public int getTileMaxX(int tile) {
+		return Math.min(width, getTileMinX(tile) + TILE_SIZE);
+	}
+
+	/** The y just past the bottom of the tile. */
+	public int getTileMaxY(int tile) {
+		return Math.min(height, getTileMinY(tile) + TILE_SIZE);
+	}
+}
@@ -117,6 +117,63 @@ public class Transform {
 		return new Vector3D(x, y, z);
 	}
 
+	/*
+	 * apply this transform to a direction, such as a normal, which isn't
+	 * affected by the translation part
+	 */
+	public Vector3D multiplyDirection(Vector3D vect) {
+		float x = values[0][0] * vect.x + values[0][1] * vect.y + values[0][2] * vect.z;
+		float y = values[1][0] * vect.x + values[1][1] * vect.y + values[1][2] * vect.z;
+		float z = values[2][0] * vect.x + values[2][1] * vect.y + values[2][2] * vect.z;
+		return new Vector3D(x, y, z);
+	}
+
+	/*
+	 * returns the transform that undoes this one. Throws an
+	 * IllegalStateException if it can't be undone, e.g. a scale by 0.
+	 */
+	public Transform inverse() {
+		float[][] m = values;
+		float c00 = m[1][1] * m[2][2] - m[1][2] * m[2][1];
+		float c01 = m[1][2] * m[2][0] - m[1][0] * m[2][2];
+		float c02 = m[1][0] * m[2][1] - m[1][1] * m[2][0];
+		float det = m[0][0] * c00 + m[0][1] * c01 + m[0][2] * c02;
+		if (det == 0)
+			throw new IllegalStateException("Transform: can't invert " + this);
+
+		float[][] inv = new float[3][4];
+		inv[0][0] = c00 / det;
+		inv[0][1] = (m[0][2] * m[2][1] - m[0][1] * m[2][2]) / det;
+		inv[0][2] = (m[0][1] * m[1][2] - m[0][2] * m[1][1]) / det;
+		inv[1][0] = c01 / det;
+		inv[1][1] = (m[0][0] * m[2][2] - m[0][2] * m[2][0]) / det;
+		inv[1][2] = (m[0][2] * m[1][0] - m[0][0] * m[1][2]) / det;
+		inv[2][0] = c02 / det;
+		inv[2][1] = (m[0][1] * m[2][0] - m[0][0] * m[2][1]) / det;
+		inv[2][2] = (m[0][0] * m[1][1] - m[0][1] * m[1][0]) / det;
+
+		// the translation is undone after the rest
+		for (int row = 0; row < 3; row++) {
+			inv[row][3] = -(inv[row][0] * m[0][3] + inv[row][1] * m[1][3] + inv[row][2] * m[2][3]);
+		}
+		return new Transform(inv);
+	}
+
+	/*
+	 * returns the transform to apply to normals with multiplyDirection, the
+	 * transpose of the inverse, so that they stay at right angles to their
+	 * surfaces even when the scale isn't the same along every axis. The
+	 * normals it gives need making unit length again.
+	 */
+	public Transform normalTransform() {
+		float[][] inv = inverse().values;
+		float[][] n = new float[3][4];
+		for (int row = 0; row < 3; row++)
+			for (int col = 0; col < 3; col++)
+				n[row][col] = inv[col][row];
+		return new Transform(n);
+	}
+
 	public float[][] getValues(){
 		return this.values;
 	}
@@ -0,0 +1,116 @@
+package renderer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The texture of a scene, and where on it each corner of each polygon is.
+ * Polygon i's corners are at texture coordinates (u, v) = (uvs[i * 6],
+ * uvs[i * 6 + 1]), (uvs[i * 6 + 2], uvs[i * 6 + 3]) and (uvs[i * 6 + 4],
+ * uvs[i * 6 + 5]), in the same order as its vertices, where 0 - 1 covers the
+ * whole image and (0, 0) is its top left.
+ *
+ * The coordinates don't change as the scene is moved, so every copy of a
+ * scene shares the same UvMap.
+ */
+public class UvMap {
+
+	private final Texture texture;
+	private final float[] uvs;
+
+	public UvMap(Texture texture, float[] uvs) {
+		if (uvs.length % 6 != 0)
+			throw new IllegalArgumentException("UvMap: " + uvs.length + " coordinates isn't whole polygons");
+		this.texture = texture;
+		this.uvs = uvs;
+	}
+
+	public Texture getTexture() {
+		return texture;
+	}
+
+	public float[] getUvs() {
+		return uvs;
+	}
+
+	/** How many polygons there are coordinates for. */
+	public int getPolygonCount() {
+		return uvs.length / 6;
+	}
+
+	/**
+	 * Returns the coordinates of only the polygons numbered which[from] to
+	 * which[to - 1], in that order, on the same texture.
+	 */
+	public UvMap part(int[] which, int from, int to) {
+		float[] partUvs = new float[(to - from) * 6];
+		for (int k = from; k < to; k++)
+			System.arraycopy(uvs, which[k] * 6, partUvs, (k - from) * 6, 6);
+		return new UvMap(texture, partUvs);
+	}
+
+	/**
+	 * Reads a texture coordinates file. The first line is
+	 *
+	 * texture image.png
+	 *
+	 * naming the image, relative to the file, and then each line is the six
+	 * coordinates u0 v0 u1 v1 u2 v2 of one polygon, in the same order as in
+	 * the model file. Blank lines and lines starting with # are skipped.
+	 */
+	public static UvMap load(File file) throws IOException {
+		Texture texture = null;
+		float[] uvs = new float[6 * 1024];
+		int count = 0;
+		BufferedReader data = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			int lineNumber = 0;
+			while ((line = data.readLine()) != null) {
+				lineNumber++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#"))
+					continue;
+
+				String[] values = line.split("\\s+");
+				if (texture == null) {
+					if (!values[0].equals("texture") || values.length != 2)
+						throw new IOException(file.getName() + ":" + lineNumber + ": expected texture: " + line);
+					File image = new File(values[1]);
+					if (!image.isAbsolute())
+						image = new File(file.getAbsoluteFile().getParentFile(), values[1]);
+					texture = Texture.load(image);
+					continue;
+				}
+
+				if (values.length != 6)
+					throw new IOException(file.getName() + ":" + lineNumber + ": not six coordinates: " + line);
+				if (count + 6 > uvs.length)
+					uvs = Arrays.copyOf(uvs, uvs.length * 2);
+				try {
+					for (String value : values)
+						uvs[count++] = Float.parseFloat(value);
+				} catch (NumberFormatException e) {
+					throw new IOException(file.getName() + ":" + lineNumber + ": " + e.getMessage(), e);
+				}
+			}
+		} finally {
+			data.close();
+		}
+		if (texture == null)
+			throw new IOException(file.getName() + ": no texture");
+		return new UvMap(texture, Arrays.copyOf(uvs, count));
+	}
+
+	/**
+	 * Returns the texture coordinates file that goes with a model file, i.e.
+	 * car.uv for car.txt.
+	 */
+	public static File sidecar(File model) {
+		String name = model.getName().replaceFirst("\\.[^.]*$", "");
+		return new File(model.getParentFile(), name + ".uv");
+	}
+}
@@ -11,7 +11,12 @@ import org.junit.runners.Suite.SuiteClasses;
  */
 
 @RunWith(Suite.class)
-@SuiteClasses({ EdgeListTests.class, ZBufferTests.class, PolygonHidingTests.class, ShadingTests.class, RotationTests.class })
+@SuiteClasses({ EdgeListTests.class, ZBufferTests.class, PolygonHidingTests.class, ShadingTests.class, RotationTests.class,
+		MeshTests.class, MortonOrderTests.class, LightTests.class, ShadowTests.class,
+		FrameRendererTests.class, SceneGraphTests.class, QuantizedDepthTests.class, EncoderTests.class,
+		OutOfCoreTests.class, RenderSchedulerTests.class, SceneLoaderTests.class, TextureTests.class,
+		ResolutionScalerTests.class, RenderMetricsTests.class,
+		GoldenImageTests.class })
 public class AllTests {
 
 }
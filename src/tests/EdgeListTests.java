@@ -113,6 +113,36 @@ public class EdgeListTests {
 		assertEquals(7.33333, el.getLeftZ(4), 1e-3);
 		assertEquals(8.33333, el.getRightZ(4), 1e-3);
 	}
+
+	@Test
+	/**
+	 * Working out only some of the rows, as for one tile, gives exactly the
+	 * same rows as the whole edge list.
+	 */
+	public void testRowRange() {
+		float[] verts = new float[] { 3.3f, 1.7f, 2.5f, 90.2f, 40.6f, 7.1f, 47.9f, 130.4f, 0.4f };
+		int[] colours = new int[] { 0xFF0000, 0x00FF00, 0x0000FF };
+		Polygon poly = new Polygon(verts, new int[] { 200, 200, 200 });
+		EdgeList whole = Pipeline.computeEdgeList(poly, colours);
+
+		EdgeList part = new EdgeList(0, 0);
+		for (int minY = 0; minY < 140; minY += 64) {
+			Pipeline.computeEdgeList(poly, colours, part, minY, minY + 64);
+			assertEquals(Math.max(minY, whole.getStartY()), part.getStartY());
+			assertEquals(Math.min(minY + 64, whole.getEndY()), part.getEndY());
+			for (int y = part.getStartY(); y < part.getEndY(); y++) {
+				assertEquals(whole.getLeftX(y), part.getLeftX(y), 0);
+				assertEquals(whole.getRightX(y), part.getRightX(y), 0);
+				assertEquals(whole.getLeftZ(y), part.getLeftZ(y), 0);
+				assertEquals(whole.getRightZ(y), part.getRightZ(y), 0);
+				// the colours of a row the edges don't reach aren't set
+				for (int c = 0; c < 3 && whole.getLeftX(y) <= whole.getRightX(y); c++) {
+					assertEquals(whole.getLeftColour(y, c), part.getLeftColour(y, c), 0);
+					assertEquals(whole.getRightColour(y, c), part.getRightColour(y, c), 0);
+				}
+			}
+		}
+	}
 }
 
 // code for COMP261 assignments
@@ -0,0 +1,165 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import renderer.Framebuffer;
+import renderer.ImageEncoder;
+
+public class EncoderTests {
+
+	private static final int WIDTH = 70;
+	private static final int HEIGHT = 50;
+
+	/**
+	 * Flat areas, gradients and noise, so every kind of QOI op and PNG filter
+	 * gets used.
+	 */
+	private static Framebuffer picture() {
+		Framebuffer framebuffer = new Framebuffer(WIDTH, HEIGHT);
+		Random random = new Random(7);
+		for (int y = 0; y < HEIGHT; y++) {
+			for (int x = 0; x < WIDTH; x++) {
+				int rgb;
+				if (x < 20)
+					rgb = 0x336699;
+				else if (x < 45)
+					rgb = (x * 5) << 16 | (y * 3) << 8 | (x + y);
+				else
+					rgb = random.nextInt(0x1000000);
+				framebuffer.setRGB(framebuffer.index(x, y), rgb);
+			}
+		}
+		return framebuffer;
+	}
+
+	private static byte[] encode(String format, Framebuffer framebuffer) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ImageEncoder encoder = ImageEncoder.forName(format);
+		try {
+			encoder.encode(framebuffer, Channels.newChannel(bytes));
+		} finally {
+			encoder.close();
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void assertSamePixels(Framebuffer expected, BufferedImage actual) {
+		assertEquals(WIDTH, actual.getWidth());
+		assertEquals(HEIGHT, actual.getHeight());
+		for (int y = 0; y < HEIGHT; y++)
+			for (int x = 0; x < WIDTH; x++)
+				assertEquals("pixel " + x + "," + y, expected.getRGB(expected.index(x, y)),
+						actual.getRGB(x, y) & 0xFFFFFF);
+	}
+
+	@Test
+	public void testPng() throws IOException {
+		Framebuffer framebuffer = picture();
+		for (String format : new String[] { "png", "png0" })
+			assertSamePixels(framebuffer, ImageIO.read(new ByteArrayInputStream(encode(format, framebuffer))));
+	}
+
+	@Test
+	/** One PNG encoder writes image after image until it is closed. */
+	public void testPngReused() throws IOException {
+		Framebuffer framebuffer = picture();
+		ImageEncoder encoder = ImageEncoder.forName("png");
+		try {
+			for (int i = 0; i < 3; i++) {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				encoder.encode(framebuffer, Channels.newChannel(bytes));
+				assertSamePixels(framebuffer, ImageIO.read(new ByteArrayInputStream(bytes.toByteArray())));
+			}
+		} finally {
+			encoder.close();
+		}
+	}
+
+	@Test
+	public void testPpm() throws IOException {
+		Framebuffer framebuffer = picture();
+		byte[] bytes = encode("ppm", framebuffer);
+		String header = "P6\n" + WIDTH + " " + HEIGHT + "\n255\n";
+		assertEquals(header.length() + WIDTH * HEIGHT * 3, bytes.length);
+		assertEquals(header, new String(bytes, 0, header.length(), "US-ASCII"));
+		int i = header.length() + (10 * WIDTH + 50) * 3;
+		assertEquals(framebuffer.getRGB(framebuffer.index(50, 10)),
+				(bytes[i] & 0xFF) << 16 | (bytes[i + 1] & 0xFF) << 8 | bytes[i + 2] & 0xFF);
+
+		assertTrue(new String(encode("pam", framebuffer), "US-ASCII").startsWith("P7\nWIDTH 70\nHEIGHT 50\n"));
+	}
+
+	@Test
+	public void testQoi() throws IOException {
+		Framebuffer framebuffer = picture();
+		int[] decoded = decodeQoi(encode("qoi", framebuffer));
+		for (int i = 0; i < decoded.length; i++)
+			assertEquals("pixel " + i, framebuffer.getRGB(i), decoded[i]);
+	}
+
+	/**
+	 * A QOI decoder for opaque RGB images, following the reference one.
+	 */
+	private static int[] decodeQoi(byte[] bytes) {
+		ByteBuffer in = ByteBuffer.wrap(bytes);
+		assertEquals(0x716f6966, in.getInt()); // qoif
+		assertEquals(WIDTH, in.getInt());
+		assertEquals(HEIGHT, in.getInt());
+		assertEquals(3, in.get());
+		in.get();
+
+		int[] index = new int[64];
+		int[] pixels = new int[WIDTH * HEIGHT];
+		int r = 0, g = 0, b = 0;
+		int run = 0;
+		for (int i = 0; i < pixels.length; i++) {
+			if (run > 0) {
+				run--;
+			} else {
+				int op = in.get() & 0xFF;
+				if (op == 0xfe) {
+					r = in.get() & 0xFF;
+					g = in.get() & 0xFF;
+					b = in.get() & 0xFF;
+				} else if ((op & 0xc0) == 0x00) {
+					r = index[op] >> 16;
+					g = (index[op] >> 8) & 0xFF;
+					b = index[op] & 0xFF;
+				} else if ((op & 0xc0) == 0x40) {
+					r = (r + ((op >> 4) & 3) - 2) & 0xFF;
+					g = (g + ((op >> 2) & 3) - 2) & 0xFF;
+					b = (b + (op & 3) - 2) & 0xFF;
+				} else if ((op & 0xc0) == 0x80) {
+					int dg = (op & 0x3f) - 32;
+					int next = in.get() & 0xFF;
+					r = (r + dg + (next >> 4) - 8) & 0xFF;
+					g = (g + dg) & 0xFF;
+					b = (b + dg + (next & 0xF) - 8) & 0xFF;
+				} else {
+					run = op & 0x3f;
+				}
+				index[(r * 3 + g * 5 + b * 7 + 255 * 11) % 64] = r << 16 | g << 8 | b;
+			}
+			pixels[i] = r << 16 | g << 8 | b;
+		}
+
+		for (int i = 0; i < 7; i++)
+			assertEquals(0, in.get());
+		assertEquals(1, in.get());
+		assertEquals(0, in.remaining());
+		return pixels;
+	}
+}
@@ -0,0 +1,278 @@
+package tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import renderer.FrameRenderer;
+import renderer.Framebuffer;
+import renderer.ImageEncoder;
+import renderer.Mesh;
+import renderer.Polygon;
+import renderer.Scene;
+import renderer.StripRenderer;
+import renderer.Texture;
+import renderer.Transform;
+import renderer.UvMap;
+import renderer.Vector3D;
+
+public class FrameRendererTests {
+
+	/** A few overlapping triangles, two of them at exactly the same depth. */
+	private static Scene overlapping() {
+		List<Polygon> polys = new ArrayList<Polygon>();
+		polys.add(new Polygon(new float[] { 10, 10, 50, 90, 20, 50, 40, 90, 50 }, new int[] { 200, 0, 0 }));
+		polys.add(new Polygon(new float[] { 5, 40, 10, 95, 45, 30, 30, 80, 60 }, new int[] { 0, 200, 0 }));
+		polys.add(new Polygon(new float[] { 20, 5, 20, 70, 10, 20, 50, 60, 20 }, new int[] { 0, 0, 200 }));
+		polys.add(new Polygon(new float[] { 20, 5, 20, 70, 10, 20, 50, 60, 20 }, new int[] { 200, 200, 0 }));
+		polys.add(new Polygon(new float[] { 0, 0, 5, 30, 0, 5, 0, 30, 5 }, new int[] { 0, 200, 200 }));
+		return new Scene(polys, new Vector3D(0, 0, -1), Mesh.weld(polys, Mesh.WELD_EPSILON));
+	}
+
+	private static int[] render(boolean smooth, boolean prepass) {
+		return render(smooth, prepass, false);
+	}
+
+	private static int[] render(boolean smooth, boolean prepass, boolean binned) {
+		return pixels(render(new Framebuffer(100, 100), smooth, prepass, binned));
+	}
+
+	private static Framebuffer render(Framebuffer framebuffer, boolean smooth, boolean prepass, boolean binned) {
+		FrameRenderer renderer = new FrameRenderer(framebuffer);
+		renderer.setSmoothShading(smooth);
+		renderer.setDepthPrepass(prepass);
+		renderer.setTileBinning(binned);
+		renderer.render(overlapping(), new Vector3D(0, 0, -1), Color.white, Color.gray);
+		return framebuffer;
+	}
+
+	private static int[] pixels(Framebuffer framebuffer) {
+		int[] pixels = new int[100 * 100];
+		for (int i = 0; i < pixels.length; i++)
+			pixels[i] = framebuffer.getRGB(i);
+		return pixels;
+	}
+
+	@Test
+	/** The depth pre-pass draws exactly the same picture. */
+	public void testDepthPrepassMatches() {
+		for (boolean smooth : new boolean[] { false, true }) {
+			int[] plain = render(smooth, false);
+			int[] prepassed = render(smooth, true);
+			int drawn = 0;
+			for (int i = 0; i < plain.length; i++) {
+				assertEquals("pixel " + i, plain[i], prepassed[i]);
+				if (plain[i] != (Color.gray.getRGB() & 0xFFFFFF))
+					drawn++;
+			}
+			assertTrue(drawn > 1000);
+		}
+	}
+
+	@Test
+	/** Drawing a tile at a time draws exactly the same picture. */
+	public void testTileBinningMatches() {
+		for (boolean smooth : new boolean[] { false, true }) {
+			for (boolean prepass : new boolean[] { false, true }) {
+				int[] plain = render(smooth, false);
+				int[] binned = render(smooth, prepass, true);
+				for (int i = 0; i < plain.length; i++)
+					assertEquals("pixel " + i, plain[i], binned[i]);
+			}
+		}
+	}
+
+	@Test
+	/**
+	 * A direct framebuffer draws the same picture, and writes it out as the
+	 * same bytes.
+	 */
+	public void testDirectFramebuffer() throws IOException {
+		for (boolean smooth : new boolean[] { false, true }) {
+			Framebuffer heap = render(new Framebuffer(100, 100), smooth, true, false);
+			Framebuffer direct = render(new Framebuffer(100, 100, true), smooth, true, false);
+			assertTrue(direct.isDirect());
+			int[] expected = pixels(heap);
+			int[] actual = pixels(direct);
+			for (int i = 0; i < expected.length; i++)
+				assertEquals("pixel " + i, expected[i], actual[i]);
+
+			ByteArrayOutputStream heapBytes = new ByteArrayOutputStream();
+			heap.writeTo(Channels.newChannel(heapBytes));
+			ByteArrayOutputStream directBytes = new ByteArrayOutputStream();
+			direct.writeTo(Channels.newChannel(directBytes));
+			assertArrayEquals(heapBytes.toByteArray(), directBytes.toByteArray());
+			assertEquals(expected[4321], ByteBuffer.wrap(directBytes.toByteArray()).getInt(4321 * 4));
+		}
+
+		// going back to float depths after quantized ones keeps them direct
+		Framebuffer direct = new Framebuffer(100, 100, true);
+		direct.setDepthBits(16, false);
+		direct.setDepthBits(32, false);
+		assertNull(direct.getDepthBuffer());
+		int[] expected = pixels(render(new Framebuffer(100, 100), true, true, false));
+		int[] actual = pixels(render(direct, true, true, false));
+		for (int i = 0; i < expected.length; i++)
+			assertEquals("pixel " + i, expected[i], actual[i]);
+	}
+
+	@Test
+	/** Drawing the frame in strips draws exactly the same picture. */
+	public void testStripsMatch() throws IOException {
+		for (boolean smooth : new boolean[] { false, true }) {
+			int[] plain = render(smooth, false);
+			for (int stripHeight : new int[] { 1, 7, 100 }) {
+				StripRenderer strips = new StripRenderer(100, 100, stripHeight);
+				strips.getRenderer().setSmoothShading(smooth);
+				int[] drawn = render(strips);
+				for (int i = 0; i < plain.length; i++)
+					assertEquals("strips of " + stripHeight + ", pixel " + i, plain[i], drawn[i]);
+			}
+		}
+	}
+
+	@Test
+	/** Shadows fall the same in strips as over the whole frame. */
+	public void testStripsShadowed() throws IOException {
+		FrameRenderer renderer = new FrameRenderer(100, 100);
+		renderer.setShadows(true);
+		renderer.render(overlapping(), new Vector3D(0, 0, -1), Color.white, Color.gray);
+		int[] plain = pixels(renderer.getFramebuffer());
+		boolean shadowed = false;
+		int[] unshadowed = render(false, false);
+		for (int i = 0; i < plain.length; i++)
+			shadowed |= plain[i] != unshadowed[i];
+		assertTrue("nothing was in shadow", shadowed);
+
+		for (int stripHeight : new int[] { 1, 7 }) {
+			StripRenderer strips = new StripRenderer(100, 100, stripHeight);
+			strips.getRenderer().setShadows(true);
+			int[] drawn = render(strips);
+			for (int i = 0; i < plain.length; i++)
+				assertEquals("strips of " + stripHeight + ", pixel " + i, plain[i], drawn[i]);
+		}
+	}
+
+	/** Renders the overlapping triangles in strips and reads the pixels back. */
+	private static int[] render(StripRenderer strips) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		strips.render(overlapping(), new Vector3D(0, 0, -1), Color.white, Color.gray, ImageEncoder.forName("ppm"),
+				Channels.newChannel(bytes));
+		byte[] ppm = bytes.toByteArray();
+		int[] pixels = new int[100 * 100];
+		int header = ppm.length - pixels.length * 3;
+		for (int i = 0; i < pixels.length; i++) {
+			int j = header + i * 3;
+			pixels[i] = (ppm[j] & 0xFF) << 16 | (ppm[j + 1] & 0xFF) << 8 | ppm[j + 2] & 0xFF;
+		}
+		return pixels;
+	}
+
+	@Test
+	/**
+	 * A lazily cleared framebuffer draws the same picture as one cleared
+	 * every frame, however the frame is drawn, and over whatever was drawn
+	 * in it before.
+	 */
+	public void testLazyClearMatches() {
+		for (boolean smooth : new boolean[] { false, true }) {
+			for (boolean prepass : new boolean[] { false, true }) {
+				for (boolean binned : new boolean[] { false, true }) {
+					for (int bits : new int[] { 32, 16 }) {
+						Framebuffer eager = new Framebuffer(100, 100);
+						eager.setDepthBits(bits, false);
+						int[] plain = pixels(render(eager, smooth, prepass, binned));
+						Framebuffer framebuffer = new Framebuffer(100, 100);
+						framebuffer.setDepthBits(bits, false);
+						framebuffer.setLazyClear(true);
+						FrameRenderer renderer = new FrameRenderer(framebuffer);
+						renderer.setSmoothShading(smooth);
+						renderer.setDepthPrepass(prepass);
+						renderer.setTileBinning(binned);
+						// a frame moved across, to leave things behind
+						renderer.render(overlapping().transformed(Transform.newTranslation(40, 30, 0)),
+								new Vector3D(0, 0, -1), Color.white, Color.gray);
+						renderer.render(overlapping(), new Vector3D(0, 0, -1), Color.white, Color.gray);
+						assertArrayEquals(plain, pixels(framebuffer));
+					}
+				}
+			}
+		}
+
+		// untouched tiles read back as the background, both ways round
+		Framebuffer framebuffer = new Framebuffer(150, 70, true);
+		framebuffer.setLazyClear(true);
+		framebuffer.clear(Color.red);
+		assertEquals(Color.red.getRGB() & 0xFFFFFF, framebuffer.getRGB(framebuffer.index(149, 69)));
+		int[] row = new int[150];
+		framebuffer.getRow(69, row, 0);
+		assertEquals(Color.red.getRGB() & 0xFFFFFF, row[100]);
+		assertEquals((float) Integer.MAX_VALUE, framebuffer.getDepth(framebuffer.index(120, 10)), 0);
+		framebuffer.setLazyClear(false);
+		assertEquals(Color.red.getRGB() & 0xFFFFFF, framebuffer.getRGB(framebuffer.index(3, 3)));
+	}
+
+	@Test
+	/**
+	 * Drawing with a viewport scale draws the same picture as drawing a
+	 * scaled copy of the scene.
+	 */
+	public void testViewportScale() {
+		BufferedImage image = new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < 8; y++)
+			for (int x = 0; x < 8; x++)
+				image.setRGB(x, y, x * 0x200000 + y * 0x2000);
+		float[] uvs = new float[5 * 6];
+		for (int i = 0; i < uvs.length; i++)
+			uvs[i] = (i * 7 % 11) / 10f;
+
+		// smooth, pre-pass, binned, antialiasing samples, textured
+		int[][] settings = { { 0, 0, 0, 0, 0 }, { 1, 0, 0, 0, 0 }, { 1, 1, 0, 0, 0 }, { 0, 0, 1, 0, 0 },
+				{ 1, 0, 1, 0, 0 }, { 0, 0, 0, 4, 0 }, { 0, 0, 0, 0, 1 } };
+		for (int[] setting : settings) {
+			int[][] drawn = new int[2][];
+			for (int scaled = 0; scaled < 2; scaled++) {
+				FrameRenderer renderer = new FrameRenderer(50, 50);
+				renderer.setSmoothShading(setting[0] == 1);
+				renderer.setDepthPrepass(setting[1] == 1);
+				renderer.setTileBinning(setting[2] == 1);
+				renderer.setAntialiasing(setting[3]);
+				Scene scene = overlapping();
+				if (setting[4] == 1)
+					scene.setUvMap(new UvMap(new Texture(image), uvs));
+				if (scaled == 1)
+					renderer.setViewportScale(0.5f);
+				else
+					scene = scene.transformed(Transform.newScale(0.5f, 0.5f, 0.5f));
+				renderer.render(scene, new Vector3D(0, 0, -1), Color.white, Color.gray);
+				Framebuffer framebuffer = renderer.getFramebuffer();
+				drawn[scaled] = new int[50 * 50];
+				for (int i = 0; i < drawn[scaled].length; i++)
+					drawn[scaled][i] = framebuffer.getRGB(i);
+			}
+			for (int i = 0; i < drawn[0].length; i++)
+				assertEquals(Arrays.toString(setting) + ", pixel " + i, drawn[0][i], drawn[1][i]);
+		}
+
+		try {
+			new FrameRenderer(10, 10).setViewportScale(0);
+			fail("set a viewport scale of 0");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
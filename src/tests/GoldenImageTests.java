@@ -0,0 +1,166 @@
+package tests;
+
+import static org.junit.Assert.fail;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import renderer.CameraPose;
+import renderer.GUI;
+import renderer.Scene;
+import renderer.SceneLoader;
+import renderer.SequenceRenderer;
+
+/**
+ * Renders every model in data at a few fixed poses and compares the pictures
+ * with the reference images in data/golden, so a change that is only meant to
+ * make rendering faster can be checked to leave the pictures alone. How long
+ * they take is checked separately, by TimingTests.
+ *
+ * Run main to write the reference images again, after a change that is meant
+ * to change the pictures.
+ */
+public class GoldenImageTests {
+
+	public static final File DATA = new File("data");
+	public static final File GOLDEN = new File(DATA, "golden");
+
+	static final CameraPose[] POSES = { new CameraPose(0, 0), new CameraPose(0.3f, 1f),
+			new CameraPose(-0.5f, 2.5f), new CameraPose(0.8f, 4f) };
+
+	/** How far apart each channel of a pixel can be and still match. */
+	public static final int CHANNEL_TOLERANCE = 2;
+	/** The fraction of the pixels that can be further apart than that. */
+	public static final double PIXEL_TOLERANCE = 0.001;
+
+	@Test
+	public void testImagesMatch() throws IOException {
+		checkImages(false, false);
+	}
+
+	@Test
+	/** The optional stages that are meant to draw the same picture do. */
+	public void testOptionalStagesMatch() throws IOException {
+		checkImages(true, false);
+		checkImages(false, true);
+	}
+
+	@Test
+	/** Quantized depths can't tell as much apart, but enough for these. */
+	public void testQuantizedDepthMatches() throws IOException {
+		checkImages(false, false, 24, false);
+		checkImages(false, false, 16, false);
+		checkImages(true, false, 16, true);
+	}
+
+	private static void checkImages(boolean prepass, boolean binned) throws IOException {
+		checkImages(prepass, binned, 32, false);
+	}
+
+	private static void checkImages(boolean prepass, boolean binned, int depthBits, boolean reversed)
+			throws IOException {
+		for (File model : models()) {
+			BufferedImage[] images = render(model, prepass, binned, depthBits, reversed);
+			for (int i = 0; i < images.length; i++) {
+				File reference = reference(model, i);
+				if (!reference.exists())
+					fail("no reference image " + reference + ", run GoldenImageTests.main to make it");
+				String problem = compare(ImageIO.read(reference), images[i]);
+				if (problem != null)
+					fail(reference.getName() + (prepass ? " with pre-pass" : "") + (binned ? " with binning" : "")
+							+ (depthBits != 32 ? " with " + depthBits + " bit depth" : "") + ": " + problem);
+			}
+		}
+	}
+
+	/**
+	 * Returns why two images don't match, or null if they do.
+	 */
+	public static String compare(BufferedImage expected, BufferedImage actual) {
+		if (expected.getWidth() != actual.getWidth() || expected.getHeight() != actual.getHeight())
+			return "size is " + actual.getWidth() + "x" + actual.getHeight() + ", not " + expected.getWidth() + "x"
+					+ expected.getHeight();
+
+		int width = expected.getWidth();
+		int height = expected.getHeight();
+		int[] a = expected.getRGB(0, 0, width, height, null, 0, width);
+		int[] b = actual.getRGB(0, 0, width, height, null, 0, width);
+		int different = 0;
+		int first = -1;
+		for (int i = 0; i < a.length; i++) {
+			for (int shift = 0; shift < 24; shift += 8) {
+				if (Math.abs(((a[i] >> shift) & 0xFF) - ((b[i] >> shift) & 0xFF)) > CHANNEL_TOLERANCE) {
+					if (different++ == 0)
+						first = i;
+					break;
+				}
+			}
+		}
+		if (different > a.length * PIXEL_TOLERANCE)
+			return different + " pixels differ, the first at (" + first % width + ", " + first / width + ")";
+		return null;
+	}
+
+	private static BufferedImage[] render(File model, boolean prepass, boolean binned, int depthBits,
+			boolean reversed) throws IOException {
+		SequenceRenderer sequence = sequence(model);
+		try {
+			sequence.setDepthPrepass(prepass);
+			sequence.setTileBinning(binned);
+			sequence.setDepthBits(depthBits, reversed);
+			BufferedImage[] images = new BufferedImage[POSES.length];
+			for (int i = 0; i < POSES.length; i++)
+				images[i] = sequence.renderFrame(POSES[i]);
+			return images;
+		} finally {
+			sequence.close();
+		}
+	}
+
+	static SequenceRenderer sequence(File model) throws IOException {
+		Scene scene = SceneLoader.load(model);
+		return new SequenceRenderer(scene, GUI.CANVAS_WIDTH, GUI.CANVAS_HEIGHT, 1);
+	}
+
+	static List<File> models() {
+		File[] files = DATA.listFiles();
+		if (files == null)
+			fail("no models in " + DATA.getAbsolutePath());
+		List<File> models = new ArrayList<File>();
+		for (File file : files)
+			if (file.getName().endsWith(".txt"))
+				models.add(file);
+		// the same order every time
+		File[] sorted = models.toArray(new File[models.size()]);
+		Arrays.sort(sorted);
+		return Arrays.asList(sorted);
+	}
+
+	static String name(File model) {
+		return model.getName().replaceFirst("\\.txt$", "");
+	}
+
+	private static File reference(File model, int pose) {
+		return new File(GOLDEN, name(model) + "-" + pose + ".png");
+	}
+
+	/**
+	 * Writes the reference images for every model.
+	 */
+	public static void main(String[] args) throws IOException {
+		GOLDEN.mkdirs();
+		for (File model : models()) {
+			BufferedImage[] rendered = render(model, false, false, 32, false);
+			for (int i = 0; i < rendered.length; i++)
+				ImageIO.write(rendered[i], "png", reference(model, i));
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import renderer.LightSet;
+import renderer.LightTiles;
+import renderer.Transform;
+
+public class LightTests {
+
+	@Test
+	/** A point light only lands in the tiles its range reaches. */
+	public void testTileCulling() {
+		LightSet lights = new LightSet();
+		lights.addPoint(16, 16, 0, 255, 255, 255, 10);
+		lights.addPoint(300, 300, 0, 255, 255, 255, 40);
+
+		LightTiles tiles = new LightTiles(600, 600);
+		tiles.build(lights);
+
+		int corner = tiles.tileAt(5, 5);
+		assertEquals(1, tiles.getEnd(corner) - tiles.getStart(corner));
+		assertEquals(0, tiles.getLights()[tiles.getStart(corner)]);
+
+		int middle = tiles.tileAt(300, 300);
+		assertEquals(1, tiles.getEnd(middle) - tiles.getStart(middle));
+		assertEquals(1, tiles.getLights()[tiles.getStart(middle)]);
+
+		// the second light reaches the tiles around it, but not the corner
+		// tile diagonally beyond its range
+		int near = tiles.tileAt(270, 300);
+		assertEquals(1, tiles.getEnd(near) - tiles.getStart(near));
+		int far = tiles.tileAt(590, 590);
+		assertEquals(0, tiles.getEnd(far) - tiles.getStart(far));
+
+		int total = 0;
+		for (int t = 0; t < tiles.getTileCount(); t++)
+			total += tiles.getEnd(t) - tiles.getStart(t);
+		assertTrue(total < 20);
+	}
+
+	@Test
+	/** Point lights fade out with distance and only light what faces them. */
+	public void testPointLight() {
+		LightSet lights = new LightSet();
+		lights.addPoint(0, 0, -10, 100, 100, 100, 20);
+		int[] all = { 0 };
+		float[] out = new float[3];
+
+		// facing the light, half way to the edge of its range
+		lights.light(0, 0, 0, 0, 0, -1, all, 0, 1, out);
+		assertEquals(25f, out[0], 0.001f);
+
+		// facing away
+		lights.light(0, 0, 0, 0, 0, 1, all, 0, 1, out);
+		assertEquals(0f, out[0], 0.001f);
+
+		// out of range
+		lights.light(0, 0, 15, 0, 0, -1, all, 0, 1, out);
+		assertEquals(0f, out[0], 0.001f);
+
+		// not in the list
+		lights.light(0, 0, 0, 0, 0, -1, all, 0, 0, out);
+		assertEquals(0f, out[0], 0.001f);
+	}
+
+	@Test
+	/**
+	 * A point just off the screen is lit by a light that reaches it, even if
+	 * the light doesn't reach any tile on the screen.
+	 */
+	public void testOffScreen() {
+		LightSet lights = new LightSet();
+		lights.addPoint(-40, 10, 0, 100, 100, 100, 30);
+		LightTiles tiles = new LightTiles(64, 64);
+		tiles.build(lights);
+
+		int edge = tiles.tileAt(0, 10);
+		assertEquals(0, tiles.getEnd(edge) - tiles.getStart(edge));
+
+		int off = tiles.tileAt(-15, 10);
+		assertEquals(tiles.getTileCount(), off);
+		assertEquals(tiles.getTileCount(), tiles.tileAt(10, 64));
+		float[] out = new float[3];
+		lights.light(-15, 10, 0, -1, 0, 0, tiles.getLights(), tiles.getStart(off), tiles.getEnd(off), out);
+		assertTrue(out[0] > 0);
+	}
+
+	@Test
+	/** An uneven scale stretches a light's range by the most it stretches. */
+	public void testUnevenScale() {
+		LightSet lights = new LightSet();
+		lights.addPoint(1, 2, 3, 255, 255, 255, 10);
+		LightSet scaled = lights.transformed(Transform.newScale(2, 5, 3));
+		assertEquals(50, scaled.getRange(0), 1e-4);
+		assertEquals(10, scaled.getPointY(0), 1e-4);
+	}
+}
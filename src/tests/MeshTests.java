@@ -0,0 +1,124 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import renderer.Mesh;
+import renderer.Pipeline;
+import renderer.Polygon;
+import renderer.Scene;
+import renderer.Transform;
+import renderer.Vector3D;
+
+public class MeshTests {
+
+	private static List<Polygon> square() {
+		int[] col = new int[] { 0, 0, 0 };
+		List<Polygon> polys = new ArrayList<Polygon>();
+		polys.add(new Polygon(new float[] { 0, 0, 0, 10, 0, 0, 10, 10, 0 }, col));
+		polys.add(new Polygon(new float[] { 0, 0, 0, 10, 10, 0, 0, 10, 0 }, col));
+		return polys;
+	}
+
+	@Test
+	/** Two triangles sharing an edge only have four different vertices. */
+	public void testWeldSharedEdge() {
+		List<Polygon> polys = square();
+		Mesh mesh = Mesh.weld(polys, Mesh.WELD_EPSILON);
+
+		assertEquals(4, mesh.getVertexCount());
+		assertEquals(2, mesh.getPolygonCount());
+
+		// the polygons now point at the same vertex objects
+		assertSame(polys.get(0).getVertices()[0], polys.get(1).getVertices()[0]);
+		assertSame(polys.get(0).getVertices()[2], polys.get(1).getVertices()[1]);
+	}
+
+	@Test
+	/** Only vertices within epsilon of each other are welded. */
+	public void testWeldEpsilon() {
+		int[] col = new int[] { 0, 0, 0 };
+		List<Polygon> polys = new ArrayList<Polygon>();
+		polys.add(new Polygon(new float[] { 0, 0, 0, 10, 0, 0, 10, 10, 0 }, col));
+		polys.add(new Polygon(new float[] { 0.00001f, 0, 0, 10.5f, 0, 0, 10, 10, 0 }, col));
+
+		Mesh mesh = Mesh.weld(polys, Mesh.WELD_EPSILON);
+
+		assertEquals(4, mesh.getVertexCount());
+		assertSame(polys.get(0).getVertices()[0], polys.get(1).getVertices()[0]);
+		assertNotSame(polys.get(0).getVertices()[1], polys.get(1).getVertices()[1]);
+	}
+
+	@Test
+	/** The normals of a flat mesh all point straight out of it. */
+	public void testVertexNormals() {
+		List<Polygon> polys = square();
+		Mesh mesh = Mesh.weld(polys, Mesh.WELD_EPSILON);
+
+		for (Vector3D n : mesh.getNormals())
+			assertTrue(n.equals(new Vector3D(0, 0, 1)));
+	}
+
+	@Test
+	/** Normals are rotated along with the mesh rather than worked out again. */
+	public void testNormalsFollowTransform() {
+		List<Polygon> polys = square();
+		Mesh mesh = Mesh.weld(polys, Mesh.WELD_EPSILON);
+		mesh.getNormals();
+
+		Mesh turned = mesh.transformed(Transform.newYRotation((float) Math.PI / 2));
+		for (Vector3D n : turned.getNormals())
+			assertEquals(1, n.x, 1e-5);
+	}
+
+	@Test
+	/**
+	 * Normals stay at right angles to a slope that is stretched more one way
+	 * than another.
+	 */
+	public void testNormalsFollowUnevenScale() {
+		int[] col = new int[] { 0, 0, 0 };
+		List<Polygon> slope = new ArrayList<Polygon>();
+		slope.add(new Polygon(new float[] { 0, 0, 0, 10, 0, 10, 0, 10, 0 }, col));
+		Mesh mesh = Mesh.weld(slope, Mesh.WELD_EPSILON);
+		mesh.getNormals();
+		Mesh stretched = mesh.transformed(Transform.newScale(1, 2, 3));
+
+		List<Polygon> expected = new ArrayList<Polygon>();
+		expected.add(new Polygon(new float[] { 0, 0, 0, 10, 0, 30, 0, 20, 0 }, col));
+		Vector3D normal = Mesh.weld(expected, Mesh.WELD_EPSILON).getNormals()[0];
+		for (Vector3D n : stretched.getNormals())
+			assertEquals(1, n.dotProduct(normal), 1e-5);
+	}
+
+	@Test
+	/** Rotating a welded scene moves the polygons the same as an unwelded one. */
+	public void testRotateWelded() {
+		List<Polygon> plain = square();
+		List<Polygon> welded = square();
+		Vector3D light = new Vector3D(0, 0, -1);
+
+		Scene plainScene = new Scene(plain, light);
+		Scene weldedScene = new Scene(welded, light, Mesh.weld(welded, Mesh.WELD_EPSILON));
+
+		Pipeline.rotateScene(plainScene, 0.4f, 0.7f);
+		Pipeline.rotateScene(weldedScene, 0.4f, 0.7f);
+
+		for (int i = 0; i < plain.size(); i++) {
+			Vector3D[] a = plain.get(i).getVertices();
+			Vector3D[] b = welded.get(i).getVertices();
+			for (int v = 0; v < 3; v++)
+				assertTrue(a[v].equals(b[v]));
+		}
+		assertSame(welded.get(0).getVertices()[0], welded.get(1).getVertices()[0]);
+	}
+}
+
+// code for COMP261 assignments
@@ -0,0 +1,72 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import renderer.MortonOrder;
+import renderer.Polygon;
+
+public class MortonOrderTests {
+
+	private static Polygon triangleAt(float x, float y) {
+		return new Polygon(new float[] { x - 1, y - 1, 0, x + 1, y - 1, 0, x, y + 2, 0 }, new int[] { 0, 0, 0 });
+	}
+
+	@Test
+	/** The bits of x and y alternate, x first. */
+	public void testEncode() {
+		assertEquals(0, MortonOrder.encode(0, 0));
+		assertEquals(1, MortonOrder.encode(1, 0));
+		assertEquals(2, MortonOrder.encode(0, 1));
+		assertEquals(3, MortonOrder.encode(1, 1));
+		assertEquals(0x30, MortonOrder.encode(4, 4));
+		// off the screen is clamped
+		assertEquals(0, MortonOrder.encode(-20, -5));
+		assertEquals(0xFFFFFFFF, MortonOrder.encode(1e6f, 1e6f));
+	}
+
+	@Test
+	/** Polygons in the same quadrant are drawn one after another. */
+	public void testOrder() {
+		List<Polygon> polys = new ArrayList<Polygon>();
+		polys.add(triangleAt(10, 10));
+		polys.add(triangleAt(500, 500));
+		polys.add(triangleAt(20, 20));
+		polys.add(triangleAt(510, 500));
+
+		MortonOrder morton = new MortonOrder();
+		int[] order = morton.update(polys, false);
+		assertEquals(4, morton.getCount());
+		assertEquals(0, order[0]);
+		assertEquals(2, order[1]);
+		assertEquals(1, order[2]);
+		assertEquals(3, order[3]);
+	}
+
+	@Test
+	/** Small movements keep the old order, bigger ones sort again. */
+	public void testReuse() {
+		List<Polygon> polys = new ArrayList<Polygon>();
+		polys.add(triangleAt(10, 10));
+		polys.add(triangleAt(300, 300));
+
+		MortonOrder morton = new MortonOrder();
+		morton.update(polys, false);
+		morton.update(polys, false);
+		assertEquals(1, morton.getSortCount());
+
+		polys.set(0, triangleAt(12, 11));
+		morton.update(polys, false);
+		assertEquals(1, morton.getSortCount());
+
+		polys.set(0, triangleAt(400, 400));
+		int[] order = morton.update(polys, false);
+		assertEquals(2, morton.getSortCount());
+		assertEquals(1, order[0]);
+		assertEquals(0, order[1]);
+	}
+}
@@ -0,0 +1,126 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import renderer.CameraPose;
+import renderer.FrameRenderer;
+import renderer.MeshFile;
+import renderer.OutOfCoreRenderer;
+import renderer.Polygon;
+import renderer.Scene;
+import renderer.SceneLoader;
+import renderer.Transform;
+import renderer.Vector3D;
+
+public class OutOfCoreTests {
+
+	private static final File MODEL = new File("data/monkey.txt");
+
+	private static MeshFile convert() throws IOException {
+		File mesh = File.createTempFile("monkey", ".mesh");
+		mesh.deleteOnExit();
+		MeshFile.convert(MODEL, mesh);
+		return MeshFile.open(mesh);
+	}
+
+	@Test
+	/** A converted model reads back as the same polygons. */
+	public void testConvert() throws IOException {
+		Scene scene = SceneLoader.load(MODEL);
+		MeshFile mesh = convert();
+		try {
+			List<Polygon> expected = scene.getPolygons();
+			assertEquals(expected.size(), mesh.getPolygonCount());
+			assertEquals(scene.getLight().x, mesh.getLight().x, 0);
+			assertEquals(scene.getLight().z, mesh.getLight().z, 0);
+
+			List<Polygon> read = new ArrayList<Polygon>();
+			assertEquals(expected.size() - 10, mesh.read(10, expected.size(), Transform.identity(), read));
+			for (int i = 0; i < read.size(); i++) {
+				Polygon a = expected.get(i + 10), b = read.get(i);
+				assertEquals(a.getReflectance(), b.getReflectance());
+				for (int v = 0; v < 3; v++) {
+					assertEquals(a.getVertices()[v].x, b.getVertices()[v].x, 0);
+					assertEquals(a.getVertices()[v].y, b.getVertices()[v].y, 0);
+					assertEquals(a.getVertices()[v].z, b.getVertices()[v].z, 0);
+					assertTrue(b.getVertices()[v].x >= mesh.getCorners()[0].x);
+					assertTrue(b.getVertices()[v].z <= mesh.getCorners()[7].z);
+				}
+			}
+		} finally {
+			mesh.close();
+		}
+	}
+
+	@Test
+	/** Drawing the model in batches draws the same picture as all at once. */
+	public void testBatchesMatch() throws IOException {
+		Scene loaded = SceneLoader.load(MODEL);
+		// flat shaded, as the batches are
+		Scene scene = new Scene(loaded.getPolygons(), loaded.getLight());
+		MeshFile mesh = convert();
+		try {
+			OutOfCoreRenderer outOfCore = new OutOfCoreRenderer(mesh, 1);
+			Transform view = outOfCore.view(new CameraPose(0.3f, 0.5f), 200, 150);
+			FrameRenderer whole = new FrameRenderer(200, 150);
+			whole.render(scene.transformed(view), scene.getLight(), Color.white, new Color(128, 128, 128));
+
+			for (int batchSize : new int[] { 1, 100, 100000 }) {
+				FrameRenderer batched = new FrameRenderer(200, 150);
+				new OutOfCoreRenderer(mesh, batchSize).render(batched, view);
+				int drawn = 0;
+				for (int i = 0; i < 200 * 150; i++) {
+					assertEquals("batches of " + batchSize + ", pixel " + i, whole.getFramebuffer().getRGB(i),
+							batched.getFramebuffer().getRGB(i));
+					if (whole.getFramebuffer().getRGB(i) != 0x808080)
+						drawn++;
+				}
+				assertTrue(drawn > 2000);
+			}
+		} finally {
+			mesh.close();
+		}
+	}
+
+	@Test
+	/**
+	 * With shadows on, a model drawn in one batch is shadowed the same as
+	 * when it is drawn all at once.
+	 */
+	public void testShadowsMatch() throws IOException {
+		Scene loaded = SceneLoader.load(MODEL);
+		Scene scene = new Scene(loaded.getPolygons(), loaded.getLight());
+		MeshFile mesh = convert();
+		try {
+			OutOfCoreRenderer outOfCore = new OutOfCoreRenderer(mesh, 100000);
+			Transform view = outOfCore.view(new CameraPose(0.3f, 0.5f), 200, 150);
+			FrameRenderer whole = new FrameRenderer(200, 150);
+			whole.setShadows(true);
+			whole.render(scene.transformed(view), scene.getLight(), Color.white, new Color(128, 128, 128));
+			FrameRenderer unshadowed = new FrameRenderer(200, 150);
+			unshadowed.render(scene.transformed(view), scene.getLight(), Color.white, new Color(128, 128, 128));
+
+			FrameRenderer batched = new FrameRenderer(200, 150);
+			batched.setShadows(true);
+			outOfCore.render(batched, view);
+			int shadowed = 0;
+			for (int i = 0; i < 200 * 150; i++) {
+				assertEquals("pixel " + i, whole.getFramebuffer().getRGB(i), batched.getFramebuffer().getRGB(i));
+				if (whole.getFramebuffer().getRGB(i) != unshadowed.getFramebuffer().getRGB(i))
+					shadowed++;
+			}
+			assertTrue(shadowed > 0);
+		} finally {
+			mesh.close();
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import renderer.Framebuffer;
+import renderer.QuantizedDepthBuffer;
+
+public class QuantizedDepthTests {
+
+	@Test
+	/** Depths come back to within a step of what was stored. */
+	public void testRoundTrip() {
+		for (int bits : new int[] { 16, 24 }) {
+			for (boolean reversed : new boolean[] { false, true }) {
+				QuantizedDepthBuffer buffer = new QuantizedDepthBuffer(4, 4, bits, reversed);
+				buffer.setRange(-50, 250);
+				for (float z = -50; z <= 250; z += 7.3f) {
+					buffer.setDepth(5, z);
+					// half a step for the rounding, and a little more for the floats
+					assertEquals(z, buffer.getDepth(5), buffer.getStep() * 2);
+				}
+			}
+		}
+	}
+
+	@Test
+	/** The nearer of two depths wins, whichever way round they are stored. */
+	public void testDepthTest() {
+		for (int bits : new int[] { 16, 24 }) {
+			for (boolean reversed : new boolean[] { false, true }) {
+				Framebuffer framebuffer = new Framebuffer(4, 4);
+				framebuffer.setDepthBits(bits, reversed);
+				framebuffer.setDepthRange(0, 100);
+				framebuffer.clear(java.awt.Color.black);
+
+				assertTrue(framebuffer.depthTest(3, 60));
+				assertTrue(framebuffer.depthTest(3, 40));
+				assertFalse(framebuffer.depthTest(3, 50));
+				// further than the range is clamped to it, but still drawn
+				// over a cleared pixel
+				assertTrue(framebuffer.depthTest(4, 1000));
+				assertTrue(framebuffer.depthEqual(3, 40));
+				assertFalse(framebuffer.depthEqual(3, 40));
+			}
+		}
+	}
+
+	@Test
+	/** Two depths closer than a step can't be told apart. */
+	public void testPrecision() {
+		QuantizedDepthBuffer buffer = new QuantizedDepthBuffer(1, 1, 16, false);
+		buffer.setRange(0, 65533);
+		assertEquals(1, buffer.getStep(), 1e-6);
+		assertEquals(buffer.quantize(10.1f), buffer.quantize(10.2f));
+		assertTrue(buffer.quantize(10) < buffer.quantize(12));
+	}
+}
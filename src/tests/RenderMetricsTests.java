@@ -0,0 +1,108 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import renderer.FrameRenderer;
+import renderer.Polygon;
+import renderer.RenderMetrics;
+import renderer.Scene;
+import renderer.Vector3D;
+
+public class RenderMetricsTests {
+
+	@Test
+	/** A name registered twice is shared, and only goes once both release it. */
+	public void testRegisterAndRelease() throws Exception {
+		ObjectName name = new ObjectName("renderer:type=RenderMetrics,name=" + ObjectName.quote("test"));
+		RenderMetrics first = RenderMetrics.register("test");
+		RenderMetrics second = RenderMetrics.register("test");
+		assertTrue(first == second);
+		assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+
+		first.release();
+		assertTrue(RenderMetrics.isRegistered("test"));
+		assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+		second.release();
+		assertFalse(RenderMetrics.isRegistered("test"));
+		assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+		// releasing too often does nothing
+		second.release();
+
+		// and it can be registered again
+		RenderMetrics again = RenderMetrics.register("test");
+		assertTrue(again != first);
+		assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+		again.release();
+	}
+
+	@Test
+	/** Stages that didn't run in a frame don't count towards their means. */
+	public void testStagesRun() {
+		RenderMetrics metrics = new RenderMetrics(true);
+		long[] nanos = new long[RenderMetrics.STAGES];
+		long[] counters = new long[RenderMetrics.COUNTERS];
+		nanos[RenderMetrics.SHADOW] = 1000;
+		nanos[RenderMetrics.CULL] = 10;
+		metrics.recordFrame(nanos, 1 << RenderMetrics.SHADOW | 1 << RenderMetrics.CULL, counters);
+		nanos[RenderMetrics.SHADOW] = 0;
+		nanos[RenderMetrics.CULL] = 30;
+		metrics.recordFrame(nanos, 1 << RenderMetrics.CULL, counters);
+
+		assertEquals(1000, metrics.getMeanStageNanos("shadow"), 0);
+		assertEquals(1, sum(metrics.getStageHistogram("shadow")));
+		assertEquals(0, metrics.getLastShadowNanos());
+		assertEquals(20, metrics.getMeanStageNanos("cull"), 0);
+		assertEquals(2, sum(metrics.getStageHistogram("cull")));
+	}
+
+	private static long sum(long[] histogram) {
+		long total = 0;
+		for (long n : histogram)
+			total += n;
+		return total;
+	}
+
+	@Test
+	/**
+	 * Only polygons actually drawn count as rasterized: not those the depth
+	 * pre-pass finds hidden, nor those off the screen when tile binning.
+	 */
+	public void testPolygonsRasterized() {
+		int[] col = { 200, 200, 200 };
+		List<Polygon> polys = new ArrayList<Polygon>();
+		// a big square in front, a small triangle behind it, and one off
+		// the screen
+		polys.add(new Polygon(new float[] { 0, 0, 0, 100, 0, 0, 0, 100, 0 }, col));
+		polys.add(new Polygon(new float[] { 100, 0, 0, 100, 100, 0, 0, 100, 0 }, col));
+		polys.add(new Polygon(new float[] { 10, 10, 50, 40, 10, 50, 10, 40, 50 }, col));
+		polys.add(new Polygon(new float[] { 200, 200, 0, 250, 200, 0, 200, 250, 0 }, col));
+
+		// pre-pass, binned, rejected by the pre-pass, rasterized
+		int[][] cases = { { 1, 0, 2, 2 }, { 1, 1, 2, 2 }, { 0, 1, 0, 3 } };
+		for (int[] c : cases) {
+			RenderMetrics metrics = new RenderMetrics(true);
+			FrameRenderer renderer = new FrameRenderer(100, 100);
+			renderer.setMetrics(metrics);
+			renderer.setDepthPrepass(c[0] == 1);
+			renderer.setTileBinning(c[1] == 1);
+			renderer.render(new Scene(polys, new Vector3D(0, 0, -1)), new Vector3D(0, 0, -1), Color.white,
+					Color.gray);
+
+			assertEquals(4, metrics.getLastPolygonsSubmitted());
+			assertEquals(0, metrics.getLastPolygonsCulled());
+			assertEquals(c[2], metrics.getLastPolygonsPrepassRejected());
+			assertEquals(c[3], metrics.getLastPolygonsRasterized());
+		}
+	}
+}
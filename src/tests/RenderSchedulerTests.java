@@ -0,0 +1,122 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+
+import renderer.CameraPose;
+import renderer.Framebuffer;
+import renderer.FramebufferPool;
+import renderer.RenderJob;
+import renderer.RenderScheduler;
+import renderer.Scene;
+import renderer.SceneLoader;
+import renderer.SequenceRenderer;
+
+public class RenderSchedulerTests {
+
+	@Test
+	/** Jobs of different sizes run at once draw what rendering them alone does. */
+	public void testJobsMatch() throws IOException, InterruptedException, ExecutionException {
+		Scene scene = SceneLoader.load(new File("data/monkey.txt"));
+		// room for three of the biggest at once, on four threads
+		RenderScheduler scheduler = new RenderScheduler(4, FramebufferPool.bytesFor(128, 128) * 3);
+		List<RenderJob> jobs = new ArrayList<RenderJob>();
+		List<CompletableFuture<BufferedImage>> results = new ArrayList<CompletableFuture<BufferedImage>>();
+		for (int i = 0; i < 40; i++) {
+			int size = i % 2 == 0 ? 64 : 128;
+			RenderJob job = new RenderJob(scene, new CameraPose(0.3f, i * 0.4f), size, size);
+			jobs.add(job);
+			results.add(scheduler.submit(job));
+		}
+
+		for (int i = 0; i < jobs.size(); i++) {
+			RenderJob job = jobs.get(i);
+			BufferedImage image = results.get(i).get();
+			SequenceRenderer sequence = new SequenceRenderer(scene, job.getWidth(), job.getHeight(), 1);
+			BufferedImage expected;
+			try {
+				expected = sequence.renderFrame(job.getPose());
+			} finally {
+				sequence.close();
+			}
+			for (int y = 0; y < image.getHeight(); y++)
+				for (int x = 0; x < image.getWidth(); x++)
+					assertEquals("job " + i + " pixel " + x + "," + y, expected.getRGB(x, y), image.getRGB(x, y));
+			assertTrue(job.getLatencyNanos() >= job.getQueueNanos());
+		}
+
+		assertEquals(40, scheduler.getSubmittedCount());
+		assertEquals(0, scheduler.getFailedCount());
+		assertEquals(0, scheduler.getQueuedCount());
+		FramebufferPool framebuffers = scheduler.getFramebufferPool();
+		assertTrue(framebuffers.getPeakBytes() <= framebuffers.getBudget());
+		assertEquals(0, framebuffers.getLeasedBytes());
+		scheduler.shutdown();
+	}
+
+	@Test
+	/** A job bigger than the whole budget fails, without stopping the others. */
+	public void testOverBudget() throws IOException, InterruptedException, ExecutionException {
+		Scene scene = SceneLoader.load(new File("data/tetras.txt"));
+		RenderScheduler scheduler = new RenderScheduler(2, FramebufferPool.bytesFor(100, 100));
+		CompletableFuture<BufferedImage> big = scheduler.submit(new RenderJob(scene, new CameraPose(0, 0), 200, 200));
+		CompletableFuture<BufferedImage> small = scheduler.submit(new RenderJob(scene, new CameraPose(0, 0), 100, 100));
+		try {
+			big.get();
+			fail("expected the job to fail");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalArgumentException);
+		}
+		assertEquals(100, small.get().getWidth());
+		assertEquals(1, scheduler.getFailedCount());
+		scheduler.shutdown();
+	}
+
+	@Test
+	/** A job submitted after shutting down fails, and isn't counted. */
+	public void testSubmitAfterShutdown() throws IOException, InterruptedException {
+		Scene scene = SceneLoader.load(new File("data/tetras.txt"));
+		RenderScheduler scheduler = new RenderScheduler(1, FramebufferPool.bytesFor(100, 100));
+		scheduler.shutdown();
+		CompletableFuture<BufferedImage> late = scheduler.submit(new RenderJob(scene, new CameraPose(0, 0), 10, 10));
+		try {
+			late.get();
+			fail("expected the job to fail");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof RejectedExecutionException);
+		}
+		assertEquals(0, scheduler.getSubmittedCount());
+		assertEquals(0, scheduler.getQueuedCount());
+		assertEquals(0, scheduler.getPeakQueuedCount());
+	}
+
+	@Test
+	/** Framebuffers given back are lent out again, and idle ones make way. */
+	public void testPoolReuse() throws InterruptedException {
+		FramebufferPool pool = new FramebufferPool(FramebufferPool.bytesFor(10, 10) * 2);
+		Framebuffer a = pool.acquire(10, 10);
+		pool.release(a);
+		assertTrue(pool.acquire(10, 10) == a);
+		pool.release(a);
+		assertEquals(1, pool.getCreatedCount());
+
+		// a bigger one only fits once the idle one is dropped
+		Framebuffer b = pool.acquire(10, 20);
+		assertEquals(2, pool.getCreatedCount());
+		assertEquals(0, pool.getIdleBytes());
+		assertEquals(FramebufferPool.bytesFor(10, 20), pool.getLeasedBytes());
+		pool.release(b);
+	}
+}
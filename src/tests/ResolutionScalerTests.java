@@ -0,0 +1,73 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import renderer.ResolutionScaler;
+
+public class ResolutionScalerTests {
+
+	private static final long MS = 1000000L;
+
+	@Test
+	/** Nothing is scaled down until a frame has been too slow. */
+	public void testStartsWhole() {
+		ResolutionScaler scaler = new ResolutionScaler(16 * MS);
+		assertEquals(1f, scaler.getScale(), 0);
+		assertEquals(600, scaler.scaled(600));
+		scaler.record(10 * MS, 1);
+		assertEquals(1f, scaler.getScale(), 0);
+	}
+
+	@Test
+	/** A slow frame shrinks the next ones to fit the budget. */
+	public void testShrinksToFit() {
+		ResolutionScaler scaler = new ResolutionScaler(16 * MS);
+		scaler.record(64 * MS, 1);
+		float scale = scaler.getScale();
+		assertTrue(scale < 1);
+		assertTrue(64 * scale * scale <= 16);
+		// but not so far that a step bigger would fit too
+		float bigger = scale + 1f / ResolutionScaler.STEPS;
+		assertTrue(64 * bigger * bigger > 16 * 0.9);
+		assertEquals((int) (600 * scale), scaler.scaled(600));
+
+		// however slow it is, it doesn't go below the smallest scale
+		scaler.record(5000 * MS, scale);
+		assertEquals(ResolutionScaler.MIN_SCALE, scaler.getScale(), 0);
+	}
+
+	@Test
+	/** Fast frames bring the scale back up a step at a time. */
+	public void testRecovers() {
+		ResolutionScaler scaler = new ResolutionScaler(16 * MS);
+		scaler.record(1000 * MS, 1);
+		float last = scaler.getScale();
+		assertEquals(ResolutionScaler.MIN_SCALE, last, 0);
+		int frames = 0;
+		while (scaler.getScale() < 1) {
+			scaler.record(1 * MS, scaler.getScale());
+			float scale = scaler.getScale();
+			assertTrue(scale >= last && scale - last <= 1f / ResolutionScaler.STEPS + 1e-6f);
+			last = scale;
+			assertTrue(++frames < 100);
+		}
+
+		scaler.record(1000 * MS, 1);
+		scaler.reset();
+		assertEquals(1f, scaler.getScale(), 0);
+	}
+
+	@Test
+	public void testBadBudget() {
+		try {
+			new ResolutionScaler(0);
+			fail("made a scaler with no budget");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import renderer.FrameRenderer;
+import renderer.Instance;
+import renderer.Polygon;
+import renderer.Scene;
+import renderer.SceneGraph;
+import renderer.SceneNode;
+import renderer.SharedMesh;
+import renderer.Transform;
+import renderer.Vector3D;
+
+public class SceneGraphTests {
+
+	/** A 20 by 20 square facing the viewer. */
+	private static SharedMesh square() {
+		int[] col = new int[] { 200, 200, 200 };
+		List<Polygon> polys = new ArrayList<Polygon>();
+		polys.add(new Polygon(new float[] { 0, 0, 0, 20, 20, 0, 20, 0, 0 }, col));
+		polys.add(new Polygon(new float[] { 0, 0, 0, 0, 20, 0, 20, 20, 0 }, col));
+		return new SharedMesh(new Scene(polys, new Vector3D(0, 0, -1)));
+	}
+
+	@Test
+	/** Moving a parent moves the instances under it. */
+	public void testParentMoves() {
+		SceneNode group = new SceneNode();
+		Instance instance = new Instance(square(), Transform.newTranslation(10, 0, 0), null);
+		group.addChild(instance);
+		assertEquals(10, instance.getWorldCorners()[0].x, 1e-4f);
+
+		group.setTransform(Transform.newTranslation(0, 5, 0));
+		assertEquals(10, instance.getWorldCorners()[0].x, 1e-4f);
+		assertEquals(5, instance.getWorldCorners()[0].y, 1e-4f);
+	}
+
+	@Test
+	/** Instances off the screen are skipped, and the rest are drawn. */
+	public void testCulling() {
+		SharedMesh mesh = square();
+		SceneGraph graph = new SceneGraph();
+		graph.add(mesh, Transform.newTranslation(10, 10, 0), new Color(255, 0, 0));
+		graph.add(mesh, Transform.newTranslation(-100, 10, 0), null);
+		graph.add(mesh, Transform.newTranslation(10, 500, 0), null);
+		// straddles the left edge, so is drawn
+		graph.add(mesh, Transform.newTranslation(-10, 50, 0), null);
+
+		FrameRenderer renderer = new FrameRenderer(100, 100);
+		renderer.setBackground(Color.black);
+		graph.render(renderer, Transform.identity(), Color.white, Color.black);
+		assertEquals(2, graph.getDrawnCount());
+		assertEquals(2, graph.getCulledCount());
+
+		int red = renderer.toImage().getRGB(15, 15) & 0xffffff;
+		assertTrue((red >> 16) > 0);
+		assertEquals(0, red & 0xffff);
+		assertTrue((renderer.toImage().getRGB(2, 55) & 0xffffff) != 0);
+	}
+
+	@Test
+	/**
+	 * A tint is applied as the polygons are shaded, the same as drawing them
+	 * with their reflectances multiplied by it, and placing a mesh with many
+	 * tints doesn't copy its reflectances.
+	 */
+	public void testTint() {
+		SharedMesh mesh = square();
+		Color tint = new Color(255, 128, 64);
+		Scene placed = mesh.place(Transform.newTranslation(10, 10, 0), tint);
+		assertTrue(placed.getTint() == tint);
+		assertTrue(placed.getPolygons().get(0).getReflectance() == mesh.getModel().getPolygons().get(0)
+				.getReflectance());
+
+		List<Polygon> polys = new ArrayList<Polygon>();
+		for (Polygon poly : placed.getPolygons()) {
+			Vector3D[] v = poly.getVertices();
+			polys.add(new Polygon(v[0], v[1], v[2], new Color(200, 100, 50)));
+		}
+		FrameRenderer expected = new FrameRenderer(50, 50);
+		expected.render(new Scene(polys, new Vector3D(0, 0, -1)), new Vector3D(0, 0, -1), Color.white, Color.gray);
+		FrameRenderer tinted = new FrameRenderer(50, 50);
+		tinted.render(placed, new Vector3D(0, 0, -1), Color.white, Color.gray);
+		for (int y = 0; y < 50; y++)
+			for (int x = 0; x < 50; x++)
+				assertEquals(expected.toImage().getRGB(x, y), tinted.toImage().getRGB(x, y));
+
+		for (int i = 0; i < 1000; i++)
+			mesh.place(Transform.identity(), new Color(i));
+	}
+}
@@ -0,0 +1,250 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+
+import org.junit.Test;
+
+import renderer.Scene;
+import renderer.SceneLoadTask;
+import renderer.SceneLoader;
+import renderer.SceneSnapshot;
+import renderer.Vector3D;
+
+public class SceneLoaderTests {
+
+	/**
+	 * Writes a model of the given number of polygons, with the given line
+	 * (counting the light as line 1) replaced by bad, if it isn't null.
+	 */
+	private static File model(int polygons, int badLine, String bad) throws IOException {
+		File file = File.createTempFile("model", ".txt");
+		file.deleteOnExit();
+		FileWriter out = new FileWriter(file);
+		try {
+			out.write("0 0 -1\n");
+			for (int i = 0; i < polygons; i++) {
+				if (i + 2 == badLine)
+					out.write(bad + "\n");
+				else
+					out.write(i + " 0 0 " + i + " 10 0 " + (i + 10) + " 0 5 200 100 50\n");
+			}
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	@Test
+	/** Progress is reported as the file is read, ending at the whole file. */
+	public void testProgress() throws IOException {
+		File file = model(10000, 0, null);
+		final long[] last = new long[3];
+		final int[] reports = new int[1];
+		Scene scene = SceneLoader.load(file, new SceneLoader.Progress() {
+			@Override
+			public void progress(long bytes, long total, int polygons) {
+				assertTrue(bytes >= last[0] && polygons >= last[2]);
+				last[0] = bytes;
+				last[1] = total;
+				last[2] = polygons;
+				reports[0]++;
+			}
+		});
+		assertEquals(10000, scene.getPolygons().size());
+		assertTrue(reports[0] > 1);
+		assertEquals(file.length(), last[0]);
+		assertEquals(file.length(), last[1]);
+		assertEquals(10000, last[2]);
+	}
+
+	@Test
+	/** A line that isn't a polygon fails the load, saying which line. */
+	public void testBadLine() throws IOException {
+		for (String bad : new String[] { "1 2 3", "1 2 3 4 5 6 7 8 x 1 2 3", "1 2 3 4 5 6 7 8 9 1 2 300" }) {
+			File file = model(20, 7, bad);
+			try {
+				SceneLoader.load(file);
+				fail("loaded a bad line: " + bad);
+			} catch (IOException e) {
+				assertTrue(e.getMessage(), e.getMessage().startsWith(file.getName() + ":7: "));
+				// what went wrong with the line is kept
+				assertTrue(e.getCause() instanceof RuntimeException);
+			}
+		}
+	}
+
+	@Test
+	/** Interrupting the loading thread cancels the load. */
+	public void testInterrupt() throws IOException {
+		File file = model(10000, 0, null);
+		Thread.currentThread().interrupt();
+		try {
+			SceneLoader.load(file);
+			fail("the load wasn't cancelled");
+		} catch (InterruptedIOException e) {
+			// expected
+		} finally {
+			Thread.interrupted();
+		}
+	}
+
+	@Test
+	/**
+	 * A background load hands its scene over, and a cancelled one says
+	 * nothing at all.
+	 */
+	public void testTask() throws Exception {
+		final CountDownLatch done = new CountDownLatch(1);
+		final Scene[] loaded = new Scene[1];
+		final int[] heard = new int[1];
+		SceneLoadTask.Listener listener = new SceneLoadTask.Listener() {
+			public void progress(File file, long bytes, long total, int polygons) {
+			}
+
+			public void loaded(File file, Scene scene) {
+				loaded[0] = scene;
+				heard[0]++;
+				done.countDown();
+			}
+
+			public void failed(File file, Exception e) {
+				heard[0]++;
+				done.countDown();
+			}
+		};
+
+		SceneLoadTask cancelled = new SceneLoadTask(model(200000, 0, null), listener);
+		cancelled.execute();
+		cancelled.cancel(true);
+		SceneLoadTask task = new SceneLoadTask(model(30, 0, null), listener);
+		task.execute();
+
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		// let anything else the cancelled task might say arrive
+		Thread.sleep(200);
+		SwingUtilities.invokeAndWait(new Runnable() {
+			public void run() {
+			}
+		});
+		assertEquals(1, heard[0]);
+		assertEquals(30, loaded[0].getPolygons().size());
+	}
+
+	@Test
+	/**
+	 * A snapshot reads back as the same scene, with the same normals, and is
+	 * made again if it is out of date or damaged.
+	 */
+	public void testSnapshot() throws IOException {
+		File model = model(500, 0, null);
+		File snapshot = SceneSnapshot.sidecar(model);
+		snapshot.deleteOnExit();
+		Scene loaded = SceneSnapshot.load(model, null);
+		assertTrue(snapshot.isFile());
+
+		Scene read = SceneSnapshot.read(snapshot, model);
+		assertEquals(loaded.getPolygons().size(), read.getPolygons().size());
+		assertEquals(loaded.getMesh().getVertexCount(), read.getMesh().getVertexCount());
+		assertEquals(loaded.getLight().z, read.getLight().z, 0);
+		for (int i = 0; i < loaded.getPolygons().size(); i++) {
+			assertEquals(loaded.getPolygons().get(i).getReflectance(), read.getPolygons().get(i).getReflectance());
+			assertEquals(loaded.getMesh().getIndices()[i * 3 + 2], read.getMesh().getIndices()[i * 3 + 2]);
+			Vector3D a = loaded.getPolygons().get(i).getVertices()[1], b = read.getPolygons().get(i).getVertices()[1];
+			assertEquals(a.x, b.x, 0);
+			assertEquals(a.y, b.y, 0);
+			assertEquals(a.z, b.z, 0);
+			// shared with the mesh, as after welding
+			assertTrue(b == read.getMesh().getVertices()[read.getMesh().getIndices()[i * 3 + 1]]);
+		}
+		for (int v = 0; v < loaded.getMesh().getVertexCount(); v++)
+			assertEquals(loaded.getMesh().getNormals()[v].y, read.getMesh().getNormals()[v].y, 0);
+
+		// a damaged snapshot is refused, and made again on the next load
+		RandomAccessFile damage = new RandomAccessFile(snapshot, "rw");
+		try {
+			damage.seek(SceneSnapshot.HEADER_SIZE + 100);
+			int b = damage.read();
+			damage.seek(SceneSnapshot.HEADER_SIZE + 100);
+			damage.write(b ^ 1);
+		} finally {
+			damage.close();
+		}
+		try {
+			SceneSnapshot.read(snapshot, model);
+			fail("read a damaged snapshot");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("damaged"));
+		}
+		assertEquals(500, SceneSnapshot.load(model, null).getPolygons().size());
+		assertEquals(500, SceneSnapshot.read(snapshot, model).getPolygons().size());
+
+		// as is one whose header doesn't match its vertices
+		damage = new RandomAccessFile(snapshot, "rw");
+		try {
+			damage.seek(44);
+			damage.writeInt(0x12345678);
+		} finally {
+			damage.close();
+		}
+		try {
+			SceneSnapshot.read(snapshot, model);
+			fail("read a snapshot with the wrong bounds");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("bounds"));
+		}
+		assertEquals(500, SceneSnapshot.load(model, null).getPolygons().size());
+		assertEquals(500, SceneSnapshot.read(snapshot, model).getPolygons().size());
+
+		// as is one for an older version of the model
+		assertTrue(model.setLastModified(model.lastModified() - 10000));
+		assertNull(SceneSnapshot.read(snapshot, model));
+	}
+
+	@Test
+	/**
+	 * A snapshot is written through a temporary file of its own, which is
+	 * gone afterwards whether or not the snapshot could be saved.
+	 */
+	public void testSnapshotTemporary() throws IOException {
+		File dir = Files.createTempDirectory("snapshots").toFile();
+		File model = new File(dir, "model.txt");
+		assertTrue(model(20, 0, null).renameTo(model));
+		File snapshot = SceneSnapshot.sidecar(model);
+		Scene scene = SceneLoader.load(model);
+		try {
+			SceneSnapshot.write(scene, model, snapshot);
+			assertEquals(2, dir.list().length);
+			assertTrue(snapshot.delete());
+
+			// a directory in the way can't be replaced
+			assertTrue(snapshot.mkdir());
+			assertTrue(new File(snapshot, "in the way").createNewFile());
+			try {
+				SceneSnapshot.write(scene, model, snapshot);
+				fail("replaced a directory with a snapshot");
+			} catch (IOException e) {
+				// expected
+			}
+			assertEquals(2, dir.list().length);
+		} finally {
+			new File(snapshot, "in the way").delete();
+			snapshot.delete();
+			model.delete();
+			dir.delete();
+		}
+	}
+}
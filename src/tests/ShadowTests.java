@@ -0,0 +1,82 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import renderer.Pipeline;
+import renderer.Polygon;
+import renderer.Scene;
+import renderer.ShadowMap;
+import renderer.Transform;
+import renderer.Vector3D;
+
+public class ShadowTests {
+
+	/** Two squares, one behind the other, lit from in front. */
+	private static Scene squares() {
+		int[] col = new int[] { 100, 100, 100 };
+		List<Polygon> polys = new ArrayList<Polygon>();
+		for (float z : new float[] { 0, 10 }) {
+			polys.add(new Polygon(new float[] { 0, 0, z, 100, 0, z, 100, 100, z }, col));
+			polys.add(new Polygon(new float[] { 0, 0, z, 100, 100, z, 0, 100, z }, col));
+		}
+		// the back square is bigger, so some of it is in the light
+		polys.add(new Polygon(new float[] { 100, 0, 10, 200, 0, 10, 200, 100, 10 }, col));
+		return new Scene(polys, new Vector3D(0, 0, -1));
+	}
+
+	@Test
+	public void testInverse() {
+		Transform t = Transform.newTranslation(5, -3, 2).compose(Transform.newXRotation(0.4f))
+				.compose(Transform.newScale(2, 2, 2));
+		Vector3D v = new Vector3D(1, 2, 3);
+		Vector3D back = t.inverse().multiply(t.multiply(v));
+		assertEquals(v.x, back.x, 1e-4f);
+		assertEquals(v.y, back.y, 1e-4f);
+		assertEquals(v.z, back.z, 1e-4f);
+	}
+
+	@Test
+	/** The front square shadows the back one, but not itself. */
+	public void testOcclusion() {
+		Scene scene = squares();
+		ShadowMap map = new ShadowMap();
+		map.update(scene);
+		map.setView(scene.getView());
+		map.setSurface(1);
+
+		assertFalse(map.inShadow(50, 50, 0));
+		assertTrue(map.inShadow(50, 50, 10));
+		assertFalse(map.inShadow(150, 20, 10));
+	}
+
+	@Test
+	/** Turning the model keeps the map, and the shadows turn with it. */
+	public void testViewChangeKeepsMap() {
+		Scene scene = squares();
+		ShadowMap map = new ShadowMap();
+		map.update(scene);
+
+		Pipeline.rotateScene(scene, 0.3f, 0.5f);
+		assertFalse(map.update(scene));
+		assertEquals(1, map.getBuildCount());
+
+		map.setView(scene.getView());
+		map.setSurface(1);
+		Vector3D behind = scene.getView().multiply(new Vector3D(50, 50, 10));
+		Vector3D front = scene.getView().multiply(new Vector3D(50, 50, 0));
+		assertTrue(map.inShadow(behind.x, behind.y, behind.z));
+		assertFalse(map.inShadow(front.x, front.y, front.z));
+
+		// new geometry does need a new map
+		scene.geometryChanged();
+		assertTrue(map.update(scene));
+		assertEquals(2, map.getBuildCount());
+	}
+}
@@ -0,0 +1,177 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import renderer.FrameRenderer;
+import renderer.Framebuffer;
+import renderer.Polygon;
+import renderer.Scene;
+import renderer.SceneLoader;
+import renderer.Texture;
+import renderer.Transform;
+import renderer.UvMap;
+import renderer.Vector3D;
+
+public class TextureTests {
+
+	/** An image whose every pixel is a different colour. */
+	private static BufferedImage numbered(int width, int height) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < height; y++)
+			for (int x = 0; x < width; x++)
+				image.setRGB(x, y, y * width + x);
+		return image;
+	}
+
+	@Test
+	/** Every texel comes back from where it was put, whatever the shape. */
+	public void testMortonLayout() {
+		for (int[] size : new int[][] { { 8, 8 }, { 16, 4 }, { 2, 32 }, { 1, 8 } }) {
+			BufferedImage image = numbered(size[0], size[1]);
+			Texture texture = new Texture(image);
+			for (int y = 0; y < size[1]; y++)
+				for (int x = 0; x < size[0]; x++)
+					assertEquals(image.getRGB(x, y) & 0xFFFFFF, texture.getTexel(0, x, y));
+			// and it wraps around
+			assertEquals(texture.getTexel(0, 0, 0), texture.getTexel(0, size[0], -size[1]));
+		}
+	}
+
+	@Test
+	/** Each level is half the size of the one before, and its average. */
+	public void testMipLevels() {
+		BufferedImage image = new BufferedImage(8, 4, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < 4; y++)
+			for (int x = 0; x < 8; x++)
+				image.setRGB(x, y, (x + y) % 2 == 0 ? 0xFFFFFF : 0x000000);
+		Texture texture = new Texture(image);
+
+		assertEquals(4, texture.getLevelCount());
+		int[][] sizes = { { 8, 4 }, { 4, 2 }, { 2, 1 }, { 1, 1 } };
+		for (int level = 0; level < 4; level++) {
+			assertEquals(sizes[level][0], texture.getWidth(level));
+			assertEquals(sizes[level][1], texture.getHeight(level));
+		}
+		// a checkerboard averages to grey at every level below the first
+		for (int level = 1; level < 4; level++)
+			assertEquals(0x808080, texture.getTexel(level, 0, 0));
+
+		assertEquals(0, texture.levelFor(0.5f));
+		assertEquals(0, texture.levelFor(1.9f));
+		assertEquals(1, texture.levelFor(2));
+		assertEquals(2, texture.levelFor(5));
+		assertEquals(3, texture.levelFor(1000));
+	}
+
+	@Test
+	/** An image that isn't a power of two is stretched to one. */
+	public void testResize() {
+		Texture texture = new Texture(new BufferedImage(100, 3, BufferedImage.TYPE_INT_RGB));
+		assertEquals(128, texture.getWidth(0));
+		assertEquals(4, texture.getHeight(0));
+		assertEquals(8, texture.getLevelCount());
+	}
+
+	/** A square of two triangles covering a size x size framebuffer. */
+	private static Scene square(int size, Texture texture) {
+		List<Polygon> polys = new ArrayList<Polygon>();
+		polys.add(new Polygon(new float[] { 0, 0, 0, size, 0, 0, 0, size, 0 }, new int[] { 255, 255, 255 }));
+		polys.add(new Polygon(new float[] { size, 0, 0, size, size, 0, 0, size, 0 }, new int[] { 255, 255, 255 }));
+		Scene scene = new Scene(polys, new Vector3D(0, 0, -1));
+		scene.setUvMap(new UvMap(texture, new float[] { 0, 0, 1, 0, 0, 1, 1, 0, 1, 1, 0, 1 }));
+		return scene;
+	}
+
+	/**
+	 * Renders the square lit so that its shaded colour is white, and checks
+	 * every pixel drawn is the texel of the given level under it.
+	 */
+	private static void checkSquare(int size, Texture texture, int level) {
+		FrameRenderer renderer = new FrameRenderer(size, size);
+		renderer.setBackground(new Color(1, 2, 3));
+		renderer.render(square(size, texture), new Vector3D(0, 0, -1), Color.black, Color.white);
+		Framebuffer framebuffer = renderer.getFramebuffer();
+		int drawn = 0;
+		for (int y = 0; y < size; y++) {
+			for (int x = 0; x < size; x++) {
+				int rgb = framebuffer.getRGB(framebuffer.index(x, y));
+				if (rgb == 0x010203)
+					continue;
+				assertEquals(texture.getTexel(level, x, y), rgb);
+				drawn++;
+			}
+		}
+		assertTrue(drawn > size * size * 9 / 10);
+	}
+
+	@Test
+	/** One texel a pixel draws the texture exactly. */
+	public void testTexturedSquare() {
+		checkSquare(64, new Texture(numbered(64, 64)), 0);
+	}
+
+	@Test
+	/** Four texels a pixel draws from the level a quarter of the size. */
+	public void testMinified() {
+		Random random = new Random(1);
+		BufferedImage image = new BufferedImage(256, 256, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < 256; y++)
+			for (int x = 0; x < 256; x++)
+				image.setRGB(x, y, random.nextInt());
+		Texture texture = new Texture(image);
+		assertEquals(64, texture.getWidth(2));
+		checkSquare(64, texture, 2);
+	}
+
+	@Test
+	/** A uv file next to a model textures it, and must match it. */
+	public void testSidecar() throws IOException {
+		File model = File.createTempFile("textured", ".txt");
+		model.deleteOnExit();
+		File uvs = UvMap.sidecar(model);
+		uvs.deleteOnExit();
+		File image = new File(model.getParentFile(), model.getName().replace(".txt", ".png"));
+		image.deleteOnExit();
+		ImageIO.write(numbered(16, 8), "png", image);
+
+		FileWriter out = new FileWriter(model);
+		out.write("0 0 -1\n0 0 0 10 0 0 0 10 0 255 255 255\n10 0 0 10 10 0 0 10 0 255 255 255\n");
+		out.close();
+		out = new FileWriter(uvs);
+		out.write("# the two halves of a square\ntexture " + image.getName() + "\n0 0 1 0 0 1\n1 0 1 1 0 1\n");
+		out.close();
+
+		Scene scene = SceneLoader.load(model);
+		UvMap uvMap = scene.getUvMap();
+		assertEquals(2, uvMap.getPolygonCount());
+		assertEquals(16, uvMap.getTexture().getWidth(0));
+		assertEquals(1f, uvMap.getUvs()[6], 0);
+		// copies of the scene are textured too
+		assertTrue(scene.transformed(Transform.identity()).getUvMap() == uvMap);
+
+		out = new FileWriter(uvs);
+		out.write("texture " + image.getName() + "\n0 0 1 0 0 1\n");
+		out.close();
+		try {
+			SceneLoader.load(model);
+			fail("loaded coordinates for the wrong number of polygons");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains(uvs.getName()));
+		}
+	}
+}
@@ -0,0 +1,155 @@
+package tests;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import renderer.CameraPose;
+import renderer.SequenceRenderer;
+
+/**
+ * Times rendering every model in data at the poses GoldenImageTests uses,
+ * and fails if any has got much slower than the baseline recorded by main.
+ *
+ * Times depend on the machine, and on whatever else it is doing, so this
+ * isn't part of AllTests and only runs with -Dgolden.timings=true. The
+ * baseline is kept in data/golden/timings.properties, which isn't checked
+ * in: run main to record it on the machine the tests will run on, before
+ * the change being checked. The baseline says which machine it was recorded
+ * on, and the test refuses to compare against one from anywhere else.
+ */
+public class TimingTests {
+
+	public static final File TIMINGS = new File(GoldenImageTests.GOLDEN, "timings.properties");
+
+	/**
+	 * How much slower than the baseline a model can render, as a fraction of
+	 * the baseline, before the test fails. It can be changed with
+	 * -Dgolden.timeTolerance=.
+	 */
+	public static final double TIME_TOLERANCE = 0.2;
+	private static final int WARMUP_ROUNDS = 10;
+	private static final int ROUNDS = 15;
+	// each round renders the poses over and over for at least this long, so
+	// that even the small models are timed over more than a few frames
+	private static final long ROUND_NANOS = 200000000L;
+	// how many times a model is timed: the baseline is the middle of these,
+	// and a model only fails if every one of them is too slow
+	private static final int ATTEMPTS = 3;
+
+	private static final String MACHINE_KEY = "machine";
+
+	@Test
+	public void testNoSlowdown() throws IOException {
+		assumeTrue("timings only run with -Dgolden.timings=true", Boolean.getBoolean("golden.timings"));
+		if (!TIMINGS.exists())
+			fail("no timings in " + TIMINGS + ", run TimingTests.main to record them on this machine");
+		Properties baseline = new Properties();
+		InputStream in = new FileInputStream(TIMINGS);
+		try {
+			baseline.load(in);
+		} finally {
+			in.close();
+		}
+		if (!machine().equals(baseline.getProperty(MACHINE_KEY)))
+			fail("timings in " + TIMINGS + " were recorded on " + baseline.getProperty(MACHINE_KEY) + ", not "
+					+ machine() + ", run TimingTests.main to record them on this machine");
+
+		double tolerance = Double.parseDouble(System.getProperty("golden.timeTolerance", "" + TIME_TOLERANCE));
+		StringBuilder slow = new StringBuilder();
+		for (File model : GoldenImageTests.models()) {
+			String stored = baseline.getProperty(GoldenImageTests.name(model));
+			if (stored == null)
+				continue;
+			double expected = Double.parseDouble(stored);
+			double time = Double.MAX_VALUE;
+			for (int attempt = 0; attempt < ATTEMPTS && time > expected * (1 + tolerance); attempt++)
+				time = Math.min(time, time(model));
+			if (time > expected * (1 + tolerance))
+				slow.append(String.format(" %s took %.2f ms, was %.2f ms;", GoldenImageTests.name(model), time,
+						expected));
+		}
+		assertTrue("slower than the baseline:" + slow, slow.length() == 0);
+	}
+
+	/**
+	 * Returns the best time of rendering every pose of a model once, in
+	 * milliseconds, over several rounds.
+	 */
+	private static double time(File model) throws IOException {
+		SequenceRenderer sequence = GoldenImageTests.sequence(model);
+		try {
+			for (int round = 0; round < WARMUP_ROUNDS; round++)
+				round(sequence);
+			double[] times = new double[ROUNDS];
+			for (int round = 0; round < ROUNDS; round++)
+				times[round] = round(sequence);
+			// the fastest round is the one least held up by anything else
+			// running, so it is the steadiest from run to run
+			Arrays.sort(times);
+			return times[0];
+		} finally {
+			sequence.close();
+		}
+	}
+
+	/**
+	 * Renders the poses until ROUND_NANOS have gone by, and returns the time
+	 * each pass over them took, in milliseconds.
+	 */
+	private static double round(SequenceRenderer sequence) {
+		int passes = 0;
+		long start = System.nanoTime();
+		long time;
+		do {
+			for (CameraPose pose : GoldenImageTests.POSES)
+				sequence.renderFrame(pose);
+			passes++;
+			time = System.nanoTime() - start;
+		} while (time < ROUND_NANOS);
+		return time / 1e6 / passes;
+	}
+
+	/** Describes the machine, so a baseline from another can be told apart. */
+	private static String machine() {
+		return System.getProperty("os.name") + " " + System.getProperty("os.arch") + ", "
+				+ Runtime.getRuntime().availableProcessors() + " cpus, java " + System.getProperty("java.version");
+	}
+
+	/**
+	 * Records the baseline timings for every model on this machine.
+	 */
+	public static void main(String[] args) throws IOException {
+		Properties baseline = new Properties();
+		baseline.setProperty(MACHINE_KEY, machine());
+		for (File model : GoldenImageTests.models()) {
+			double[] times = new double[ATTEMPTS];
+			for (int attempt = 0; attempt < ATTEMPTS; attempt++)
+				times[attempt] = time(model);
+			Arrays.sort(times);
+			double time = times[ATTEMPTS / 2];
+			baseline.setProperty(GoldenImageTests.name(model), String.format(Locale.ROOT, "%.3f", time));
+			System.out.printf("%-12s %8.3f ms%n", GoldenImageTests.name(model), time);
+		}
+
+		GoldenImageTests.GOLDEN.mkdirs();
+		OutputStream out = new FileOutputStream(TIMINGS);
+		try {
+			baseline.store(out, "ms to render every pose of each model, see TimingTests");
+		} finally {
+			out.close();
+		}
+	}
+}